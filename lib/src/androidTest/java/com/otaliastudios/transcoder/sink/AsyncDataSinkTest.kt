@@ -0,0 +1,74 @@
+package com.otaliastudios.transcoder.sink
+
+import android.media.MediaCodec
+import android.media.MediaFormat
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.otaliastudios.transcoder.common.TrackStatus
+import com.otaliastudios.transcoder.common.TrackType
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.nio.ByteBuffer
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class AsyncDataSinkTest {
+
+    private class Sample(val data: ByteArray, val timeUs: Long, val flags: Int)
+
+    private class RecordingSink : DataSink {
+        val samples = mutableListOf<Sample>()
+        override fun setOrientation(orientation: Int) = Unit
+        override fun setLocation(latitude: Double, longitude: Double) = Unit
+        override fun setTrackStatus(type: TrackType, status: TrackStatus) = Unit
+        override fun setTrackFormat(type: TrackType, format: MediaFormat) = Unit
+        override fun writeTrack(type: TrackType, byteBuffer: ByteBuffer, bufferInfo: MediaCodec.BufferInfo) {
+            // Slots are reused, so copy now.
+            val data = ByteArray(bufferInfo.size)
+            byteBuffer.duplicate().apply { position(bufferInfo.offset) }.get(data)
+            samples.add(Sample(data, bufferInfo.presentationTimeUs, bufferInfo.flags))
+        }
+        override fun stop() = Unit
+        override fun release() = Unit
+    }
+
+    private fun write(sink: DataSink, buffer: ByteBuffer, offset: Int, size: Int, timeUs: Long, flags: Int) {
+        val info = MediaCodec.BufferInfo()
+        info.set(offset, size, timeUs, flags)
+        sink.writeTrack(TrackType.VIDEO, buffer, info)
+    }
+
+    @Test
+    fun testOffsetAndSize() {
+        val recorder = RecordingSink()
+        val sink = AsyncDataSink(recorder, 2)
+        val buffer = ByteBuffer.wrap(ByteArray(32) { it.toByte() })
+        write(sink, buffer, 8, 10, 1000, 0)
+        write(sink, buffer, 0, 32, 2000, MediaCodec.BUFFER_FLAG_KEY_FRAME)
+        sink.stop()
+        sink.release()
+        assertEquals(2, recorder.samples.size)
+        assertArrayEquals(ByteArray(10) { (it + 8).toByte() }, recorder.samples[0].data)
+        assertEquals(1000L, recorder.samples[0].timeUs)
+        assertArrayEquals(buffer.array(), recorder.samples[1].data)
+        assertEquals(MediaCodec.BUFFER_FLAG_KEY_FRAME, recorder.samples[1].flags)
+    }
+
+    @Test
+    fun testEndOfStreamIsEmpty() {
+        // Writer sends EOS with size 0 on a buffer that may still hold data (#159).
+        val recorder = RecordingSink()
+        val sink = AsyncDataSink(recorder, 2)
+        write(sink, ByteBuffer.wrap(ByteArray(16) { 1 }), 0, 16, 1000, 0)
+        write(sink, ByteBuffer.wrap(ByteArray(16) { 2 }), 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM)
+        sink.stop()
+        sink.release()
+        assertEquals(2, recorder.samples.size)
+        val eos = recorder.samples[1]
+        assertEquals(0, eos.data.size)
+        assertEquals(0L, eos.timeUs)
+        assertEquals(MediaCodec.BUFFER_FLAG_END_OF_STREAM, eos.flags)
+    }
+}
@@ -0,0 +1,68 @@
+package com.otaliastudios.transcoder.sink
+
+import android.media.MediaCodec
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.otaliastudios.transcoder.common.TrackType
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.nio.ByteBuffer
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class DefaultDataSinkQueueTest {
+
+    private class Sample(val data: ByteArray, val timeUs: Long, val flags: Int)
+
+    private fun DefaultDataSinkQueue.enqueue(buffer: ByteBuffer, offset: Int, size: Int, timeUs: Long, flags: Int) {
+        val info = MediaCodec.BufferInfo()
+        info.set(offset, size, timeUs, flags)
+        enqueue(TrackType.VIDEO, buffer, info)
+    }
+
+    private fun DefaultDataSinkQueue.drain(): List<Sample> {
+        val samples = mutableListOf<Sample>()
+        drain { _, buffer, info ->
+            val data = ByteArray(info.size)
+            buffer.duplicate().apply { position(info.offset) }.get(data)
+            samples.add(Sample(data, info.presentationTimeUs, info.flags))
+        }
+        return samples
+    }
+
+    @Test
+    fun testEmptyFirstSample() {
+        val queue = DefaultDataSinkQueue(1024, null)
+        queue.enqueue(ByteBuffer.allocate(0), 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM)
+        val samples = queue.drain()
+        assertEquals(1, samples.size)
+        assertEquals(0, samples[0].data.size)
+    }
+
+    @Test
+    fun testOffsetAndSize() {
+        val queue = DefaultDataSinkQueue(1024, null)
+        queue.enqueue(ByteBuffer.wrap(ByteArray(32) { it.toByte() }), 8, 10, 1000, 0)
+        // Writer sends EOS with size 0 on a buffer that may still hold data (#159).
+        queue.enqueue(ByteBuffer.wrap(ByteArray(16) { 1 }), 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM)
+        val samples = queue.drain()
+        assertEquals(2, samples.size)
+        assertArrayEquals(ByteArray(10) { (it + 8).toByte() }, samples[0].data)
+        assertEquals(1000L, samples[0].timeUs)
+        assertEquals(0, samples[1].data.size)
+        assertEquals(MediaCodec.BUFFER_FLAG_END_OF_STREAM, samples[1].flags)
+    }
+
+    @Test
+    fun testSpill() {
+        // The memory limit only fits the first sample, the second goes to disk.
+        val queue = DefaultDataSinkQueue(16, null)
+        queue.enqueue(ByteBuffer.wrap(ByteArray(24) { it.toByte() }), 4, 16, 1000, 0)
+        queue.enqueue(ByteBuffer.wrap(ByteArray(24) { (it + 100).toByte() }), 2, 20, 2000, 0)
+        val samples = queue.drain()
+        assertArrayEquals(ByteArray(16) { (it + 4).toByte() }, samples[0].data)
+        assertArrayEquals(ByteArray(20) { (it + 102).toByte() }, samples[1].data)
+    }
+}
@@ -0,0 +1,25 @@
+package com.otaliastudios.transcoder
+
+import com.otaliastudios.transcoder.internal.peaks.PeaksEngine
+import com.otaliastudios.transcoder.internal.utils.ThreadPool
+import java.util.concurrent.Callable
+import java.util.concurrent.Future
+
+class PeaksExtractor private constructor() {
+
+    fun peaks(options: PeaksOptions): Future<Void> {
+        return ThreadPool.executor.submit(Callable {
+            PeaksEngine.peaks(options)
+            null
+        })
+    }
+
+    fun peaks(builder: PeaksOptions.Builder.() -> Unit) = peaks(
+            options = PeaksOptions.Builder().apply(builder).build()
+    )
+
+    companion object {
+        // Just for consistency with Transcoder class.
+        fun getInstance() = PeaksExtractor()
+    }
+}
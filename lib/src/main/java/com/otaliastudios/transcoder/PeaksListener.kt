@@ -0,0 +1,14 @@
+package com.otaliastudios.transcoder
+
+import com.otaliastudios.transcoder.peaks.Peaks
+
+interface PeaksListener {
+
+    fun onPeaksProgress(progress: Double) = Unit
+
+    fun onPeaksCompleted(peaks: Peaks)
+
+    fun onPeaksCanceled() = Unit
+
+    fun onPeaksFailed(exception: Throwable)
+}
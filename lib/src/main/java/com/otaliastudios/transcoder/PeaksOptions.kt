@@ -0,0 +1,101 @@
+package com.otaliastudios.transcoder
+
+import android.content.Context
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import com.otaliastudios.transcoder.source.DataSource
+import com.otaliastudios.transcoder.source.FileDescriptorDataSource
+import com.otaliastudios.transcoder.source.FilePathDataSource
+import com.otaliastudios.transcoder.source.UriDataSource
+import java.io.FileDescriptor
+import java.util.concurrent.Future
+
+/**
+ * Options for [PeaksExtractor]. Either [bucketCount] or [bucketDurationUs] is greater than 0.
+ */
+@Suppress("unused")
+class PeaksOptions(
+        val dataSources: List<DataSource>,
+        val bucketCount: Int,
+        val bucketDurationUs: Long,
+        val listener: PeaksListener,
+        val listenerHandler: Handler
+) {
+
+    class Builder {
+
+        private val dataSources = mutableListOf<DataSource>()
+        private var bucketCount = 0
+        private var bucketDurationUs = 0L
+        private var listener: PeaksListener? = null
+        private var listenerHandler: Handler? = null
+
+        fun addDataSource(dataSource: DataSource) = this.also {
+            dataSources.add(dataSource)
+        }
+
+        fun addDataSource(fileDescriptor: FileDescriptor)
+                = addDataSource(FileDescriptorDataSource(fileDescriptor))
+
+        fun addDataSource(filePath: String)
+                = addDataSource(FilePathDataSource(filePath))
+
+        fun addDataSource(context: Context, uri: Uri)
+                = addDataSource(UriDataSource(context, uri))
+
+        /**
+         * Splits the whole duration in the given number of buckets.
+         * Defaults to 1000, unless [setBucketDurationUs] is used.
+         */
+        fun setBucketCount(bucketCount: Int) = this.also {
+            require(bucketCount >= 1) { "Bucket count should be at least 1." }
+            this.bucketCount = bucketCount
+            this.bucketDurationUs = 0L
+        }
+
+        /**
+         * Uses buckets of the given duration, regardless of the total duration.
+         */
+        fun setBucketDurationUs(bucketDurationUs: Long) = this.also {
+            require(bucketDurationUs >= 1) { "Bucket duration should be at least 1us." }
+            this.bucketDurationUs = bucketDurationUs
+            this.bucketCount = 0
+        }
+
+        /**
+         * Sets an handler for [PeaksListener] callbacks.
+         * If null, this will default to the thread that starts the extraction, if it
+         * has a looper, or the UI thread otherwise.
+         */
+        fun setListenerHandler(listenerHandler: Handler?) = this.also {
+            this.listenerHandler = listenerHandler
+        }
+
+        fun setListener(listener: PeaksListener) = this.also {
+            this.listener = listener
+        }
+
+        fun build(): PeaksOptions {
+            require(dataSources.isNotEmpty()) {
+                "At least one data source is required!"
+            }
+            val listener = requireNotNull(listener) {
+                "Listener can't be null."
+            }
+            val listenerHandler = listenerHandler
+                    ?: Handler(Looper.myLooper() ?: Looper.getMainLooper())
+            return PeaksOptions(
+                    dataSources = dataSources.toList(),
+                    bucketCount = if (bucketDurationUs > 0) 0 else bucketCount.takeIf { it > 0 } ?: 1000,
+                    bucketDurationUs = bucketDurationUs,
+                    listener = listener,
+                    listenerHandler = listenerHandler
+            )
+        }
+
+        fun peaks(): Future<Void> {
+            return PeaksExtractor.getInstance().peaks(build())
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package com.otaliastudios.transcoder
 
+import com.otaliastudios.transcoder.thumbnail.Storyboard
 import com.otaliastudios.transcoder.thumbnail.Thumbnail
 
 interface ThumbnailerListener {
 
     fun onThumbnail(thumbnail: Thumbnail)
 
+    /**
+     * Called for each sheet of a [com.otaliastudios.transcoder.thumbnail.StoryboardRequest].
+     */
+    fun onStoryboard(storyboard: Storyboard) = Unit
+
     fun onThumbnailsCompleted(thumbnails: List<Thumbnail>) = Unit
 
     fun onThumbnailsCanceled() = Unit
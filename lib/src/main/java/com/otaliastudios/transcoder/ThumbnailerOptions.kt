@@ -1,6 +1,7 @@
 package com.otaliastudios.transcoder
 
 import android.content.Context
+import android.graphics.Bitmap
 import android.net.Uri
 import android.os.Handler
 import android.os.Looper
@@ -10,8 +11,12 @@ import com.otaliastudios.transcoder.resize.Resizer
 import com.otaliastudios.transcoder.source.DataSource
 import com.otaliastudios.transcoder.source.FileDescriptorDataSource
 import com.otaliastudios.transcoder.source.FilePathDataSource
+import com.otaliastudios.transcoder.internal.utils.fingerprintOf
 import com.otaliastudios.transcoder.source.UriDataSource
+import com.otaliastudios.transcoder.thumbnail.BitmapPool
+import com.otaliastudios.transcoder.thumbnail.ThumbnailCache
 import com.otaliastudios.transcoder.thumbnail.ThumbnailRequest
+import java.io.File
 import java.io.FileDescriptor
 import java.util.concurrent.Future
 
@@ -22,31 +27,73 @@ class ThumbnailerOptions(
         val rotation: Int,
         val thumbnailRequests: List<ThumbnailRequest>,
         val listener: ThumbnailerListener,
-        val listenerHandler: Handler
+        val listenerHandler: Handler,
+        val parallelism: Int = 1,
+        val orderedDelivery: Boolean = true,
+        internal val dataSourceFactories: List<() -> DataSource>? = null,
+        val cache: ThumbnailCache? = null,
+        internal val dataSourceFingerprints: List<() -> String>? = null,
+        val bitmapConfig: Bitmap.Config = Bitmap.Config.ARGB_8888,
+        val bitmapPool: BitmapPool? = null,
+        val keyframeIndex: Boolean = true,
+        val keyframeIndexDirectory: File? = null
 ) {
 
     class Builder {
 
         private val dataSources = mutableListOf<DataSource>()
+        private val dataSourceFactories = mutableListOf<(() -> DataSource)?>()
         private val thumbnailRequests = mutableListOf<ThumbnailRequest>()
         private val resizer = MultiResizer()
         private var resizerSet = false
         private var rotation = 0
         private var listener: ThumbnailerListener? = null
         private var listenerHandler: Handler? = null
+        private var parallelism = 1
+        private var orderedDelivery = true
+        private var cache: ThumbnailCache? = null
+        private val dataSourceFingerprints = mutableListOf<(() -> String)?>()
+        private var bitmapConfig = Bitmap.Config.ARGB_8888
+        private var bitmapPool: BitmapPool? = null
+        private var keyframeIndex = true
+        private var keyframeIndexDirectory: File? = null
 
         fun addDataSource(dataSource: DataSource) = this.also {
             dataSources.add(dataSource)
+            dataSourceFactories.add(null)
+            dataSourceFingerprints.add(null)
         }
 
-        fun addDataSource(fileDescriptor: FileDescriptor)
-                = addDataSource(FileDescriptorDataSource(fileDescriptor))
+        /**
+         * Adds a data source that can be created more than once. This is needed to
+         * extract thumbnails in parallel, see [setParallelism].
+         */
+        fun addDataSource(factory: () -> DataSource) = addDataSource(factory, null)
 
-        fun addDataSource(filePath: String)
-                = addDataSource(FilePathDataSource(filePath))
+        private fun addDataSource(factory: () -> DataSource, fingerprint: (() -> String)?) = this.also {
+            dataSources.add(factory())
+            dataSourceFactories.add(factory)
+            dataSourceFingerprints.add(fingerprint)
+        }
 
-        fun addDataSource(context: Context, uri: Uri)
-                = addDataSource(UriDataSource(context, uri))
+        /**
+         * Adds a data source reading from the given descriptor. Since all instances would share
+         * the descriptor file offset, this source can't be created more than once, and
+         * thumbnails are not extracted in parallel, see [setParallelism].
+         */
+        fun addDataSource(fileDescriptor: FileDescriptor) = this.also {
+            dataSources.add(FileDescriptorDataSource(fileDescriptor))
+            dataSourceFactories.add(null)
+            dataSourceFingerprints.add { fingerprintOf(fileDescriptor) }
+        }
+
+        fun addDataSource(filePath: String) = addDataSource(
+                { FilePathDataSource(filePath) },
+                { fingerprintOf(filePath) })
+
+        fun addDataSource(context: Context, uri: Uri) = addDataSource(
+                { UriDataSource(context, uri) },
+                { fingerprintOf(context, uri) })
 
         /**
          * Sets the video output strategy. If absent, this defaults to 320x240 images.
@@ -77,6 +124,70 @@ class ThumbnailerOptions(
             this.listenerHandler = listenerHandler
         }
 
+        /**
+         * The maximum number of decoders that can be used to extract thumbnails in parallel.
+         * Requested positions are split into contiguous ranges, each one handled by its own
+         * sources and decoder on a separate thread. The actual number might be smaller, depending
+         * on the number of thumbnails and on how many decoder instances the device supports.
+         * Parallel extraction needs all data sources to be added through paths, uris or
+         * factories, each factory call returning a source with its own file descriptor. Defaults to 1.
+         */
+        fun setParallelism(parallelism: Int) = this.also {
+            require(parallelism >= 1) { "Parallelism should be at least 1." }
+            this.parallelism = parallelism
+        }
+
+        /**
+         * When true (the default), thumbnails are dispatched in order of position even
+         * when they are extracted in parallel. When false, they are dispatched as soon as
+         * they are ready.
+         */
+        fun setOrderedDelivery(orderedDelivery: Boolean) = this.also {
+            this.orderedDelivery = orderedDelivery
+        }
+
+        /**
+         * Sets a cache for thumbnails. Cached positions are dispatched right away, and only
+         * the missing ones are extracted. The cache is only used when all data sources
+         * are added through paths, descriptors or uris. Defaults to null.
+         */
+        fun setCache(cache: ThumbnailCache?) = this.also {
+            this.cache = cache
+        }
+
+        /**
+         * The config of the thumbnail bitmaps. Either [Bitmap.Config.ARGB_8888] (the default)
+         * or [Bitmap.Config.RGB_565], which takes half the memory.
+         */
+        fun setBitmapConfig(bitmapConfig: Bitmap.Config) = this.also {
+            require(bitmapConfig == Bitmap.Config.ARGB_8888 || bitmapConfig == Bitmap.Config.RGB_565) {
+                "Unsupported bitmap config: $bitmapConfig"
+            }
+            this.bitmapConfig = bitmapConfig
+        }
+
+        /**
+         * Sets a pool of bitmaps to draw thumbnails into. When set, thumbnails should be
+         * given back through [com.otaliastudios.transcoder.thumbnail.Thumbnail.recycle]
+         * once they are not needed anymore. Defaults to null.
+         */
+        fun setBitmapPool(bitmapPool: BitmapPool?) = this.also {
+            this.bitmapPool = bitmapPool
+        }
+
+        /**
+         * Whether to build an index of the video sync frames of each source, so that positions
+         * in the same group of pictures are decoded in a single pass instead of seeking to each
+         * of them. The index is built by scanning the track metadata, and is saved in
+         * the given directory, if any, so that this is only done once per file.
+         * Only applies to sources that extend [com.otaliastudios.transcoder.source.DefaultDataSource],
+         * and replaces their own index settings when enabled. Defaults to true, with no directory.
+         */
+        fun setKeyframeIndexEnabled(enabled: Boolean, cacheDirectory: File?) = this.also {
+            this.keyframeIndex = enabled
+            this.keyframeIndexDirectory = cacheDirectory
+        }
+
         fun setListener(listener: ThumbnailerListener) = this.also {
             this.listener = listener
         }
@@ -100,7 +211,20 @@ class ThumbnailerOptions(
                     rotation = rotation,
                     thumbnailRequests = thumbnailRequests.toList(),
                     listener = listener,
-                    listenerHandler = listenerHandler
+                    listenerHandler = listenerHandler,
+                    parallelism = parallelism,
+                    orderedDelivery = orderedDelivery,
+                    dataSourceFactories = dataSourceFactories
+                            .takeIf { factories -> factories.all { it != null } }
+                            ?.map { it!! },
+                    cache = cache,
+                    dataSourceFingerprints = dataSourceFingerprints
+                            .takeIf { fingerprints -> fingerprints.all { it != null } }
+                            ?.map { it!! },
+                    bitmapConfig = bitmapConfig,
+                    bitmapPool = bitmapPool,
+                    keyframeIndex = keyframeIndex,
+                    keyframeIndexDirectory = keyframeIndexDirectory
             )
         }
 
@@ -0,0 +1,111 @@
+package com.otaliastudios.transcoder;
+
+import androidx.annotation.NonNull;
+
+import com.otaliastudios.transcoder.common.TrackStatus;
+import com.otaliastudios.transcoder.common.TrackType;
+
+/**
+ * The result of {@link Transcoder#estimate(TranscoderOptions)}: what a transcoding
+ * operation would do with the given options, and roughly how large and slow it would be.
+ *
+ * Sizes and times are estimates. Bit rates come from the track strategies when compressing,
+ * and from the container metadata when passing through, falling back to
+ * the same heuristics used by the default strategies.
+ */
+public class TranscodeEstimate {
+
+    private final boolean needed;
+    private final TrackStatus videoStatus;
+    private final TrackStatus audioStatus;
+    private final long videoBitRate;
+    private final long audioBitRate;
+    private final long durationUs;
+    private final long sizeBytes;
+    private final long wallTimeUs;
+
+    @SuppressWarnings("WeakerAccess")
+    public TranscodeEstimate(boolean needed,
+                             @NonNull TrackStatus videoStatus, @NonNull TrackStatus audioStatus,
+                             long videoBitRate, long audioBitRate,
+                             long durationUs, long sizeBytes, long wallTimeUs) {
+        this.needed = needed;
+        this.videoStatus = videoStatus;
+        this.audioStatus = audioStatus;
+        this.videoBitRate = videoBitRate;
+        this.audioBitRate = audioBitRate;
+        this.durationUs = durationUs;
+        this.sizeBytes = sizeBytes;
+        this.wallTimeUs = wallTimeUs;
+    }
+
+    /**
+     * Whether the {@link com.otaliastudios.transcoder.validator.Validator} accepted the
+     * operation. If false, transcoding would complete with {@link Transcoder#SUCCESS_NOT_NEEDED}
+     * and no output would be written.
+     *
+     * @return true if transcoding is needed
+     */
+    public boolean isNeeded() {
+        return needed;
+    }
+
+    /**
+     * The status that the track strategy chose for the given track.
+     *
+     * @param type the track type
+     * @return the track status
+     */
+    @NonNull
+    public TrackStatus getStatus(@NonNull TrackType type) {
+        return type == TrackType.VIDEO ? videoStatus : audioStatus;
+    }
+
+    /**
+     * The average output bit rate of the given track, or 0 if it won't be written.
+     *
+     * @param type the track type
+     * @return the bit rate in bits per second
+     */
+    public long getBitRate(@NonNull TrackType type) {
+        return type == TrackType.VIDEO ? videoBitRate : audioBitRate;
+    }
+
+    /**
+     * The output duration, before any {@link com.otaliastudios.transcoder.time.TimeInterpolator}.
+     *
+     * @return the duration in microseconds
+     */
+    public long getDurationUs() {
+        return durationUs;
+    }
+
+    /**
+     * The output file size, excluding container overhead.
+     *
+     * @return the size in bytes
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * The wall time that transcoding would take on a typical device.
+     *
+     * @return the time in microseconds
+     */
+    public long getWallTimeUs() {
+        return wallTimeUs;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "TranscodeEstimate{needed=" + needed
+                + ", videoStatus=" + videoStatus
+                + ", audioStatus=" + audioStatus
+                + ", durationUs=" + durationUs
+                + ", sizeBytes=" + sizeBytes
+                + ", wallTimeUs=" + wallTimeUs + "}";
+    }
+}
@@ -0,0 +1,111 @@
+package com.otaliastudios.transcoder;
+
+import androidx.annotation.NonNull;
+
+import com.otaliastudios.transcoder.common.TrackType;
+
+/**
+ * A snapshot of the transcoding progress, passed to
+ * {@link TranscoderProgressListener#onTranscodeProgress(TranscodeProgress)}.
+ *
+ * Throughput is the amount of media processed per unit of wall time, for example 2.0 means that
+ * two seconds of media are processed every second. It is smoothed over the previous snapshots,
+ * and the estimated remaining time is based on it.
+ */
+public class TranscodeProgress {
+
+    private final double progress;
+    private final long elapsedUs;
+    private final long etaUs;
+    private final long videoPositionUs;
+    private final long audioPositionUs;
+    private final long videoDurationUs;
+    private final long audioDurationUs;
+    private final double videoThroughput;
+    private final double audioThroughput;
+
+    @SuppressWarnings("WeakerAccess")
+    public TranscodeProgress(double progress, long elapsedUs, long etaUs,
+                             long videoPositionUs, long audioPositionUs,
+                             long videoDurationUs, long audioDurationUs,
+                             double videoThroughput, double audioThroughput) {
+        this.progress = progress;
+        this.elapsedUs = elapsedUs;
+        this.etaUs = etaUs;
+        this.videoPositionUs = videoPositionUs;
+        this.audioPositionUs = audioPositionUs;
+        this.videoDurationUs = videoDurationUs;
+        this.audioDurationUs = audioDurationUs;
+        this.videoThroughput = videoThroughput;
+        this.audioThroughput = audioThroughput;
+    }
+
+    /**
+     * The progress in [0.0, 1.0] range, the same value passed to
+     * {@link TranscoderListener#onTranscodeProgress(double)}.
+     *
+     * @return the progress
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * The wall time elapsed since transcoding started.
+     *
+     * @return the elapsed time in microseconds
+     */
+    public long getElapsedUs() {
+        return elapsedUs;
+    }
+
+    /**
+     * The estimated wall time needed to complete, or -1 if it is not known yet.
+     *
+     * @return the remaining time in microseconds, or -1
+     */
+    public long getEtaUs() {
+        return etaUs;
+    }
+
+    /**
+     * The media time that was read for the given track, or 0 if the track is not transcoded.
+     *
+     * @param type the track type
+     * @return the position in microseconds
+     */
+    public long getPositionUs(@NonNull TrackType type) {
+        return type == TrackType.VIDEO ? videoPositionUs : audioPositionUs;
+    }
+
+    /**
+     * The media duration of the given track, or 0 if the track is not transcoded.
+     *
+     * @param type the track type
+     * @return the duration in microseconds
+     */
+    public long getDurationUs(@NonNull TrackType type) {
+        return type == TrackType.VIDEO ? videoDurationUs : audioDurationUs;
+    }
+
+    /**
+     * The media time processed per unit of wall time for the given track,
+     * or 0 if it is not known yet or the track is not transcoded.
+     *
+     * @param type the track type
+     * @return the throughput
+     */
+    public double getThroughput(@NonNull TrackType type) {
+        return type == TrackType.VIDEO ? videoThroughput : audioThroughput;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "TranscodeProgress{progress=" + progress
+                + ", elapsedUs=" + elapsedUs
+                + ", etaUs=" + etaUs
+                + ", videoThroughput=" + videoThroughput
+                + ", audioThroughput=" + audioThroughput + "}";
+    }
+}
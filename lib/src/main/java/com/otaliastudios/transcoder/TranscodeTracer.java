@@ -0,0 +1,276 @@
+package com.otaliastudios.transcoder;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records what the transcoding engine does over time, to be inspected with the
+ * Chrome trace viewer (chrome://tracing) or the Perfetto UI (ui.perfetto.dev).
+ * Pass an instance to {@link TranscoderOptions.Builder#setTracer(TranscodeTracer)}, then
+ * export it with {@link #writeChromeTrace(Writer)} when needed, even while transcoding.
+ *
+ * Events are stored in preallocated arrays used as a ring buffer: when full, the oldest
+ * events are overwritten. Recording an event does not allocate, as long as the given names
+ * are not built on the spot, and takes no lock: each event claims its slot with an atomic
+ * counter, so threads don't wait for each other. Tracing can stay enabled in production.
+ *
+ * The engine records the steps of each pipeline, the time spent waiting for codec buffers,
+ * the sleeps between iterations, the segment switches and the writes to the
+ * {@link com.otaliastudios.transcoder.sink.DataSink}. Custom components can add their own
+ * events with {@link #complete(String, String, long)} and {@link #instant(String, String)}.
+ */
+public class TranscodeTracer {
+
+    @SuppressWarnings("WeakerAccess")
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private static final byte PHASE_COMPLETE = 'X';
+    private static final byte PHASE_INSTANT = 'i';
+
+    // Layout of each slot in the longs array.
+    private static final int PHASE = 0;
+    private static final int START = 1;
+    private static final int DURATION = 2;
+    private static final int THREAD_ID = 3;
+    private static final int ARG = 4;
+    private static final int LONGS = 5;
+
+    // Layout of each slot in the strings array.
+    private static final int CATEGORY = 0;
+    private static final int NAME = 1;
+    private static final int THREAD_NAME = 2;
+    private static final int ARG_NAME = 3;
+    private static final int STRINGS = 4;
+
+    private final int capacity;
+    private final long originNanos = System.nanoTime();
+    // Event fields are atomic too, so that their accesses are ordered with those of published.
+    private final AtomicLongArray longs;
+    private final AtomicReferenceArray<String> strings;
+    // The sequence number of the event in each slot, set once the slot is fully written.
+    private final AtomicLongArray published;
+    // The sequence number of the next event.
+    private final AtomicLong sequence = new AtomicLong();
+    // Events before this sequence number were cleared.
+    private volatile long cleared;
+
+    public TranscodeTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a tracer that keeps the last {@code capacity} events.
+     *
+     * @param capacity the number of events
+     */
+    public TranscodeTracer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be greater than 0.");
+        }
+        if (capacity > Integer.MAX_VALUE / LONGS) {
+            throw new IllegalArgumentException("Capacity is too big: " + capacity);
+        }
+        this.capacity = capacity;
+        longs = new AtomicLongArray(capacity * LONGS);
+        strings = new AtomicReferenceArray<>(capacity * STRINGS);
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1L);
+    }
+
+    /**
+     * Records an event that started at the given time, as returned by
+     * {@link System#nanoTime()}, and ends now.
+     *
+     * @param category the event category
+     * @param name the event name
+     * @param startNanos the start time
+     */
+    public void complete(@NonNull String category, @NonNull String name, long startNanos) {
+        complete(category, name, startNanos, null, 0L);
+    }
+
+    /**
+     * Same as {@link #complete(String, String, long)}, with a numeric argument.
+     *
+     * @param category the event category
+     * @param name the event name
+     * @param startNanos the start time
+     * @param argName the argument name, or null for none
+     * @param arg the argument value
+     */
+    public void complete(@NonNull String category, @NonNull String name, long startNanos,
+                         @Nullable String argName, long arg) {
+        long endNanos = System.nanoTime();
+        record(PHASE_COMPLETE, category, name, startNanos, endNanos - startNanos, argName, arg);
+    }
+
+    /**
+     * Records an event with no duration, happening now.
+     *
+     * @param category the event category
+     * @param name the event name
+     */
+    public void instant(@NonNull String category, @NonNull String name) {
+        record(PHASE_INSTANT, category, name, System.nanoTime(), 0L, null, 0L);
+    }
+
+    private void record(byte phase, @NonNull String category, @NonNull String name,
+                        long start, long duration,
+                        @Nullable String argName, long arg) {
+        Thread thread = Thread.currentThread();
+        long seq = sequence.getAndIncrement();
+        int i = (int) (seq % capacity);
+        // Mark the slot as being written, so that readers skip it until published.
+        // The field writes below can't move before this, nor after the final set.
+        published.set(i, -1L);
+        int l = i * LONGS;
+        longs.set(l + PHASE, phase);
+        longs.set(l + START, start);
+        longs.set(l + DURATION, duration);
+        longs.set(l + THREAD_ID, thread.getId());
+        longs.set(l + ARG, arg);
+        int s = i * STRINGS;
+        strings.set(s + CATEGORY, category);
+        strings.set(s + NAME, name);
+        strings.set(s + THREAD_NAME, thread.getName());
+        strings.set(s + ARG_NAME, argName);
+        published.set(i, seq);
+    }
+
+    /**
+     * Returns the number of events currently stored.
+     *
+     * @return the event count
+     */
+    public int getEventCount() {
+        return (int) Math.min(sequence.get() - cleared, capacity);
+    }
+
+    /**
+     * Removes all stored events.
+     */
+    public synchronized void clear() {
+        cleared = sequence.get();
+    }
+
+    /**
+     * Writes the stored events, oldest first, in the Chrome trace JSON format.
+     * The writer is not closed.
+     *
+     * @param writer the destination
+     * @throws IOException if writing fails
+     */
+    public synchronized void writeChromeTrace(@NonNull Writer writer) throws IOException {
+        int pid = Process.myPid();
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        Set<Long> threads = new HashSet<>();
+        boolean first = true;
+        long end = sequence.get();
+        for (long seq = Math.max(cleared, end - capacity); seq < end; seq++) {
+            int i = (int) (seq % capacity);
+            // Copy the slot, then check that it was not rewritten meanwhile. The field reads
+            // can't move after the second check, so a concurrent writer is always detected.
+            if (published.get(i) != seq) continue;
+            int l = i * LONGS;
+            byte phase = (byte) longs.get(l + PHASE);
+            long start = longs.get(l + START);
+            long duration = longs.get(l + DURATION);
+            long threadId = longs.get(l + THREAD_ID);
+            long arg = longs.get(l + ARG);
+            int s = i * STRINGS;
+            String category = strings.get(s + CATEGORY);
+            String name = strings.get(s + NAME);
+            String threadName = strings.get(s + THREAD_NAME);
+            String argName = strings.get(s + ARG_NAME);
+            if (published.get(i) != seq) continue;
+            if (!first) writer.write(',');
+            first = false;
+            if (threads.add(threadId)) {
+                // Metadata event, so that the viewer shows thread names.
+                writer.write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":" + pid
+                        + ",\"tid\":" + threadId + ",\"args\":{\"name\":");
+                writeString(writer, threadName);
+                writer.write("}},");
+            }
+            writer.write("{\"ph\":\"");
+            writer.write((char) phase);
+            writer.write("\",\"cat\":");
+            writeString(writer, category);
+            writer.write(",\"name\":");
+            writeString(writer, name);
+            writer.write(",\"pid\":" + pid + ",\"tid\":" + threadId + ",\"ts\":");
+            writeMicros(writer, start - originNanos);
+            if (phase == PHASE_COMPLETE) {
+                writer.write(",\"dur\":");
+                writeMicros(writer, duration);
+            } else {
+                writer.write(",\"s\":\"t\"");
+            }
+            if (argName != null) {
+                writer.write(",\"args\":{");
+                writeString(writer, argName);
+                writer.write(":" + arg + "}");
+            }
+            writer.write('}');
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    /**
+     * Returns the stored events in the Chrome trace JSON format.
+     * See {@link #writeChromeTrace(Writer)}.
+     *
+     * @return a JSON string
+     */
+    @NonNull
+    public String toChromeTrace() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeChromeTrace(writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Can't happen.
+        }
+        return writer.toString();
+    }
+
+    private static void writeMicros(@NonNull Writer writer, long nanos) throws IOException {
+        if (nanos < 0) {
+            writer.write('-');
+            nanos = -nanos;
+        }
+        long fraction = nanos % 1000;
+        writer.write(Long.toString(nanos / 1000));
+        writer.write('.');
+        if (fraction < 100) writer.write('0');
+        if (fraction < 10) writer.write('0');
+        writer.write(Long.toString(fraction));
+    }
+
+    private static void writeString(@NonNull Writer writer, @NonNull String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -18,6 +18,7 @@ package com.otaliastudios.transcoder;
 import android.os.Build;
 
 import com.otaliastudios.transcoder.internal.transcode.TranscodeEngine;
+import com.otaliastudios.transcoder.internal.transcode.TranscodeEstimator;
 import com.otaliastudios.transcoder.internal.utils.ThreadPool;
 import com.otaliastudios.transcoder.sink.DataSink;
 import com.otaliastudios.transcoder.validator.Validator;
@@ -105,4 +106,18 @@ public class Transcoder {
         });
     }
 
+    /**
+     * Estimates the outcome of transcoding with the given options, without running it.
+     * Sources are opened and the track strategies and validator are run, but no codec
+     * is created and nothing is written to the sink, so this is usually fast.
+     * However it does blocking I/O, so it should not be called from the UI thread.
+     * The options listener is not called.
+     *
+     * @param options the transcoder options
+     * @return the estimate
+     */
+    @NonNull
+    public TranscodeEstimate estimate(@NonNull TranscoderOptions options) {
+        return TranscodeEstimator.estimate(options);
+    }
 }
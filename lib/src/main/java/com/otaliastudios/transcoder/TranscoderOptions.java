@@ -42,6 +42,8 @@ import java.util.concurrent.Future;
  */
 public class TranscoderOptions {
 
+    private static final long DEFAULT_PROGRESS_INTERVAL_US = 100000;
+
     private TranscoderOptions() {
     }
 
@@ -57,12 +59,44 @@ public class TranscoderOptions {
     private AudioResampler audioResampler;
     private TranscoderListener listener;
     private Handler listenerHandler;
+    private PeaksListener audioPeaksListener;
+    private long audioPeaksBucketDurationUs;
+    private int dataSourceWindow;
+    private long progressIntervalUs;
+    private long progressStepUs;
+    private TranscodeTracer tracer;
 
     @NonNull
     public TranscoderListener getListener() {
         return listener;
     }
 
+    @Nullable
+    public PeaksListener getAudioPeaksListener() {
+        return audioPeaksListener;
+    }
+
+    public long getAudioPeaksBucketDurationUs() {
+        return audioPeaksBucketDurationUs;
+    }
+
+    public int getDataSourceWindow() {
+        return dataSourceWindow;
+    }
+
+    public long getProgressIntervalUs() {
+        return progressIntervalUs;
+    }
+
+    public long getProgressStepUs() {
+        return progressStepUs;
+    }
+
+    @Nullable
+    public TranscodeTracer getTracer() {
+        return tracer;
+    }
+
     @NonNull
     public Handler getListenerHandler() {
         return listenerHandler;
@@ -130,6 +164,12 @@ public class TranscoderOptions {
         private TimeInterpolator timeInterpolator;
         private AudioStretcher audioStretcher;
         private AudioResampler audioResampler;
+        private PeaksListener audioPeaksListener;
+        private long audioPeaksBucketDurationUs;
+        private int dataSourceWindow;
+        private long progressIntervalUs = DEFAULT_PROGRESS_INTERVAL_US;
+        private long progressStepUs;
+        private TranscodeTracer tracer;
 
         Builder(@NonNull String outPath) {
             this.dataSink = new DefaultDataSink(outPath);
@@ -335,6 +375,92 @@ public class TranscoderOptions {
             return this;
         }
 
+        /**
+         * Extracts audio peaks while transcoding, in buckets of the given duration in the
+         * output timeline. Results are posted to the listener handler. Peaks are only
+         * available when the audio track is decoded, not when it is passed through.
+         *
+         * @param bucketDurationUs the bucket duration
+         * @param listener a peaks listener, or null to disable
+         * @return this for chaining
+         */
+        @NonNull
+        public Builder setAudioPeaksListener(long bucketDurationUs, @Nullable PeaksListener listener) {
+            if (listener != null && bucketDurationUs <= 0) {
+                throw new IllegalArgumentException("Bucket duration should be greater than 0.");
+            }
+            this.audioPeaksBucketDurationUs = bucketDurationUs;
+            this.audioPeaksListener = listener;
+            return this;
+        }
+
+        /**
+         * Limits the number of data sources that are open at the same time, which is useful
+         * for very long concatenations. When this is greater than 0, each source is opened
+         * once to read its formats and duration, then closed. During transcoding, sources are
+         * reopened when needed, together with the given number of sources ahead, and closed
+         * as soon as they are consumed. Defaults to 0, which keeps all sources open.
+         *
+         * @param window the number of sources to open ahead, or 0 to disable
+         * @return this for chaining
+         */
+        @NonNull
+        public Builder setDataSourceWindow(int window) {
+            if (window < 0) {
+                throw new IllegalArgumentException("Window should be greater than or equal to 0.");
+            }
+            this.dataSourceWindow = window;
+            return this;
+        }
+
+        /**
+         * Sets the minimum wall time between two progress updates. Updates are also
+         * sent when the media position moves by the step set with {@link #setProgressStep(long)}.
+         * Defaults to 100 milliseconds. Pass 0 to only use the step.
+         * If both are 0, progress is sent as often as possible.
+         *
+         * @param intervalUs the interval in microseconds, or 0 to disable
+         * @return this for chaining
+         */
+        @NonNull
+        public Builder setProgressInterval(long intervalUs) {
+            if (intervalUs < 0) {
+                throw new IllegalArgumentException("Interval should be greater than or equal to 0.");
+            }
+            this.progressIntervalUs = intervalUs;
+            return this;
+        }
+
+        /**
+         * Sends a progress update each time the media position moves by the given step,
+         * in addition to the wall time interval set with {@link #setProgressInterval(long)}.
+         * Defaults to 0, which disables this.
+         *
+         * @param stepUs the media step in microseconds, or 0 to disable
+         * @return this for chaining
+         */
+        @NonNull
+        public Builder setProgressStep(long stepUs) {
+            if (stepUs < 0) {
+                throw new IllegalArgumentException("Step should be greater than or equal to 0.");
+            }
+            this.progressStepUs = stepUs;
+            return this;
+        }
+
+        /**
+         * Records the engine activity into the given tracer, which can then export it
+         * as a Chrome trace. This is much cheaper than verbose logging and can be used
+         * to find stalls in production. Defaults to null, which disables tracing.
+         *
+         * @param tracer a tracer, or null to disable
+         * @return this for chaining
+         */
+        @NonNull
+        public Builder setTracer(@Nullable TranscodeTracer tracer) {
+            this.tracer = tracer;
+            return this;
+        }
 
         @NonNull
         public TranscoderOptions build() {
@@ -383,6 +509,12 @@ public class TranscoderOptions {
             options.timeInterpolator = timeInterpolator;
             options.audioStretcher = audioStretcher;
             options.audioResampler = audioResampler;
+            options.audioPeaksListener = audioPeaksListener;
+            options.audioPeaksBucketDurationUs = audioPeaksBucketDurationUs;
+            options.dataSourceWindow = dataSourceWindow;
+            options.progressIntervalUs = progressIntervalUs;
+            options.progressStepUs = progressStepUs;
+            options.tracer = tracer;
             return options;
         }
 
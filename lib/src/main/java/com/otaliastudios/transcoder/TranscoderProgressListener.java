@@ -0,0 +1,17 @@
+package com.otaliastudios.transcoder;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A {@link TranscoderListener} that also receives throughput and estimated remaining time.
+ * Both progress callbacks are called for each progress update, the detailed one last.
+ */
+public interface TranscoderProgressListener extends TranscoderListener {
+
+    /**
+     * Called to notify progress, along with throughput and estimated remaining time.
+     *
+     * @param progress the progress snapshot
+     */
+    void onTranscodeProgress(@NonNull TranscodeProgress progress);
+}
@@ -6,11 +6,13 @@ import android.media.MediaFormat
 import android.opengl.EGL14
 import com.otaliastudios.opengl.core.EglCore
 import com.otaliastudios.opengl.surface.EglWindowSurface
+import com.otaliastudios.transcoder.TranscodeTracer
 import com.otaliastudios.transcoder.common.TrackStatus
 import com.otaliastudios.transcoder.common.TrackType
 import com.otaliastudios.transcoder.internal.media.MediaFormatConstants
 import com.otaliastudios.transcoder.internal.utils.Logger
 import com.otaliastudios.transcoder.internal.utils.TrackMap
+import com.otaliastudios.transcoder.internal.utils.trace
 import java.nio.ByteBuffer
 import kotlin.properties.Delegates.observable
 
@@ -44,11 +46,21 @@ internal class Codecs(
 
         private val heldInputs = ArrayDeque<Pair<ByteBuffer, Int>>()
 
+        private var tracer: TranscodeTracer? = null
+        private var tracerCategory = "Codec"
+
+        fun attachTracer(tracer: TranscodeTracer?, category: String) {
+            this.tracer = tracer
+            this.tracerCategory = category
+        }
+
         fun getInputBuffer(): Pair<ByteBuffer, Int>? {
             if (heldInputs.isNotEmpty()) {
                 return heldInputs.removeFirst().also { log?.v(state) }
             }
-            val id = codec.dequeueInputBuffer(100)
+            val id = tracer.trace(tracerCategory, "dequeueInputBuffer") {
+                codec.dequeueInputBuffer(100)
+            }
             return if (id >= 0) {
                 dequeuedInputs++
                 val buf = checkNotNull(codec.getInputBuffer(id)) { "inputBuffer($id) should not be null." }
@@ -72,6 +84,8 @@ internal class Codecs(
 
     private val log = Logger("Codecs")
 
+    private fun MediaFormat.getStringOrNull(key: String) = if (containsKey(key)) getString(key) else null
+
     val encoders = object : TrackMap<Codec> {
 
         override fun has(type: TrackType) = tracks.all[type] == TrackStatus.COMPRESSING
@@ -96,7 +110,11 @@ internal class Codecs(
 
             // Could consider MediaCodecList(MediaCodecList.REGULAR_CODECS).findEncoderForFormat(format)
             // But it's trickier, for example, format should not include frame rate on API 21 and maybe other quirks.
-            val codec = MediaCodec.createEncoderByType(format.getString(MediaFormat.KEY_MIME)!!)
+            // The strategy might have chosen a specific (hardware) encoder for this format.
+            val codec = when (val name = format.getStringOrNull(MediaFormatConstants.KEY_ENCODER_NAME)) {
+                null -> MediaCodec.createEncoderByType(format.getString(MediaFormat.KEY_MIME)!!)
+                else -> MediaCodec.createByCodecName(name)
+            }
             codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE)
             log.i("Selected encoder ${codec.name}")
             val surface = codec.createInputSurface()
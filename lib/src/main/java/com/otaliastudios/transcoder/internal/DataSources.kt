@@ -1,47 +1,119 @@
 package com.otaliastudios.transcoder.internal
 
+import com.otaliastudios.transcoder.PeaksOptions
 import com.otaliastudios.transcoder.ThumbnailerOptions
 import com.otaliastudios.transcoder.TranscoderOptions
 import com.otaliastudios.transcoder.common.TrackType
 import com.otaliastudios.transcoder.internal.utils.Logger
+import com.otaliastudios.transcoder.internal.utils.ThreadPool
 import com.otaliastudios.transcoder.internal.utils.TrackMap
+import com.otaliastudios.transcoder.internal.utils.mutableTrackMapOf
 import com.otaliastudios.transcoder.internal.utils.trackMapOf
 import com.otaliastudios.transcoder.source.BlankAudioDataSource
 import com.otaliastudios.transcoder.source.DataSource
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
 
 internal class DataSources private constructor(
         videoSources: List<DataSource>,
         audioSources: List<DataSource>,
+        private val window: Int = 0
 ) : TrackMap<List<DataSource>> {
 
-    constructor(options: TranscoderOptions) : this(options.videoDataSources, options.audioDataSources)
+    constructor(options: TranscoderOptions) : this(options.videoDataSources, options.audioDataSources, options.dataSourceWindow)
     constructor(options: ThumbnailerOptions) : this(options.dataSources, listOf())
+    constructor(videoSources: List<DataSource>) : this(videoSources, listOf())
+    constructor(options: PeaksOptions) : this(listOf(), options.dataSources)
 
     private val log = Logger("DataSources")
 
     private fun DataSource.init() = if (!isInitialized) initialize() else Unit
     private fun DataSource.deinit() = if (isInitialized) deinitialize() else Unit
-    private fun List<DataSource>.init() = forEach {
+
+    /**
+     * Runs [block] for each source in parallel on [ThreadPool.io], since opening the
+     * extractor and retriever is blocking I/O. All tasks are awaited, even after a failure
+     * or an interruption, so that none of them outlives this call. In that case, sources whose
+     * task succeeded are deinitialized, and the error of the first failed source is thrown.
+     */
+    private fun <T> List<DataSource>.parallel(block: (DataSource) -> T): List<T> {
+        if (size <= 1) return map(block)
+        val futures: List<Future<T>> = map { source -> ThreadPool.io.submit(Callable { block(source) }) }
+        var interrupted = false
+        val results = futures.map { future ->
+            var result: Result<T>? = null
+            while (result == null) {
+                try {
+                    result = Result.success(future.get())
+                } catch (e: ExecutionException) {
+                    result = Result.failure(e.cause ?: e)
+                } catch (e: InterruptedException) {
+                    interrupted = true
+                }
+            }
+            result
+        }
+        val error = results.firstNotNullOfOrNull { it.exceptionOrNull() }
+                ?: if (interrupted) InterruptedException() else null
+        if (error != null) {
+            zip(results).filter { it.second.isSuccess }.forEach { (source, _) ->
+                runCatching { source.deinit() }.onFailure {
+                    log.w("Could not deinitialize $source after a failure.", it)
+                }
+            }
+            throw error
+        }
+        return results.map { it.getOrThrow() }
+    }
+
+    // The duration is read here too, as it can be slow.
+    private fun List<DataSource>.init() = parallel {
         log.i("initializing $it... (isInit=${it.isInitialized})")
         it.init()
+        it.durationUs
     }
+
     private fun List<DataSource>.deinit() = forEach {
         log.i("deinitializing $it... (isInit=${it.isInitialized})")
         it.deinit()
     }
 
+    /**
+     * When a window is set, sources are opened once to be probed, then closed. They are
+     * reopened by the segments that need them, plus [window] sources ahead, and closed
+     * as soon as all the segments using them are destroyed.
+     */
+    private val lazySources: Map<DataSource, LazyDataSource>? = when {
+        window <= 0 -> null
+        else -> {
+            log.i("probing sources, window=$window...")
+            val distinct = (videoSources + audioSources).distinct()
+            val probes = distinct.parallel { source ->
+                source.init()
+                SourceProbe(source).also { source.deinit() }
+            }
+            distinct.zip(probes).associate { (source, probe) ->
+                source to LazyDataSource(source, probe).also { it.initialize() }
+            }
+        }
+    }
+
+    private fun List<DataSource>.lazy() = map { lazySources?.get(it) ?: it }
+
     init {
-        log.i("initializing videoSources...")
-        videoSources.init()
-        log.i("initializing audioSources...")
-        audioSources.init()
+        // The same source is often used for both tracks. Open it once.
+        if (lazySources == null) {
+            log.i("initializing sources...")
+            (videoSources + audioSources).distinct().init()
+        }
     }
 
     // Save and deinit on release, because a source that is discarded for video
     // might be active for audio. We don't want to deinit right away.
     private val discarded = mutableListOf<DataSource>()
 
-    private val videoSources: List<DataSource> = run {
+    private val videoSources: List<DataSource> = videoSources.lazy().let { videoSources ->
         val valid = videoSources.count { it.getTrackFormat(TrackType.VIDEO) != null }
         when (valid) {
             0 -> listOf<DataSource>().also { discarded += videoSources }
@@ -50,7 +122,7 @@ internal class DataSources private constructor(
         }
     }
 
-    private val audioSources: List<DataSource> = run {
+    private val audioSources: List<DataSource> = audioSources.lazy().let { audioSources ->
         val valid = audioSources.count { it.getTrackFormat(TrackType.AUDIO) != null }
         log.i("computing audioSources, valid=$valid")
         when (valid) {
@@ -77,6 +149,36 @@ internal class DataSources private constructor(
 
     fun all() = (audio + video).distinct()
 
+    // Index of the last destroyed segment, by type.
+    private val ended = mutableTrackMapOf(-1, -1)
+
+    /**
+     * Called when a segment is created for a track that is read. In windowed mode,
+     * starts opening the next sources in background.
+     */
+    fun activate(type: TrackType, index: Int) {
+        if (lazySources == null) return
+        this[type].drop(index + 1).take(window).forEach {
+            (it as? LazyDataSource)?.prefetch()
+        }
+    }
+
+    /**
+     * Called when a segment is destroyed. In windowed mode, closes its source,
+     * unless a later segment of either track still needs it: the same source
+     * can appear more than once in each list.
+     */
+    fun deactivate(type: TrackType, index: Int) {
+        if (lazySources == null) return
+        ended[type] = index
+        val source = this[type][index] as? LazyDataSource ?: return
+        val done = TrackType.values().all { other ->
+            val position = this[other].indexOfLast { it === source }
+            position <= ended[other]
+        }
+        if (done) source.close()
+    }
+
     fun release() {
         log.i("release(): releasing...")
         video.deinit()
@@ -0,0 +1,141 @@
+package com.otaliastudios.transcoder.internal
+
+import android.media.MediaExtractor
+import android.media.MediaFormat
+import com.otaliastudios.transcoder.common.TrackType
+import com.otaliastudios.transcoder.internal.utils.Logger
+import com.otaliastudios.transcoder.internal.utils.ThreadPool
+import com.otaliastudios.transcoder.internal.utils.TrackMap
+import com.otaliastudios.transcoder.internal.utils.trackMapOf
+import com.otaliastudios.transcoder.source.DataSource
+import com.otaliastudios.transcoder.source.DataSourceWrapper
+import com.otaliastudios.transcoder.source.DefaultDataSource
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+
+/**
+ * The metadata of a source, read once so that the source can be closed.
+ */
+internal class SourceProbe(source: DataSource) {
+    val formats: TrackMap<MediaFormat> = trackMapOf(
+            video = source.getTrackFormat(TrackType.VIDEO),
+            audio = source.getTrackFormat(TrackType.AUDIO)
+    )
+    val durationUs = source.durationUs
+    val orientation = source.orientation
+    val location: DoubleArray? = source.location
+}
+
+/**
+ * Wraps a [DataSource] so that it is only open while needed. Initializing this source
+ * does not open the wrapped one: it is opened by the first call that needs it, or ahead
+ * of time on [ThreadPool.io] through [prefetch], and closed by [close].
+ * While closed, metadata comes from the [probe] and the position is the last one seen.
+ *
+ * All methods except the prefetch task are called from the engine thread.
+ */
+internal class LazyDataSource(
+        private val source: DataSource,
+        private val probe: SourceProbe
+) : DataSource {
+
+    private val log = Logger("LazyDataSource")
+    private var initialized = false
+    private var closed = false
+    private var prefetch: Future<*>? = null
+    private var lastPositionUs = 0L
+
+    private val isOpen get() = prefetch == null && source.isInitialized
+
+    fun prefetch() {
+        if (!initialized || closed || prefetch != null || source.isInitialized) return
+        log.i("prefetch(): opening $source in background...")
+        prefetch = ThreadPool.io.submit(Runnable { source.initialize() })
+    }
+
+    private fun awaitPrefetch() {
+        val future = prefetch ?: return
+        prefetch = null
+        try {
+            future.get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    private fun open(): DataSource {
+        check(initialized) { "Source is not initialized." }
+        awaitPrefetch()
+        if (!source.isInitialized) {
+            log.i("open(): opening $source...")
+            source.initialize()
+        }
+        closed = false
+        return source
+    }
+
+    /**
+     * Closes the wrapped source, keeping its position.
+     * It will not be reopened by prefetches, but it can be reopened by using it.
+     */
+    fun close() {
+        awaitPrefetch()
+        closed = true
+        if (source.isInitialized) {
+            log.i("close(): closing $source...")
+            lastPositionUs = source.positionUs
+            source.deinitialize()
+        }
+    }
+
+    /**
+     * Returns a new extractor from the wrapped source, if it is a [DefaultDataSource]
+     * or a [DataSourceWrapper], and null otherwise. This does not open the wrapped source.
+     */
+    fun createExtractor(): MediaExtractor? = when (source) {
+        is DefaultDataSource -> source.createExtractor()
+        is DataSourceWrapper -> source.createExtractor()
+        else -> null
+    }
+
+    override fun initialize() {
+        initialized = true
+    }
+
+    override fun deinitialize() {
+        runCatching { close() }
+        initialized = false
+        closed = false
+    }
+
+    override fun isInitialized() = initialized
+
+    override fun getOrientation() = probe.orientation
+
+    override fun getLocation() = probe.location
+
+    override fun getDurationUs() = probe.durationUs
+
+    override fun getTrackFormat(type: TrackType) = probe.formats.getOrNull(type)
+
+    override fun selectTrack(type: TrackType) = open().selectTrack(type)
+
+    override fun seekTo(desiredPositionUs: Long) = open().seekTo(desiredPositionUs)
+
+    override fun canReadTrack(type: TrackType) = open().canReadTrack(type)
+
+    override fun readTrack(chunk: DataSource.Chunk) = open().readTrack(chunk)
+
+    override fun getPositionUs(): Long {
+        if (isOpen) lastPositionUs = source.positionUs
+        return lastPositionUs
+    }
+
+    override fun isDrained() = closed || open().isDrained
+
+    override fun releaseTrack(type: TrackType) {
+        if (isOpen) source.releaseTrack(type)
+    }
+
+    override fun toString() = "Lazy($source)"
+}
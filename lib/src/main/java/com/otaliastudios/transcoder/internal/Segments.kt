@@ -67,6 +67,7 @@ internal class Segments(
         val source = sources[type].getOrNull(index) ?: return null
         log.i("tryCreateSegment($type, $index): created!")
         if (tracks.active.has(type)) {
+            sources.activate(type, index)
             source.selectTrack(type)
             // TODO this sucks
             // By design, all sources must select all tracks before seeking. We can achieve this
@@ -106,6 +107,7 @@ internal class Segments(
         if (tracks.active.has(segment.type)) {
             source.releaseTrack(segment.type)
         }
+        sources.deactivate(segment.type, segment.index)
         requestedIndex[segment.type] = segment.index + 1
     }
 }
\ No newline at end of file
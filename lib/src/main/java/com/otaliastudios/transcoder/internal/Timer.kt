@@ -3,7 +3,7 @@ package com.otaliastudios.transcoder.internal
 import com.otaliastudios.transcoder.common.TrackType
 import com.otaliastudios.transcoder.internal.utils.Logger
 import com.otaliastudios.transcoder.internal.utils.TrackMap
-import com.otaliastudios.transcoder.source.DataSource
+import com.otaliastudios.transcoder.internal.utils.trackMapOf
 import com.otaliastudios.transcoder.time.TimeInterpolator
 
 internal class Timer(
@@ -15,20 +15,55 @@ internal class Timer(
 
     private val log = Logger("Timer")
 
-    private fun List<DataSource>.durationUs(current: Int) = foldIndexed(0L) { index, acc, source ->
-        // If source has been drained, readUs can be more precise than durationUs
-        acc + if (index < current) source.positionUs else source.durationUs
-    }
+    /**
+     * Cumulative offsets of a track timeline, so that queries don't iterate the sources.
+     * Durations are summed once. Positions of completed sources are summed as segments
+     * complete, which is detected by comparing the current index with the last one seen.
+     */
+    private inner class Timeline(type: TrackType) {
+        private val sources = this@Timer.sources[type]
+
+        // prefixUs[i] is the duration of all sources before i.
+        private val prefixUs = LongArray(sources.size + 1).also {
+            sources.forEachIndexed { index, source -> it[index + 1] = it[index] + source.durationUs }
+        }
+
+        private var completed = 0
+        private var completedUs = 0L
+
+        private fun complete(current: Int) {
+            while (completed < current) {
+                // If source has been drained, readUs can be more precise than durationUs
+                completedUs += sources[completed].positionUs
+                completed++
+            }
+        }
+
+        fun positionUs(current: Int): Long {
+            complete(current)
+            val currentUs = sources.getOrNull(current)?.positionUs ?: 0L
+            return completedUs + currentUs
+        }
 
-    private fun List<DataSource>.positionUs(current: Int) = foldIndexed(0L) { index, acc, source ->
-        if (index <= current) acc + source.positionUs else acc
+        fun durationUs(current: Int): Long {
+            complete(current)
+            val remainingUs = prefixUs.last() - prefixUs[completed.coerceAtMost(sources.size)]
+            return completedUs + remainingUs
+        }
+
+        fun durationBeforeUs(index: Int) = prefixUs[index]
     }
 
+    private val timelines = trackMapOf(
+            video = Timeline(TrackType.VIDEO),
+            audio = Timeline(TrackType.AUDIO)
+    )
+
     val positionUs = object : TrackMap<Long> {
         override fun has(type: TrackType) = true
         override fun get(type: TrackType): Long {
             return if (!tracks.active.has(type)) 0L
-            else sources[type].positionUs(current = current[type])
+            else timelines[type].positionUs(current = current[type])
         }
     }
 
@@ -36,7 +71,7 @@ internal class Timer(
         override fun has(type: TrackType) = true
         override fun get(type: TrackType): Long {
             return if (!tracks.active.has(type)) 0L
-            else sources[type].durationUs(current = current[type])
+            else timelines[type].durationUs(current = current[type])
         }
     }
 
@@ -59,9 +94,7 @@ internal class Timer(
 
     fun localize(type: TrackType, index: Int, positionUs: Long): Long? {
         if (!tracks.active.has(type)) return null
-        val behindUs = sources[type]
-                .filterIndexed { i, _ -> i < index }
-                .durationUs(-1)
+        val behindUs = timelines[type].durationBeforeUs(index)
         val localizedUs = positionUs - behindUs
         if (localizedUs < 0L) return null
         if (localizedUs > sources[type][index].durationUs) return null
@@ -3,11 +3,13 @@ package com.otaliastudios.transcoder.internal
 import android.media.MediaFormat
 import com.otaliastudios.transcoder.common.TrackStatus
 import com.otaliastudios.transcoder.common.TrackType
+import com.otaliastudios.transcoder.internal.media.ContentStatsProvider
 import com.otaliastudios.transcoder.internal.media.MediaFormatProvider
 import com.otaliastudios.transcoder.internal.utils.Logger
 import com.otaliastudios.transcoder.internal.utils.TrackMap
 import com.otaliastudios.transcoder.internal.utils.trackMapOf
 import com.otaliastudios.transcoder.source.DataSource
+import com.otaliastudios.transcoder.strategy.ContentAwareStrategy
 import com.otaliastudios.transcoder.strategy.TrackStrategy
 
 internal class Tracks(
@@ -63,9 +65,12 @@ internal class Tracks(
         }
 
         val provider = MediaFormatProvider()
+        val stats = type == TrackType.VIDEO && strategy is ContentAwareStrategy && strategy.needsContentStats()
         val inputs = sources.mapNotNull {
             val format = it.getTrackFormat(type) ?: return@mapNotNull null
-            provider.provideMediaFormat(it, type, format)
+            provider.provideMediaFormat(it, type, format).also { complete ->
+                if (stats) ContentStatsProvider().provideContentStats(it, complete)
+            }
         }
 
         // The DataSources class already tries to address this for audio, by inserting
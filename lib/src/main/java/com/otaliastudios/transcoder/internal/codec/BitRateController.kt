@@ -0,0 +1,101 @@
+package com.otaliastudios.transcoder.internal.codec
+
+import android.media.MediaCodec
+import android.os.Bundle
+import com.otaliastudios.transcoder.internal.Timer
+import com.otaliastudios.transcoder.internal.utils.Logger
+
+/**
+ * Steers the video encoder bit rate so that the output file gets close to [targetBytes].
+ *
+ * The video budget is what's left of the target after the container overhead and the other
+ * tracks, which are assumed to be written at [otherBitRate] over the output duration.
+ * Every [ADJUST_INTERVAL_US] of output time, as read from the encoded timestamps, we compare
+ * the bytes written so far with the budget: the remaining bytes spread over the remaining time
+ * give the bit rate we need, which is then corrected by how much the encoder overshoots or
+ * undershoots the requested bit rate. Changes are applied through [MediaCodec.setParameters].
+ *
+ * The output duration is [outputDurationUs] when the caller knows how the time interpolator
+ * maps the input timeline. Otherwise, it starts from the input duration read by [Timer] and
+ * is scaled by the ratio of output time to input time seen so far.
+ */
+internal class BitRateController(
+        private val targetBytes: Long,
+        private val otherBitRate: Long,
+        private val timer: Timer,
+        private val outputDurationUs: Long?
+) {
+
+    private val log = Logger("BitRateController")
+
+    private var durationUs: Long = (outputDurationUs ?: timer.totalDurationUs).coerceAtLeast(1L)
+
+    private val budgetBits: Double get() {
+        val otherBits = otherBitRate.toDouble() * durationUs / 1_000_000
+        return (targetBytes * 8 * (1 - CONTAINER_OVERHEAD) - otherBits).coerceAtLeast(0.0)
+    }
+
+    /**
+     * The initial bit rate, to be used when configuring the encoder.
+     */
+    var bitRate: Int = (budgetBits * 1_000_000 / durationUs)
+            .coerceIn(MIN_BIT_RATE.toDouble(), Int.MAX_VALUE.toDouble()).toInt()
+        private set
+
+    private var writtenBits = 0.0
+    private var requestedBits = 0.0
+    private var firstUs = Long.MIN_VALUE
+    private var lastAdjustUs = 0L
+
+    init {
+        log.i("init: targetBytes=$targetBytes otherBitRate=$otherBitRate " +
+                "durationUs=$durationUs budgetBits=$budgetBits bitRate=$bitRate")
+    }
+
+    /**
+     * Called for each encoded buffer, whose timestamp is already interpolated.
+     */
+    fun onOutput(codec: MediaCodec, info: MediaCodec.BufferInfo) {
+        // Codec config is not media and is not paced by the bit rate.
+        if (info.flags and MediaCodec.BUFFER_FLAG_CODEC_CONFIG != 0) return
+        if (firstUs == Long.MIN_VALUE) firstUs = info.presentationTimeUs
+        writtenBits += info.size * 8.0
+        val elapsedUs = info.presentationTimeUs - firstUs
+        if (elapsedUs - lastAdjustUs < ADJUST_INTERVAL_US) return
+        requestedBits += bitRate.toDouble() * (elapsedUs - lastAdjustUs) / 1_000_000
+        lastAdjustUs = elapsedUs
+        if (outputDurationUs == null) {
+            val inputUs = timer.positionUs.video
+            if (inputUs > 0) durationUs = (timer.totalDurationUs.toDouble() * elapsedUs / inputUs).toLong()
+        }
+        val remainingUs = durationUs - elapsedUs
+        if (elapsedUs < WARMUP_US || remainingUs < ADJUST_INTERVAL_US) return
+
+        // How much the encoder actually writes compared to what we asked.
+        val accuracy = (writtenBits / requestedBits).coerceIn(0.5, 2.0)
+        val neededBitRate = (budgetBits - writtenBits).coerceAtLeast(0.0) * 1_000_000 / remainingUs
+        val newBitRate = (neededBitRate / accuracy)
+                .coerceIn(bitRate * MAX_DECREASE, bitRate * MAX_INCREASE)
+                .coerceIn(MIN_BIT_RATE.toDouble(), Int.MAX_VALUE.toDouble())
+                .toInt()
+        if (Math.abs(newBitRate - bitRate) < bitRate * MIN_CHANGE) return
+        log.i("onOutput(): elapsedUs=$elapsedUs durationUs=$durationUs writtenBits=$writtenBits " +
+                "accuracy=$accuracy bitRate=$bitRate -> $newBitRate")
+        bitRate = newBitRate
+        codec.setParameters(Bundle().apply {
+            putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, newBitRate)
+        })
+    }
+
+    companion object {
+        // Share of the target size that goes to the container.
+        private const val CONTAINER_OVERHEAD = 0.02
+        private const val MIN_BIT_RATE = 100_000
+        private const val ADJUST_INTERVAL_US = 1_000_000L
+        // The first frames are mostly key frames and rate control is settling.
+        private const val WARMUP_US = 2_000_000L
+        private const val MAX_DECREASE = 0.5
+        private const val MAX_INCREASE = 1.5
+        private const val MIN_CHANGE = 0.05
+    }
+}
@@ -3,6 +3,7 @@ package com.otaliastudios.transcoder.internal.codec
 import android.media.MediaCodec.*
 import android.media.MediaFormat
 import android.view.Surface
+import com.otaliastudios.transcoder.TranscodeTracer
 import com.otaliastudios.transcoder.common.TrackType
 import com.otaliastudios.transcoder.common.trackType
 import com.otaliastudios.transcoder.internal.Codecs
@@ -11,6 +12,7 @@ import com.otaliastudios.transcoder.internal.data.ReaderData
 import com.otaliastudios.transcoder.internal.pipeline.Channel
 import com.otaliastudios.transcoder.internal.pipeline.QueuedStep
 import com.otaliastudios.transcoder.internal.pipeline.State
+import com.otaliastudios.transcoder.internal.utils.trace
 import java.nio.ByteBuffer
 
 
@@ -28,6 +30,7 @@ internal interface DecoderChannel : Channel {
 internal class Decoder(
     private val format: MediaFormat, // source.getTrackFormat(track)
     continuous: Boolean, // relevant if the source sends no-render chunks. should we compensate or not?
+    private val tracer: TranscodeTracer? = null,
 ) : QueuedStep<ReaderData, ReaderChannel, DecoderData, DecoderChannel>(
     when (format.trackType) {
         TrackType.VIDEO -> "VideoDecoder"
@@ -41,6 +44,9 @@ internal class Decoder(
         log.i("init: instantiating codec...")
     }
     private val decoder = Codecs.Codec(createDecoderByType(format.getString(MediaFormat.KEY_MIME)!!), null, log)
+    init {
+        decoder.attachTracer(tracer, name)
+    }
     private var info = BufferInfo()
     private val dropper = DecoderDropper(continuous)
 
@@ -74,7 +80,9 @@ internal class Decoder(
     }
 
     override fun drain(): State<DecoderData> {
-        val result = decoder.codec.dequeueOutputBuffer(info, 100)
+        val result = tracer.trace(name, "dequeueOutputBuffer") {
+            decoder.codec.dequeueOutputBuffer(info, 100)
+        }
         return when (result) {
             INFO_TRY_AGAIN_LATER -> {
                 log.i("drain(): got INFO_TRY_AGAIN_LATER, waiting.")
@@ -91,8 +99,8 @@ internal class Decoder(
             }
             else -> {
                 val isEos = info.flags and BUFFER_FLAG_END_OF_STREAM != 0
-                val timeUs = if (isEos) 0 else dropper.output(info.presentationTimeUs)
-                if (timeUs != null /* && (isEos || info.size > 0) */) {
+                val timeUs = if (isEos) 0L else dropper.output(info.presentationTimeUs)
+                if (timeUs != DecoderDropper.DROP /* && (isEos || info.size > 0) */) {
                     val codecBuffer = decoder.codec.getOutputBuffer(result)
                     val buffer = when {
                         codecBuffer != null -> codecBuffer
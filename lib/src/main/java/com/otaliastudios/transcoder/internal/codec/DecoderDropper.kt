@@ -1,6 +1,5 @@
 package com.otaliastudios.transcoder.internal.codec
 
-import com.otaliastudios.transcoder.internal.utils.Logger
 import com.otaliastudios.transcoder.source.DataSource
 
 /**
@@ -17,76 +16,136 @@ import com.otaliastudios.transcoder.source.DataSource
  *
  * The second feature can be disabled by setting the [continuous] boolean to false.
  *
+ * Closed ranges are stored in primitive arrays, together with the cumulative delta of all the
+ * no-render periods up to each range. Since output is usually monotonic, a cursor remembers the
+ * last matched range, so that lookups are constant time; otherwise we binary search.
+ * Nothing is allocated per frame.
+ *
  * NOTE: we assumes that the [input] timestamps are monotonic. If they are not, everything
  * is screwed. Also, if the source jumps forward using seek, we won't catch the jump. This class
  * catches discontinuities only through changes in the render boolean passed to [input].
+ * If ranges end up overlapping, we fall back to a linear search, returning the first match.
  */
 internal class DecoderDropper(private val continuous: Boolean) {
 
-    private val log = Logger("DecoderDropper")
-    private val closedDeltas = mutableMapOf<LongRange, Long>()
-    private val closedRanges = mutableListOf<LongRange>()
-    private var pendingRange: LongRange? = null
+    private var starts = LongArray(INITIAL_CAPACITY)
+    private var ends = LongArray(INITIAL_CAPACITY)
+    private var deltas = LongArray(INITIAL_CAPACITY) // cumulative
+    private var size = 0
+    private var sorted = true
+    private var cursor = 0
 
-    private var firstInputUs: Long? = null
-    private var firstOutputUs: Long? = null
+    // The range being built. The end is NONE until we get a second render input.
+    private var pendingStart = NONE
+    private var pendingEnd = NONE
 
-    private fun debug(message: String, important: Boolean = false) {
-        /* val full = "$message firstInputUs=$firstInputUs " +
-                "validInputUs=[${closedRanges.joinToString {
-                    "$it(deltaUs=${closedDeltas[it]})"
-                }}] pendingRangeUs=${pendingRange}"
-        if (important) log.w(full) else log.v(full) */
-    }
+    private var firstInputUs = NONE
+    private var firstOutputUs = NONE
 
     fun input(timeUs: Long, render: Boolean) {
-        if (firstInputUs == null) {
+        if (firstInputUs == NONE) {
             firstInputUs = timeUs
         }
         if (render) {
-            debug("INPUT: inputUs=$timeUs")
-            // log.v("TDBG inputUs=$timeUs")
-            if (pendingRange == null) pendingRange = timeUs..Long.MAX_VALUE
-            else pendingRange = pendingRange!!.first..timeUs
+            if (pendingStart == NONE) pendingStart = timeUs
+            else pendingEnd = timeUs
         } else {
-            debug("INPUT: Got SKIPPING input! inputUs=$timeUs")
-            if (pendingRange != null && pendingRange!!.last != Long.MAX_VALUE) {
-                closedRanges.add(pendingRange!!)
-                closedDeltas[pendingRange!!] = if (closedRanges.size >= 2) {
-                    pendingRange!!.first - closedRanges[closedRanges.lastIndex - 1].last
-                } else 0L
+            if (pendingStart != NONE && pendingEnd != NONE) {
+                close(pendingStart, pendingEnd)
             }
-            pendingRange = null
+            pendingStart = NONE
+            pendingEnd = NONE
         }
     }
 
-    fun output(timeUs: Long): Long? {
-        if (firstOutputUs == null) {
-            firstOutputUs = timeUs
+    private fun close(start: Long, end: Long) {
+        if (size == starts.size) {
+            starts = starts.copyOf(size * 2)
+            ends = ends.copyOf(size * 2)
+            deltas = deltas.copyOf(size * 2)
+        }
+        if (size == 0) {
+            deltas[0] = 0L
+        } else {
+            deltas[size] = deltas[size - 1] + (start - ends[size - 1])
+            if (start <= ends[size - 1] || start < starts[size - 1]) sorted = false
+        }
+        if (end < start) sorted = false
+        starts[size] = start
+        ends[size] = end
+        size++
+    }
+
+    private fun contains(index: Int, timeUs: Long): Boolean {
+        return timeUs >= starts[index] && timeUs <= ends[index]
+    }
+
+    /**
+     * Returns the index of the first closed range containing [timeUs], or -1.
+     */
+    private fun find(timeUs: Long): Int {
+        if (size == 0) return -1
+        if (!sorted) {
+            for (i in 0 until size) {
+                if (contains(i, timeUs)) return i
+            }
+            return -1
+        }
+        // Fast path: same range as before, or the next one.
+        if (cursor < size && contains(cursor, timeUs)) return cursor
+        if (cursor + 1 < size && contains(cursor + 1, timeUs)) {
+            cursor++
+            return cursor
         }
-        val timeInInputScaleUs = firstInputUs!! + (timeUs - firstOutputUs!!)
-        var deltaUs = 0L
-        closedRanges.forEach {
-            deltaUs += closedDeltas[it]!!
-            if (it.contains(timeInInputScaleUs)) {
-                debug("OUTPUT: Rendering! outputTimeUs=$timeUs newOutputTimeUs=${timeUs - deltaUs} deltaUs=$deltaUs")
-                // log.v("TDBG outputUs=$timeUs")
-                return if (continuous) timeUs - deltaUs
-                else timeUs
+        // Binary search the last range starting at or before timeUs.
+        var low = 0
+        var high = size - 1
+        var candidate = -1
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            if (starts[middle] <= timeUs) {
+                candidate = middle
+                low = middle + 1
+            } else {
+                high = middle - 1
             }
         }
-        if (pendingRange != null) {
-            if (pendingRange!!.contains(timeInInputScaleUs)) {
-                if (closedRanges.isNotEmpty()) {
-                    deltaUs += pendingRange!!.first - closedRanges.last().last
-                }
-                debug("OUTPUT: Rendering! outputTimeUs=$timeUs newOutputTimeUs=${timeUs - deltaUs} deltaUs=$deltaUs")
-                // log.v("TDBG outputUs=$timeUs")
-                return if (continuous) timeUs - deltaUs
-                else timeUs
+        if (candidate >= 0 && contains(candidate, timeUs)) {
+            cursor = candidate
+            return candidate
+        }
+        return -1
+    }
+
+    /**
+     * Returns the output timestamp for the given decoder output timestamp,
+     * or [DROP] if this frame should not be rendered.
+     */
+    fun output(timeUs: Long): Long {
+        if (firstOutputUs == NONE) {
+            firstOutputUs = timeUs
+        }
+        check(firstInputUs != NONE) { "output() called before input()." }
+        val timeInInputScaleUs = firstInputUs + (timeUs - firstOutputUs)
+        val index = find(timeInInputScaleUs)
+        if (index >= 0) {
+            return if (continuous) timeUs - deltas[index] else timeUs
+        }
+        if (pendingStart != NONE) {
+            val end = if (pendingEnd == NONE) Long.MAX_VALUE else pendingEnd
+            if (timeInInputScaleUs in pendingStart..end) {
+                val deltaUs = if (size == 0) 0L
+                else deltas[size - 1] + (pendingStart - ends[size - 1])
+                return if (continuous) timeUs - deltaUs else timeUs
             }
         }
-        debug("OUTPUT: SKIPPING! outputTimeUs=$timeUs", important = true)
-        return null
+        return DROP
+    }
+
+    companion object {
+        /** Returned by [output] for frames that should be dropped. */
+        const val DROP = Long.MIN_VALUE
+        private const val NONE = Long.MIN_VALUE
+        private const val INITIAL_CAPACITY = 16
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package com.otaliastudios.transcoder.internal.codec
 
 import android.media.MediaCodec.*
+import com.otaliastudios.transcoder.TranscodeTracer
 import com.otaliastudios.transcoder.common.TrackType
 import com.otaliastudios.transcoder.internal.Codecs
 import com.otaliastudios.transcoder.internal.data.WriterChannel
@@ -8,6 +9,7 @@ import com.otaliastudios.transcoder.internal.data.WriterData
 import com.otaliastudios.transcoder.internal.pipeline.Channel
 import com.otaliastudios.transcoder.internal.pipeline.QueuedStep
 import com.otaliastudios.transcoder.internal.pipeline.State
+import com.otaliastudios.transcoder.internal.utils.trace
 import java.nio.ByteBuffer
 
 internal data class EncoderData(
@@ -27,6 +29,8 @@ internal class Encoder(
     private val encoder: Codecs.Codec,
     ownsCodecStart: Boolean,
     private val ownsCodecStop: Boolean,
+    private val bitRate: BitRateController? = null,
+    private val tracer: TranscodeTracer? = null,
 ) : QueuedStep<EncoderData, EncoderChannel, WriterData, WriterChannel>(
     when (encoder.surface) {
         null -> "AudioEncoder"
@@ -34,10 +38,12 @@ internal class Encoder(
     }
 ), EncoderChannel {
 
-    constructor(codecs: Codecs, type: TrackType) : this(
+    constructor(codecs: Codecs, type: TrackType, bitRate: BitRateController? = null, tracer: TranscodeTracer? = null) : this(
         codecs.encoders[type],
         codecs.ownsEncoderStart[type],
-        codecs.ownsEncoderStop[type]
+        codecs.ownsEncoderStop[type],
+        bitRate,
+        tracer
     )
 
     override val surface: Codecs.Surface? get() = encoder.surface
@@ -47,6 +53,7 @@ internal class Encoder(
 
     init {
         encoder.log = log
+        encoder.attachTracer(tracer, name)
         log.i("ownsStart=$ownsCodecStart ownsStop=$ownsCodecStop ${encoder.state}")
         if (ownsCodecStart) {
             encoder.codec.start()
@@ -83,7 +90,10 @@ internal class Encoder(
 
     override fun drain(): State<WriterData> {
         val timeoutUs = if (eosReceivedButNotEnqueued) 5000L else 100L
-        return when (val result = encoder.codec.dequeueOutputBuffer(info, timeoutUs)) {
+        val result = tracer.trace(name, "dequeueOutputBuffer") {
+            encoder.codec.dequeueOutputBuffer(info, timeoutUs)
+        }
+        return when (result) {
             INFO_TRY_AGAIN_LATER -> {
                 if (eosReceivedButNotEnqueued) {
                     // Horrible hack. When we don't own the MediaCodec, we can't enqueue EOS so we
@@ -118,6 +128,7 @@ internal class Encoder(
                     buffer.clear()
                     buffer.limit(info.offset + info.size)
                     buffer.position(info.offset)
+                    bitRate?.onOutput(encoder.codec, info)
                     val data = WriterData(buffer, timeUs, flags) {
                         encoder.codec.releaseOutputBuffer(result, false)
                         encoder.dequeuedOutputs--
@@ -11,6 +11,8 @@ import java.nio.ByteBuffer
 internal class Seeker(
     private val source: DataSource,
     positions: List<Long>,
+    private val syncFrame: (Long) -> Boolean = { false },
+    private val onSeek: (requestedUs: Long, actualUs: Long) -> Unit = { _, _ -> },
     private val seek: (Long) -> Boolean
 ) : BaseStep<Unit, Channel, Unit, Channel>("Seeker") {
 
@@ -22,11 +24,18 @@ internal class Seeker(
             if (seek(positions.first())) {
                 log.i("Seeking to next position ${positions.first()}")
                 val next = positions.removeFirst()
-                source.seekTo(next)
+                var actual = source.seekTo(next)
+                if (syncFrame(next) && actual < next) {
+                    // The source marks everything between the sync frame and the requested position
+                    // as not to be rendered. Seek to the sync frame itself so that it gets rendered.
+                    log.i("Seeking to sync frame $actual for position $next")
+                    actual = source.seekTo(actual)
+                }
+                onSeek(next, actual)
             } else {
                 // log.v("Not seeking to next Request. head=${positions.first()}")
             }
         }
         return state
     }
-}
\ No newline at end of file
+}
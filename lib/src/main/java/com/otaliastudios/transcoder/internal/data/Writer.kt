@@ -2,6 +2,7 @@ package com.otaliastudios.transcoder.internal.data
 
 import android.media.MediaCodec
 import android.media.MediaFormat
+import com.otaliastudios.transcoder.TranscodeTracer
 import com.otaliastudios.transcoder.common.TrackType
 import com.otaliastudios.transcoder.internal.pipeline.BaseStep
 import com.otaliastudios.transcoder.internal.pipeline.Channel
@@ -24,13 +25,16 @@ internal interface WriterChannel : Channel {
 
 internal class Writer(
     private val sink: DataSink,
-    private val track: TrackType
+    private val track: TrackType,
+    private val tracer: TranscodeTracer? = null
 ) : BaseStep<WriterData, WriterChannel, Unit, Channel>("Writer"), WriterChannel {
 
     override val channel = this
 
     private val info = MediaCodec.BufferInfo()
 
+    private val traceName = "writeTrack($track)"
+
     override fun handleFormat(format: MediaFormat) {
         log.i("handleFormat($format)")
         sink.setTrackFormat(track, format)
@@ -54,7 +58,13 @@ internal class Writer(
                 flags
             )
         }
-        sink.writeTrack(track, buffer, info)
+        if (tracer == null) {
+            sink.writeTrack(track, buffer, info)
+        } else {
+            val start = System.nanoTime()
+            sink.writeTrack(track, buffer, info)
+            tracer.complete(name, traceName, start, "bytes", info.size.toLong())
+        }
         state.value.release()
         return if (eos) State.Eos(Unit) else State.Ok(Unit)
     }
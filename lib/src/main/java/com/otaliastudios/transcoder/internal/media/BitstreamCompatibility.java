@@ -0,0 +1,253 @@
+package com.otaliastudios.transcoder.internal.media;
+
+import android.media.MediaFormat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.otaliastudios.transcoder.internal.utils.AudioSpecificConfig;
+import com.otaliastudios.transcoder.internal.utils.AvcCsdUtils;
+import com.otaliastudios.transcoder.internal.utils.AvcPps;
+import com.otaliastudios.transcoder.internal.utils.AvcSps;
+import com.otaliastudios.transcoder.internal.utils.HevcCsdUtils;
+import com.otaliastudios.transcoder.internal.utils.HevcPps;
+import com.otaliastudios.transcoder.internal.utils.HevcSps;
+import com.otaliastudios.transcoder.internal.utils.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Decides whether the compressed samples of two tracks can be written one after the other
+ * into the same output track. The muxer only stores the codec configuration of the first
+ * format, so the samples of the second must be decodable with it.
+ *
+ * This is the case when the codec configuration is identical, or when it only differs
+ * in fields that do not change how samples are parsed, like VUI timing or a lower level.
+ * When the configuration uses features we don't fully parse (scaling matrices, for example),
+ * we fall back to byte equality.
+ */
+public class BitstreamCompatibility {
+
+    private final static Logger LOG = new Logger("BitstreamCompatibility");
+
+    private BitstreamCompatibility() { }
+
+    /**
+     * Returns true if samples described by {@code other} can be appended to a track
+     * whose codec configuration comes from {@code first}.
+     *
+     * @param first the format of the first track
+     * @param other the format of a following track
+     * @return true if compatible
+     */
+    public static boolean isCompatible(@NonNull MediaFormat first, @NonNull MediaFormat other) {
+        String mime = getString(first, MediaFormat.KEY_MIME);
+        if (mime == null || !mime.equalsIgnoreCase(getString(other, MediaFormat.KEY_MIME))) {
+            return false;
+        }
+        if (getInteger(first, MediaFormatConstants.KEY_ROTATION_DEGREES)
+                != getInteger(other, MediaFormatConstants.KEY_ROTATION_DEGREES)) {
+            return false;
+        }
+        boolean sameCsd = sameBuffer(first, other, "csd-0") && sameBuffer(first, other, "csd-1");
+        if (sameCsd) return true;
+        try {
+            switch (mime.toLowerCase(Locale.ROOT)) {
+                case MediaFormatConstants.MIMETYPE_VIDEO_AVC: return isAvcCompatible(
+                        AvcCsdUtils.getSpsBuffer(first), AvcCsdUtils.getPpsBuffer(first),
+                        AvcCsdUtils.getSpsBuffer(other), AvcCsdUtils.getPpsBuffer(other));
+                case MediaFormatConstants.MIMETYPE_VIDEO_HEVC: return isHevcCompatible(
+                        HevcCsdUtils.getSpsBuffer(first), HevcCsdUtils.getPpsBuffer(first),
+                        HevcCsdUtils.getSpsBuffer(other), HevcCsdUtils.getPpsBuffer(other));
+                case MediaFormatConstants.MIMETYPE_AUDIO_AAC: return isAacCompatible(
+                        first.getByteBuffer("csd-0"), other.getByteBuffer("csd-0"));
+                default: return false;
+            }
+        } catch (RuntimeException e) {
+            LOG.w("isCompatible(" + mime + "): could not parse codec config.", e);
+            return false;
+        }
+    }
+
+    // The following take parameter sets without start code and NAL header.
+
+    static boolean isAvcCompatible(@NonNull ByteBuffer sps1, @NonNull ByteBuffer pps1,
+                                   @NonNull ByteBuffer sps2, @NonNull ByteBuffer pps2) {
+        AvcSps s1 = AvcSps.parse(sps1);
+        AvcSps s2 = AvcSps.parse(sps2);
+        if (!sps1.equals(sps2)) {
+            if (s1.scalingMatrixPresent || s2.scalingMatrixPresent) return false;
+            // Type 1 has offsets that we don't keep.
+            if (s1.picOrderCntType == 1 || s2.picOrderCntType == 1) return false;
+            boolean ok = s1.id == s2.id
+                    && s1.profileIdc == s2.profileIdc
+                    && s2.levelIdc <= s1.levelIdc
+                    && s1.chromaFormatIdc == s2.chromaFormatIdc
+                    && s1.separateColourPlane == s2.separateColourPlane
+                    && s1.bitDepthLuma == s2.bitDepthLuma
+                    && s1.bitDepthChroma == s2.bitDepthChroma
+                    && s1.qpprimeYZeroTransformBypass == s2.qpprimeYZeroTransformBypass
+                    && s1.log2MaxFrameNum == s2.log2MaxFrameNum
+                    && s1.picOrderCntType == s2.picOrderCntType
+                    && s1.log2MaxPicOrderCntLsb == s2.log2MaxPicOrderCntLsb
+                    && s2.maxNumRefFrames <= s1.maxNumRefFrames
+                    && s1.gapsInFrameNumAllowed == s2.gapsInFrameNumAllowed
+                    && s1.frameMbsOnly == s2.frameMbsOnly
+                    && s1.mbAdaptiveFrameField == s2.mbAdaptiveFrameField
+                    && s1.direct8x8Inference == s2.direct8x8Inference
+                    && s1.width == s2.width
+                    && s1.height == s2.height
+                    && s1.cropLeft == s2.cropLeft
+                    && s1.cropRight == s2.cropRight
+                    && s1.cropTop == s2.cropTop
+                    && s1.cropBottom == s2.cropBottom
+                    && fitsReorderDepth(s1.maxNumReorderFrames, s2.maxNumReorderFrames)
+                    && fitsReorderDepth(s1.maxDecFrameBuffering, s2.maxDecFrameBuffering);
+            if (!ok) return false;
+        }
+        if (pps1.equals(pps2)) return true;
+        AvcPps p1 = AvcPps.parse(pps1);
+        AvcPps p2 = AvcPps.parse(pps2);
+        if (p1.picScalingMatrixPresent || p2.picScalingMatrixPresent) return false;
+        if (p1.numSliceGroups > 1 || p2.numSliceGroups > 1) return false;
+        return p1.id == p2.id
+                && p1.spsId == p2.spsId
+                && p1.entropyCodingMode == p2.entropyCodingMode
+                && p1.bottomFieldPicOrderInFramePresent == p2.bottomFieldPicOrderInFramePresent
+                && p1.numRefIdxL0DefaultActive == p2.numRefIdxL0DefaultActive
+                && p1.numRefIdxL1DefaultActive == p2.numRefIdxL1DefaultActive
+                && p1.weightedPred == p2.weightedPred
+                && p1.weightedBipredIdc == p2.weightedBipredIdc
+                && p1.picInitQp == p2.picInitQp
+                && p1.picInitQs == p2.picInitQs
+                && p1.chromaQpIndexOffset == p2.chromaQpIndexOffset
+                && p1.deblockingFilterControlPresent == p2.deblockingFilterControlPresent
+                && p1.constrainedIntraPred == p2.constrainedIntraPred
+                && p1.redundantPicCntPresent == p2.redundantPicCntPresent
+                && p1.transform8x8Mode == p2.transform8x8Mode
+                && p1.secondChromaQpIndexOffset == p2.secondChromaQpIndexOffset;
+    }
+
+    static boolean isHevcCompatible(@NonNull ByteBuffer sps1, @NonNull ByteBuffer pps1,
+                                    @NonNull ByteBuffer sps2, @NonNull ByteBuffer pps2) {
+        HevcSps s1 = HevcSps.parse(sps1);
+        HevcSps s2 = HevcSps.parse(sps2);
+        HevcPps p1 = HevcPps.parse(pps1);
+        HevcPps p2 = HevcPps.parse(pps2);
+        if (s1.scalingListEnabled || s2.scalingListEnabled || s1.pcmEnabled || s2.pcmEnabled
+                || p1.tilesEnabled || p2.tilesEnabled) {
+            // Part of these configurations is skipped while parsing.
+            return false;
+        }
+        boolean spsOk = s1.id == s2.id
+                && s1.vpsId == s2.vpsId
+                && s1.profileTierLevel.profileSpace == s2.profileTierLevel.profileSpace
+                && s1.profileTierLevel.profileIdc == s2.profileTierLevel.profileIdc
+                && s2.profileTierLevel.levelIdc <= s1.profileTierLevel.levelIdc
+                && s1.maxSubLayers == s2.maxSubLayers
+                && s1.chromaFormatIdc == s2.chromaFormatIdc
+                && s1.separateColourPlane == s2.separateColourPlane
+                && s1.bitDepthLuma == s2.bitDepthLuma
+                && s1.bitDepthChroma == s2.bitDepthChroma
+                && s1.log2MaxPicOrderCntLsb == s2.log2MaxPicOrderCntLsb
+                && s1.width == s2.width
+                && s1.height == s2.height
+                && s1.cropLeft == s2.cropLeft
+                && s1.cropRight == s2.cropRight
+                && s1.cropTop == s2.cropTop
+                && s1.cropBottom == s2.cropBottom
+                && s2.maxDecPicBuffering <= s1.maxDecPicBuffering
+                && s2.maxNumReorderPics <= s1.maxNumReorderPics
+                && s1.log2MinLumaCodingBlockSize == s2.log2MinLumaCodingBlockSize
+                && s1.log2DiffMaxMinLumaCodingBlockSize == s2.log2DiffMaxMinLumaCodingBlockSize
+                && s1.log2MinLumaTransformBlockSize == s2.log2MinLumaTransformBlockSize
+                && s1.log2DiffMaxMinLumaTransformBlockSize == s2.log2DiffMaxMinLumaTransformBlockSize
+                && s1.ampEnabled == s2.ampEnabled
+                && s1.sampleAdaptiveOffsetEnabled == s2.sampleAdaptiveOffsetEnabled
+                && s1.numShortTermRefPicSets == s2.numShortTermRefPicSets
+                && Arrays.equals(s1.shortTermRefPicSets, s2.shortTermRefPicSets)
+                && s1.longTermRefPicsPresent == s2.longTermRefPicsPresent
+                && Arrays.equals(s1.longTermRefPicsSps, s2.longTermRefPicsSps)
+                && s1.temporalMvpEnabled == s2.temporalMvpEnabled
+                && s1.strongIntraSmoothingEnabled == s2.strongIntraSmoothingEnabled;
+        if (!spsOk) return false;
+        return p1.id == p2.id
+                && p1.spsId == p2.spsId
+                && p1.dependentSliceSegmentsEnabled == p2.dependentSliceSegmentsEnabled
+                && p1.outputFlagPresent == p2.outputFlagPresent
+                && p1.numExtraSliceHeaderBits == p2.numExtraSliceHeaderBits
+                && p1.signDataHidingEnabled == p2.signDataHidingEnabled
+                && p1.cabacInitPresent == p2.cabacInitPresent
+                && p1.numRefIdxL0DefaultActive == p2.numRefIdxL0DefaultActive
+                && p1.numRefIdxL1DefaultActive == p2.numRefIdxL1DefaultActive
+                && p1.initQp == p2.initQp
+                && p1.constrainedIntraPred == p2.constrainedIntraPred
+                && p1.transformSkipEnabled == p2.transformSkipEnabled
+                && p1.cuQpDeltaEnabled == p2.cuQpDeltaEnabled
+                && p1.diffCuQpDeltaDepth == p2.diffCuQpDeltaDepth
+                && p1.cbQpOffset == p2.cbQpOffset
+                && p1.crQpOffset == p2.crQpOffset
+                && p1.sliceChromaQpOffsetsPresent == p2.sliceChromaQpOffsetsPresent
+                && p1.weightedPred == p2.weightedPred
+                && p1.weightedBipred == p2.weightedBipred
+                && p1.transquantBypassEnabled == p2.transquantBypassEnabled
+                && p1.entropyCodingSyncEnabled == p2.entropyCodingSyncEnabled
+                && p1.loopFilterAcrossSlicesEnabled == p2.loopFilterAcrossSlicesEnabled
+                && p1.deblockingFilterControlPresent == p2.deblockingFilterControlPresent
+                && p1.deblockingFilterOverrideEnabled == p2.deblockingFilterOverrideEnabled
+                && p1.deblockingFilterDisabled == p2.deblockingFilterDisabled
+                && p1.betaOffset == p2.betaOffset
+                && p1.tcOffset == p2.tcOffset
+                && p1.scalingListDataPresent == p2.scalingListDataPresent
+                && p1.listsModificationPresent == p2.listsModificationPresent
+                && p1.log2ParallelMergeLevel == p2.log2ParallelMergeLevel
+                && p1.sliceSegmentHeaderExtensionPresent == p2.sliceSegmentHeaderExtensionPresent;
+    }
+
+    static boolean isAacCompatible(@NonNull ByteBuffer asc1, @NonNull ByteBuffer asc2) {
+        AudioSpecificConfig c1 = AudioSpecificConfig.parse(asc1);
+        AudioSpecificConfig c2 = AudioSpecificConfig.parse(asc2);
+        // The program_config_element is more than a channel count.
+        if (c1.channelConfig == 0 || c2.channelConfig == 0) return false;
+        return c1.objectType == c2.objectType
+                && c1.sampleRate == c2.sampleRate
+                && c1.channelConfig == c2.channelConfig
+                && c1.extensionObjectType == c2.extensionObjectType
+                && c1.extensionSampleRate == c2.extensionSampleRate
+                && c1.frameLength == c2.frameLength
+                && c1.dependsOnCoreCoder == c2.dependsOnCoreCoder
+                && c1.coreCoderDelay == c2.coreCoderDelay;
+    }
+
+    // A missing value (-1) means the decoder must assume the maximum.
+    private static boolean fitsReorderDepth(int first, int other) {
+        return first < 0 || (other >= 0 && other <= first);
+    }
+
+    private static boolean sameBuffer(@NonNull MediaFormat first, @NonNull MediaFormat other,
+                                      @NonNull String key) {
+        boolean has1 = first.containsKey(key);
+        boolean has2 = other.containsKey(key);
+        if (!has1 || !has2) return has1 == has2;
+        ByteBuffer b1 = first.getByteBuffer(key);
+        ByteBuffer b2 = other.getByteBuffer(key);
+        if (b1 == null || b2 == null) return b1 == b2;
+        // Compare from the start, whatever the current position.
+        ByteBuffer d1 = b1.duplicate();
+        ByteBuffer d2 = b2.duplicate();
+        d1.position(0);
+        d2.position(0);
+        return d1.equals(d2);
+    }
+
+    @Nullable
+    private static String getString(@NonNull MediaFormat format, @NonNull String key) {
+        return format.containsKey(key) ? format.getString(key) : null;
+    }
+
+    private static int getInteger(@NonNull MediaFormat format, @NonNull String key) {
+        return format.containsKey(key) ? format.getInteger(key) : 0;
+    }
+}
@@ -0,0 +1,171 @@
+package com.otaliastudios.transcoder.internal.media;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.otaliastudios.transcoder.common.TrackType;
+import com.otaliastudios.transcoder.common.TrackTypeKt;
+import com.otaliastudios.transcoder.internal.LazyDataSource;
+import com.otaliastudios.transcoder.internal.utils.Logger;
+import com.otaliastudios.transcoder.source.DataSource;
+import com.otaliastudios.transcoder.source.DataSourceWrapper;
+import com.otaliastudios.transcoder.source.DefaultDataSource;
+import com.otaliastudios.transcoder.strategy.ContentAwareStrategy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fills the {@link ContentAwareStrategy} keys of a video format, by reading a few windows
+ * of compressed samples spread across the source. Only sizes, sync flags and timestamps
+ * are looked at, nothing is decoded.
+ *
+ * Samples are read through a separate extractor, as returned by
+ * {@link DefaultDataSource#createExtractor()}, so that the state of the source is not affected.
+ * Wrappers and the lazy sources used for windows are unwrapped.
+ * Other sources are not inspected. Failures are not fatal: keys are simply not added.
+ */
+public class ContentStatsProvider {
+
+    private final static Logger LOG = new Logger("ContentStatsProvider");
+    private final static int WINDOWS = 4;
+    private final static int WINDOW_SAMPLES = 90;
+    private final static int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private long mKeyBytes;
+    private long mKeyCount;
+    private long mInterBytes;
+    private long mInterCount;
+    private long mSpanUs;
+    private long mSpanBytes;
+    private long mSyncIntervalUs;
+    private long mSyncIntervalCount;
+
+    /**
+     * Inspects the video track of the given source and adds statistics to its format.
+     *
+     * @param source source
+     * @param format the video format
+     */
+    public void provideContentStats(@NonNull DataSource source, @NonNull MediaFormat format) {
+        if (format.containsKey(ContentAwareStrategy.KEY_INTER_FRAME_RATIO)) return;
+        int bufferSize = format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)
+                ? format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE)
+                : DEFAULT_BUFFER_SIZE;
+        int frameRate = format.containsKey(MediaFormat.KEY_FRAME_RATE)
+                ? format.getInteger(MediaFormat.KEY_FRAME_RATE) : 30;
+        long frameUs = 1000000L / Math.max(frameRate, 1);
+        MediaExtractor extractor;
+        try {
+            extractor = createExtractor(source);
+        } catch (RuntimeException e) {
+            LOG.w("provideContentStats(): could not open extractor.", e);
+            return;
+        }
+        if (extractor == null) {
+            LOG.i("provideContentStats(): source has no extractor, skipping.");
+            return;
+        }
+        try {
+            int track = findVideoTrack(extractor);
+            if (track < 0) return;
+            extractor.selectTrack(track);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            // Wrappers might shorten the source, but the extractor covers the whole file.
+            MediaFormat trackFormat = extractor.getTrackFormat(track);
+            long durationUs = trackFormat.containsKey(MediaFormat.KEY_DURATION)
+                    ? trackFormat.getLong(MediaFormat.KEY_DURATION)
+                    : source.getDurationUs();
+            durationUs = Math.max(durationUs, 0);
+            long originUs = extractor.getSampleTime();
+            long lastUs = Long.MIN_VALUE;
+            for (int window = 0; window < WINDOWS; window++) {
+                extractor.seekTo(originUs + durationUs * window / WINDOWS,
+                        MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                lastUs = readWindow(extractor, buffer, lastUs, frameUs);
+            }
+        } catch (RuntimeException e) {
+            LOG.w("provideContentStats(): could not read samples.", e);
+            return;
+        } finally {
+            extractor.release();
+        }
+        if (mKeyCount > 0 && mInterCount > 0) {
+            float keyAverage = (float) mKeyBytes / mKeyCount;
+            float interAverage = (float) mInterBytes / mInterCount;
+            format.setFloat(ContentAwareStrategy.KEY_INTER_FRAME_RATIO, interAverage / keyAverage);
+        }
+        if (mSpanUs > 0) {
+            long bitRate = mSpanBytes * 8 * 1000000L / mSpanUs;
+            format.setInteger(ContentAwareStrategy.KEY_SAMPLED_BIT_RATE, (int) Math.min(bitRate, Integer.MAX_VALUE));
+        }
+        if (mSyncIntervalCount > 0) {
+            format.setLong(ContentAwareStrategy.KEY_SYNC_INTERVAL_US, mSyncIntervalUs / mSyncIntervalCount);
+        }
+        LOG.i("provideContentStats(): keyCount=" + mKeyCount + " interCount=" + mInterCount
+                + " format=" + format);
+    }
+
+    @Nullable
+    private static MediaExtractor createExtractor(@NonNull DataSource source) {
+        if (source instanceof DefaultDataSource) {
+            return ((DefaultDataSource) source).createExtractor();
+        } else if (source instanceof DataSourceWrapper) {
+            return ((DataSourceWrapper) source).createExtractor();
+        } else if (source instanceof LazyDataSource) {
+            return ((LazyDataSource) source).createExtractor();
+        }
+        return null;
+    }
+
+    private static int findVideoTrack(@NonNull MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            if (TrackTypeKt.getTrackTypeOrNull(format) == TrackType.VIDEO) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads up to {@link #WINDOW_SAMPLES} samples, skipping those that were already
+     * seen by a previous window. Returns the last timestamp.
+     */
+    private long readWindow(@NonNull MediaExtractor extractor,
+                            @NonNull ByteBuffer buffer,
+                            long lastUs,
+                            long frameUs) {
+        long firstUs = Long.MIN_VALUE;
+        long windowLastUs = Long.MIN_VALUE;
+        long windowBytes = 0;
+        long lastKeyUs = Long.MIN_VALUE;
+        for (int i = 0; i < WINDOW_SAMPLES; i++, extractor.advance()) {
+            if (extractor.getSampleTrackIndex() < 0) break;
+            long timeUs = extractor.getSampleTime();
+            if (timeUs <= lastUs) continue;
+            buffer.clear();
+            int size = extractor.readSampleData(buffer, 0);
+            if (size < 0) break;
+            if ((extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                mKeyBytes += size;
+                mKeyCount++;
+                if (lastKeyUs != Long.MIN_VALUE) {
+                    mSyncIntervalUs += timeUs - lastKeyUs;
+                    mSyncIntervalCount++;
+                }
+                lastKeyUs = timeUs;
+            } else {
+                mInterBytes += size;
+                mInterCount++;
+            }
+            if (firstUs == Long.MIN_VALUE) firstUs = timeUs;
+            windowLastUs = Math.max(windowLastUs, timeUs);
+            windowBytes += size;
+        }
+        if (firstUs == Long.MIN_VALUE) return lastUs;
+        mSpanUs += windowLastUs - firstUs + frameUs;
+        mSpanBytes += windowBytes;
+        return windowLastUs;
+    }
+}
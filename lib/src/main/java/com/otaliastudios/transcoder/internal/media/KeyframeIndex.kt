@@ -0,0 +1,122 @@
+package com.otaliastudios.transcoder.internal.media
+
+import android.media.MediaExtractor
+import com.otaliastudios.transcoder.internal.utils.Logger
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+
+/**
+ * Sample timestamps of a video track, with the position of its sync samples.
+ * Times are in the extractor timebase (not shifted by the origin).
+ *
+ * With this, a seek can be resolved to the exact preceding sync sample with a binary search.
+ */
+internal class KeyframeIndex private constructor(
+        private val times: LongArray, // sorted
+        private val syncs: IntArray // indices in times, sorted
+) {
+
+    val size get() = times.size
+
+    /**
+     * Returns the time of the last sync sample at or before [timeUs],
+     * or the first sync sample if there's none.
+     */
+    fun syncBefore(timeUs: Long): Long {
+        var low = 0
+        var high = syncs.size - 1
+        var result = 0
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (times[syncs[mid]] <= timeUs) {
+                result = mid
+                low = mid + 1
+            } else {
+                high = mid - 1
+            }
+        }
+        return times[syncs[result]]
+    }
+
+    /**
+     * Saves this index to [file]. Failures are logged and ignored.
+     */
+    fun write(file: File) {
+        runCatching {
+            file.parentFile?.mkdirs()
+            DataOutputStream(FileOutputStream(file).buffered()).use {
+                it.writeInt(MAGIC)
+                it.writeInt(times.size)
+                times.forEach { time -> it.writeLong(time) }
+                it.writeInt(syncs.size)
+                syncs.forEach { sync -> it.writeInt(sync) }
+            }
+        }.onFailure {
+            log.w("write(): could not write $file", it)
+            file.delete()
+        }
+    }
+
+    companion object {
+        private val log = Logger("KeyframeIndex")
+        private const val MAGIC = 0x4B465831 // KFX1
+
+        /**
+         * Reads an index saved with [write], or returns null if absent or invalid.
+         */
+        @JvmStatic
+        fun read(file: File): KeyframeIndex? {
+            if (!file.exists()) return null
+            return runCatching {
+                DataInputStream(FileInputStream(file).buffered()).use {
+                    require(it.readInt() == MAGIC)
+                    val times = LongArray(it.readInt()) { _ -> it.readLong() }
+                    val syncs = IntArray(it.readInt()) { _ -> it.readInt() }
+                    KeyframeIndex(times, syncs)
+                }
+            }.onFailure {
+                log.w("read(): could not read $file", it)
+                file.delete()
+            }.getOrNull()
+        }
+
+        /**
+         * Scans the [track] of [extractor], which must be freshly initialized, without
+         * reading sample data. The extractor is released.
+         */
+        @JvmStatic
+        fun scan(extractor: MediaExtractor, track: Int): KeyframeIndex? {
+            val start = System.currentTimeMillis()
+            try {
+                extractor.selectTrack(track)
+                var times = LongArray(1024)
+                var syncs = IntArray(64)
+                var count = 0
+                var syncCount = 0
+                while (extractor.sampleTrackIndex >= 0) {
+                    if (count == times.size) times = times.copyOf(count * 2)
+                    times[count] = extractor.sampleTime
+                    if (extractor.sampleFlags and MediaExtractor.SAMPLE_FLAG_SYNC != 0) {
+                        if (syncCount == syncs.size) syncs = syncs.copyOf(syncCount * 2)
+                        syncs[syncCount++] = count
+                    }
+                    count++
+                    extractor.advance()
+                }
+                if (syncCount == 0) return null
+                // Presentation order can differ from decoding order (B-frames).
+                val order = (0 until count).sortedBy { times[it] }
+                val rank = IntArray(count).also { rank -> order.forEachIndexed { i, index -> rank[index] = i } }
+                val sortedTimes = LongArray(count) { times[order[it]] }
+                val sortedSyncs = IntArray(syncCount) { rank[syncs[it]] }.apply { sort() }
+                log.i("scan(): scanned $count samples in ${System.currentTimeMillis() - start}ms")
+                return KeyframeIndex(sortedTimes, sortedSyncs)
+            } finally {
+                extractor.release()
+            }
+        }
+    }
+}
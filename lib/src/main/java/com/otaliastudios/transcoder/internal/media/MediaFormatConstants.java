@@ -43,11 +43,25 @@ public class MediaFormatConstants {
      */
     public static final String KEY_ROTATION_DEGREES = "rotation-degrees";
 
+    /**
+     * Set by {@link com.otaliastudios.transcoder.strategy.DefaultVideoStrategy} in the output
+     * video format, when a target file size was requested. Value is a long, in bytes.
+     */
+    public static final String KEY_TARGET_SIZE = "transcoder-target-size";
+
+    /**
+     * Set by {@link com.otaliastudios.transcoder.strategy.DefaultVideoStrategy} in the output
+     * video format, when a specific encoder should be used. Value is a string.
+     */
+    public static final String KEY_ENCODER_NAME = "transcoder-encoder-name";
+
     // Video formats
     // from MediaFormat of API level >= 21
     public static final String MIMETYPE_VIDEO_AVC = "video/avc";
     public static final String MIMETYPE_VIDEO_H263 = "video/3gpp";
     public static final String MIMETYPE_VIDEO_VP8 = "video/x-vnd.on2.vp8";
+    public static final String MIMETYPE_VIDEO_HEVC = "video/hevc";
+    public static final String MIMETYPE_VIDEO_AV1 = "video/av01";
 
     // Audio formats
     // from MediaFormat of API level >= 21
@@ -2,14 +2,24 @@ package com.otaliastudios.transcoder.internal.media;
 
 import android.media.MediaCodec;
 import android.media.MediaFormat;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.otaliastudios.transcoder.common.TrackType;
+import com.otaliastudios.transcoder.internal.utils.AudioSpecificConfig;
+import com.otaliastudios.transcoder.internal.utils.AvcCsdUtils;
+import com.otaliastudios.transcoder.internal.utils.AvcSps;
+import com.otaliastudios.transcoder.internal.utils.Logger;
 import com.otaliastudios.transcoder.source.DataSource;
+import com.otaliastudios.transcoder.source.DataSourceWrapper;
+import com.otaliastudios.transcoder.source.DefaultDataSource;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Formats from {@link com.otaliastudios.transcoder.source.DataSource#getTrackFormat(TrackType)}
@@ -18,13 +28,33 @@ import java.io.IOException;
  * compute the output configuration.
  *
  * This class will check the completeness of the input format and if needed, provide a more
- * complete format by decoding the input file until MediaCodec computes all values.
+ * complete format by:
+ * - parsing the codec configuration (AAC AudioSpecificConfig, AVC SPS), which is cheap
+ * - looking up the values found by previous decodes of the same file, if it has a fingerprint
+ * - decoding the input file until MediaCodec computes all values, which requires reopening it
  */
 public class MediaFormatProvider {
 
+    private final static Logger LOG = new Logger("MediaFormatProvider");
+
+    // Values found by decoding, keyed by source fingerprint and track type.
+    // These are shared by all instances, so that retries and repeated sources don't decode again.
+    private final static LruCache<String, Map<String, Integer>> CACHE = new LruCache<>(64);
+
+    private final static String[] AUDIO_KEYS = {
+            MediaFormat.KEY_CHANNEL_COUNT,
+            MediaFormat.KEY_SAMPLE_RATE
+    };
+
+    private final static String[] VIDEO_KEYS = {
+            MediaFormat.KEY_WIDTH,
+            MediaFormat.KEY_HEIGHT,
+            MediaFormat.KEY_FRAME_RATE
+    };
+
     /**
      * Inspects the given format - coming from {@link DataSource#getTrackFormat(TrackType)},
-     * and in case it's not complete, it returns a decoded, complete format.
+     * and in case it's not complete, fills the missing values and returns it.
      *
      * @param source source
      * @param type type
@@ -35,28 +65,98 @@ public class MediaFormatProvider {
     public MediaFormat provideMediaFormat(@NonNull DataSource source,
                                    @NonNull TrackType type,
                                    @NonNull MediaFormat format) {
-        // If this format is already complete, there's nothing we should do.
+        // If this format is complete after probing, there's nothing else we should do.
+        probeMediaFormat(type, format);
         if (isComplete(type, format)) {
             return format;
         }
-        MediaFormat newFormat = decodeMediaFormat(source, type, format);
+        // Otherwise decode, unless a previous decode of the same file is cached.
+        // Only the missing values are taken from the decoder output.
+        String key = cacheKey(source, type);
+        Map<String, Integer> values = key == null ? null : CACHE.get(key);
+        if (values == null) {
+            MediaFormat decoded = decodeMediaFormat(source, type, format);
+            values = new HashMap<>();
+            for (String name : type == TrackType.AUDIO ? AUDIO_KEYS : VIDEO_KEYS) {
+                if (decoded.containsKey(name)) values.put(name, decoded.getInteger(name));
+            }
+            if (key != null) CACHE.put(key, values);
+        } else {
+            LOG.i("provideMediaFormat(" + type + "): found in cache.");
+        }
+        for (Map.Entry<String, Integer> entry : values.entrySet()) {
+            if (!format.containsKey(entry.getKey())) {
+                format.setInteger(entry.getKey(), entry.getValue());
+            }
+        }
         // If not complete, throw an exception. If we don't throw here,
         // it would likely be thrown by strategies anyway, since they expect a
         // complete format.
-        if (!isComplete(type, newFormat)) {
+        if (!isComplete(type, format)) {
             String message = "Could not get a complete format!";
-            message += " hasMimeType:" + newFormat.containsKey(MediaFormat.KEY_MIME);
+            message += " hasMimeType:" + format.containsKey(MediaFormat.KEY_MIME);
             if (type == TrackType.VIDEO) {
-                message += " hasWidth:" + newFormat.containsKey(MediaFormat.KEY_WIDTH);
-                message += " hasHeight:" + newFormat.containsKey(MediaFormat.KEY_HEIGHT);
-                message += " hasFrameRate:" + newFormat.containsKey(MediaFormat.KEY_FRAME_RATE);
+                message += " hasWidth:" + format.containsKey(MediaFormat.KEY_WIDTH);
+                message += " hasHeight:" + format.containsKey(MediaFormat.KEY_HEIGHT);
+                message += " hasFrameRate:" + format.containsKey(MediaFormat.KEY_FRAME_RATE);
             } else if (type == TrackType.AUDIO) {
-                message += " hasChannels:" + newFormat.containsKey(MediaFormat.KEY_CHANNEL_COUNT);
-                message += " hasSampleRate:" + newFormat.containsKey(MediaFormat.KEY_SAMPLE_RATE);
+                message += " hasChannels:" + format.containsKey(MediaFormat.KEY_CHANNEL_COUNT);
+                message += " hasSampleRate:" + format.containsKey(MediaFormat.KEY_SAMPLE_RATE);
             }
             throw new RuntimeException(message);
         }
-        return newFormat;
+        return format;
+    }
+
+    @Nullable
+    private static String cacheKey(@NonNull DataSource source, @NonNull TrackType type) {
+        String fingerprint = null;
+        if (source instanceof DefaultDataSource) {
+            fingerprint = ((DefaultDataSource) source).getFingerprint();
+        } else if (source instanceof DataSourceWrapper) {
+            fingerprint = ((DataSourceWrapper) source).getFingerprint();
+        }
+        return fingerprint == null ? null : fingerprint + "|" + type;
+    }
+
+    /**
+     * Fills the missing keys that can be read from the codec configuration, without
+     * touching the source. Failures are not fatal, since we can still decode.
+     */
+    private void probeMediaFormat(@NonNull TrackType type, @NonNull MediaFormat format) {
+        String mime = format.containsKey(MediaFormat.KEY_MIME)
+                ? format.getString(MediaFormat.KEY_MIME) : null;
+        try {
+            if (type == TrackType.AUDIO
+                    && MediaFormat.MIMETYPE_AUDIO_AAC.equals(mime)
+                    && format.containsKey("csd-0")
+                    && !isCompleteAudioFormat(format)) {
+                ByteBuffer csd = format.getByteBuffer("csd-0");
+                AudioSpecificConfig config = AudioSpecificConfig.parse(csd);
+                if (!format.containsKey(MediaFormat.KEY_SAMPLE_RATE)) {
+                    format.setInteger(MediaFormat.KEY_SAMPLE_RATE, config.getOutputSampleRate());
+                }
+                if (!format.containsKey(MediaFormat.KEY_CHANNEL_COUNT) && config.getChannelCount() > 0) {
+                    format.setInteger(MediaFormat.KEY_CHANNEL_COUNT, config.getChannelCount());
+                }
+            } else if (type == TrackType.VIDEO
+                    && MediaFormat.MIMETYPE_VIDEO_AVC.equals(mime)
+                    && format.containsKey("csd-0")
+                    && !isCompleteVideoFormat(format)) {
+                AvcSps sps = AvcSps.parse(AvcCsdUtils.getSpsBuffer(format));
+                if (!format.containsKey(MediaFormat.KEY_WIDTH)) {
+                    format.setInteger(MediaFormat.KEY_WIDTH, sps.width);
+                }
+                if (!format.containsKey(MediaFormat.KEY_HEIGHT)) {
+                    format.setInteger(MediaFormat.KEY_HEIGHT, sps.height);
+                }
+                if (!format.containsKey(MediaFormat.KEY_FRAME_RATE) && sps.frameRate > 0) {
+                    format.setInteger(MediaFormat.KEY_FRAME_RATE, Math.round(sps.frameRate));
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.w("probeMediaFormat(" + type + "): could not parse codec config.", e);
+        }
     }
 
     private boolean isComplete(@NonNull TrackType type, @NonNull MediaFormat format) {
@@ -0,0 +1,77 @@
+package com.otaliastudios.transcoder.internal.media;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.otaliastudios.transcoder.internal.utils.Logger;
+
+import java.util.Locale;
+
+/**
+ * Looks for hardware video encoders able to encode a given size and frame rate.
+ * Software encoders for modern codecs are much slower than hardware AVC encoders,
+ * so we only want to pick a different codec when there's hardware for it.
+ */
+public class VideoEncoders {
+
+    private final static Logger LOG = new Logger("VideoEncoders");
+
+    private VideoEncoders() { }
+
+    /**
+     * Returns the name of a hardware encoder for the given mime type that supports
+     * the given size and frame rate, or null if there's none.
+     *
+     * @param mimeType the mime type
+     * @param width the width
+     * @param height the height
+     * @param frameRate the frame rate
+     * @return an encoder name or null
+     */
+    @Nullable
+    public static String findHardwareEncoder(@NonNull String mimeType,
+                                             int width, int height, int frameRate) {
+        MediaCodecInfo[] infos;
+        try {
+            infos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        } catch (RuntimeException e) {
+            LOG.w("findHardwareEncoder(): could not list codecs.", e);
+            return null;
+        }
+        for (MediaCodecInfo info : infos) {
+            if (!info.isEncoder() || !isHardware(info)) continue;
+            for (String type : info.getSupportedTypes()) {
+                if (!type.equalsIgnoreCase(mimeType)) continue;
+                try {
+                    MediaCodecInfo.VideoCapabilities capabilities =
+                            info.getCapabilitiesForType(type).getVideoCapabilities();
+                    if (capabilities != null
+                            && capabilities.areSizeAndRateSupported(width, height, frameRate)) {
+                        LOG.i("findHardwareEncoder(" + mimeType + "): found " + info.getName());
+                        return info.getName();
+                    }
+                } catch (RuntimeException e) {
+                    LOG.w("findHardwareEncoder(): could not read capabilities of " + info.getName(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isHardware(@NonNull MediaCodecInfo info) {
+        if (Build.VERSION.SDK_INT >= 29) {
+            return info.isHardwareAccelerated() && !info.isSoftwareOnly();
+        }
+        // Before API 29, rely on the names of the platform software codecs.
+        String name = info.getName().toLowerCase(Locale.ROOT);
+        return !name.startsWith("omx.google.")
+                && !name.startsWith("c2.android.")
+                && !name.startsWith("omx.ffmpeg.")
+                && !(name.startsWith("omx.sec.") && name.contains(".sw."))
+                && !name.startsWith("c2.google.");
+    }
+}
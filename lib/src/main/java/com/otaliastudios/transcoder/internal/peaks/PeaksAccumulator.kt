@@ -0,0 +1,85 @@
+package com.otaliastudios.transcoder.internal.peaks
+
+import android.media.MediaFormat
+import android.media.MediaFormat.KEY_CHANNEL_COUNT
+import android.media.MediaFormat.KEY_SAMPLE_RATE
+import com.otaliastudios.transcoder.peaks.Peaks
+import java.nio.ShortBuffer
+import kotlin.math.sqrt
+
+/**
+ * Folds 16-bit PCM into min / max / RMS buckets of [bucketDurationUs], as it is decoded.
+ * Only the buckets are kept in memory. Arrays start with [capacity] buckets and grow
+ * if needed, for example when the duration was not accurate.
+ */
+internal class PeaksAccumulator(private val bucketDurationUs: Long, capacity: Int) {
+
+    private var min = ShortArray(capacity)
+    private var max = ShortArray(capacity)
+    private var squares = DoubleArray(capacity)
+    private var samples = IntArray(capacity)
+    private var size = 0
+
+    private var channels = 0
+    private var sampleRate = 0
+
+    fun setFormat(rawFormat: MediaFormat) {
+        channels = rawFormat.getInteger(KEY_CHANNEL_COUNT)
+        sampleRate = rawFormat.getInteger(KEY_SAMPLE_RATE)
+    }
+
+    private fun ensureCapacity(bucket: Int) {
+        if (bucket < min.size) return
+        val capacity = maxOf(bucket + 1, min.size * 2)
+        min = min.copyOf(capacity)
+        max = max.copyOf(capacity)
+        squares = squares.copyOf(capacity)
+        samples = samples.copyOf(capacity)
+    }
+
+    /**
+     * Adds the samples in [buffer], whose first frame is at [timeUs].
+     * The buffer position is not changed.
+     */
+    fun add(buffer: ShortBuffer, timeUs: Long) {
+        check(channels > 0) { "Format was not set." }
+        val frames = buffer.remaining() / channels
+        val offset = buffer.position()
+        var frame = 0
+        while (frame < frames) {
+            val frameUs = timeUs + frame * 1_000_000L / sampleRate
+            val bucket = if (frameUs < 0) -1 else (frameUs / bucketDurationUs).toInt()
+            // First frame of the next bucket (or of bucket 0). Avoid a division per frame.
+            val endUs = (bucket + 1) * bucketDurationUs
+            val end = ((endUs - timeUs) * sampleRate + 999_999L) / 1_000_000L
+            val last = end.coerceIn(frame + 1L, frames.toLong()).toInt()
+            if (bucket < 0) {
+                frame = last
+                continue
+            }
+            ensureCapacity(bucket)
+            var lo = if (samples[bucket] == 0) Short.MAX_VALUE.toInt() else min[bucket].toInt()
+            var hi = if (samples[bucket] == 0) Short.MIN_VALUE.toInt() else max[bucket].toInt()
+            var sum = 0.0
+            for (i in offset + frame * channels until offset + last * channels) {
+                val value = buffer.get(i).toInt()
+                if (value < lo) lo = value
+                if (value > hi) hi = value
+                sum += value * value
+            }
+            min[bucket] = lo.toShort()
+            max[bucket] = hi.toShort()
+            squares[bucket] += sum
+            samples[bucket] += (last - frame) * channels
+            if (bucket >= size) size = bucket + 1
+            frame = last
+        }
+    }
+
+    fun build(): Peaks {
+        val rms = ShortArray(size) {
+            if (samples[it] == 0) 0 else sqrt(squares[it] / samples[it]).toInt().toShort()
+        }
+        return Peaks(bucketDurationUs, min.copyOf(size), max.copyOf(size), rms)
+    }
+}
@@ -0,0 +1,58 @@
+package com.otaliastudios.transcoder.internal.peaks;
+
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+
+import com.otaliastudios.transcoder.PeaksListener;
+import com.otaliastudios.transcoder.peaks.Peaks;
+
+/**
+ * Wraps a PeaksListener and posts events on the given handler.
+ */
+class PeaksDispatcher {
+
+    private final Handler mHandler;
+    private final PeaksListener mListener;
+
+    PeaksDispatcher(@NonNull PeaksListener listener, @NonNull Handler handler) {
+        mHandler = handler;
+        mListener = listener;
+    }
+
+    void dispatchCancel() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onPeaksCanceled();
+            }
+        });
+    }
+
+    void dispatchProgress(final double progress) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onPeaksProgress(progress);
+            }
+        });
+    }
+
+    void dispatchCompletion(@NonNull final Peaks peaks) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onPeaksCompleted(peaks);
+            }
+        });
+    }
+
+    void dispatchFailure(@NonNull final Throwable exception) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onPeaksFailed(exception);
+            }
+        });
+    }
+}
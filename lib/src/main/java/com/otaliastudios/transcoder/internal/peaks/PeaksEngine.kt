@@ -0,0 +1,115 @@
+package com.otaliastudios.transcoder.internal.peaks
+
+import com.otaliastudios.transcoder.PeaksOptions
+import com.otaliastudios.transcoder.common.TrackType
+import com.otaliastudios.transcoder.internal.DataSources
+import com.otaliastudios.transcoder.internal.codec.Decoder
+import com.otaliastudios.transcoder.internal.data.Reader
+import com.otaliastudios.transcoder.internal.pipeline.Pipeline
+import com.otaliastudios.transcoder.internal.pipeline.State
+import com.otaliastudios.transcoder.internal.pipeline.plus
+import com.otaliastudios.transcoder.internal.utils.Logger
+import com.otaliastudios.transcoder.peaks.Peaks
+
+/**
+ * Decodes the audio of all sources, one after the other, in a single streaming pass.
+ * Decoded buffers are folded into buckets and released right away.
+ */
+internal class PeaksEngine(
+        private val dataSources: DataSources,
+        bucketCount: Int,
+        bucketDurationUs: Long
+) {
+
+    private val durationUs = dataSources.audio.sumOf { it.durationUs }
+
+    private val bucketDurationUs = when {
+        bucketDurationUs > 0 -> bucketDurationUs
+        else -> ((durationUs + bucketCount - 1) / bucketCount).coerceAtLeast(1L)
+    }
+
+    private val peaks = PeaksAccumulator(this.bucketDurationUs,
+            (durationUs / this.bucketDurationUs + 1).toInt())
+
+    private var pipeline: Pipeline? = null
+
+    fun peaks(progress: (Double) -> Unit): Peaks {
+        log.i("peaks(): durationUs=$durationUs bucketDurationUs=$bucketDurationUs")
+        var offsetUs = 0L
+        var loop = 0L
+        var positionUs = 0L
+        dataSources.audio.forEach { source ->
+            source.selectTrack(TrackType.AUDIO)
+            val pipeline = Pipeline.build("Peaks") {
+                Reader(source, TrackType.AUDIO) +
+                        Decoder(source.getTrackFormat(TrackType.AUDIO)!!, continuous = true) +
+                        PeaksSink(peaks, offsetUs) { positionUs = it }
+            }.also { this.pipeline = it }
+            while (true) {
+                val state = pipeline.execute()
+                if (Thread.interrupted()) {
+                    throw InterruptedException()
+                } else if (state is State.Eos) {
+                    break
+                } else if (state is State.Retry && state.sleep) {
+                    Thread.sleep(WAIT_MS)
+                }
+                if (state is State.Ok && durationUs > 0 && ++loop % PROGRESS_LOOPS == 0L) {
+                    progress((positionUs.toDouble() / durationUs).coerceIn(0.0, 1.0))
+                }
+            }
+            pipeline.release()
+            this.pipeline = null
+            source.releaseTrack(TrackType.AUDIO)
+            offsetUs += source.durationUs
+        }
+        progress(1.0)
+        return peaks.build()
+    }
+
+    fun cleanup() {
+        runCatching { pipeline?.release() }
+        runCatching { dataSources.release() }
+    }
+
+    companion object {
+        private val log = Logger("PeaksEngine")
+        private val WAIT_MS = 2L
+        private val PROGRESS_LOOPS = 10L
+
+        private fun Throwable.isInterrupted(): Boolean {
+            if (this is InterruptedException) return true
+            if (this == this.cause) return false
+            return this.cause?.isInterrupted() ?: false
+        }
+
+        @JvmStatic
+        fun peaks(options: PeaksOptions) {
+            log.i("peaks(): called...")
+            var engine: PeaksEngine? = null
+            val dispatcher = PeaksDispatcher(options.listener, options.listenerHandler)
+            try {
+                engine = PeaksEngine(
+                        dataSources = DataSources(options),
+                        bucketCount = options.bucketCount,
+                        bucketDurationUs = options.bucketDurationUs
+                )
+                val peaks = engine.peaks {
+                    dispatcher.dispatchProgress(it)
+                }
+                dispatcher.dispatchCompletion(peaks)
+            } catch (e: Exception) {
+                if (e.isInterrupted()) {
+                    log.i("Peaks extraction canceled.", e)
+                    dispatcher.dispatchCancel()
+                } else {
+                    log.e("Unexpected error while extracting peaks.", e)
+                    dispatcher.dispatchFailure(e)
+                    throw e
+                }
+            } finally {
+                engine?.cleanup()
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.otaliastudios.transcoder.internal.peaks
+
+import android.os.Handler
+import com.otaliastudios.transcoder.PeaksListener
+
+/**
+ * Peaks produced as a side output of a transcoding, through [tap].
+ * They are only available if the audio track is decoded, not if it is passed through.
+ */
+internal class PeaksOutput(
+        bucketDurationUs: Long,
+        listener: PeaksListener,
+        handler: Handler
+) {
+
+    private val peaks = PeaksAccumulator(bucketDurationUs, 1024)
+    private val dispatcher = PeaksDispatcher(listener, handler)
+    private var tapped = false
+
+    fun tap(): PeaksTap {
+        tapped = true
+        return PeaksTap(peaks)
+    }
+
+    fun complete() {
+        if (tapped) {
+            dispatcher.dispatchCompletion(peaks.build())
+        } else {
+            fail(IllegalStateException("Audio was not decoded, so peaks are not available."))
+        }
+    }
+
+    fun cancel() = dispatcher.dispatchCancel()
+
+    fun fail(exception: Throwable) = dispatcher.dispatchFailure(exception)
+}
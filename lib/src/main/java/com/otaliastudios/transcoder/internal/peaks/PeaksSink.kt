@@ -0,0 +1,47 @@
+package com.otaliastudios.transcoder.internal.peaks
+
+import android.media.MediaFormat
+import android.view.Surface
+import com.otaliastudios.transcoder.internal.codec.DecoderChannel
+import com.otaliastudios.transcoder.internal.codec.DecoderData
+import com.otaliastudios.transcoder.internal.pipeline.BaseStep
+import com.otaliastudios.transcoder.internal.pipeline.Channel
+import com.otaliastudios.transcoder.internal.pipeline.State
+
+/**
+ * Last step of the peaks pipeline. Feeds decoded audio, shifted by [offsetUs],
+ * to the accumulator and releases it right away.
+ *
+ * Like [com.otaliastudios.transcoder.internal.Timer.SegmentInterpolator], timestamps are
+ * rebased on the first one, since they include the container origin and any trim start.
+ */
+internal class PeaksSink(
+        private val peaks: PeaksAccumulator,
+        private val offsetUs: Long,
+        private val onTimeUs: (Long) -> Unit
+) : BaseStep<DecoderData, DecoderChannel, Unit, Channel>("PeaksSink"), DecoderChannel {
+
+    override val channel = this
+
+    private var baseUs = Long.MIN_VALUE
+
+    override fun handleSourceFormat(sourceFormat: MediaFormat): Surface? = null
+
+    override fun handleRawFormat(rawFormat: MediaFormat) {
+        log.i("handleRawFormat($rawFormat)")
+        peaks.setFormat(rawFormat)
+    }
+
+    override fun advance(state: State.Ok<DecoderData>): State<Unit> {
+        if (state is State.Eos) {
+            state.value.release(false)
+            return State.Eos(Unit)
+        }
+        if (baseUs == Long.MIN_VALUE) baseUs = state.value.timeUs
+        val timeUs = offsetUs + (state.value.timeUs - baseUs).coerceAtLeast(0L)
+        peaks.add(state.value.buffer.asShortBuffer(), timeUs)
+        state.value.release(false)
+        onTimeUs(timeUs)
+        return State.Ok(Unit)
+    }
+}
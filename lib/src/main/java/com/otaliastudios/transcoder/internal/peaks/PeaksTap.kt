@@ -0,0 +1,35 @@
+package com.otaliastudios.transcoder.internal.peaks
+
+import android.media.MediaFormat
+import android.view.Surface
+import com.otaliastudios.transcoder.internal.codec.DecoderChannel
+import com.otaliastudios.transcoder.internal.codec.DecoderData
+import com.otaliastudios.transcoder.internal.pipeline.BaseStep
+import com.otaliastudios.transcoder.internal.pipeline.State
+
+/**
+ * Feeds decoded audio to the accumulator, then passes it unchanged to the next step.
+ * This produces peaks as a side output of the transcoding audio pipeline.
+ */
+internal class PeaksTap(
+        private val peaks: PeaksAccumulator
+) : BaseStep<DecoderData, DecoderChannel, DecoderData, DecoderChannel>("PeaksTap"), DecoderChannel {
+
+    override val channel = this
+
+    override fun handleSourceFormat(sourceFormat: MediaFormat): Surface? {
+        return next.handleSourceFormat(sourceFormat)
+    }
+
+    override fun handleRawFormat(rawFormat: MediaFormat) {
+        peaks.setFormat(rawFormat)
+        next.handleRawFormat(rawFormat)
+    }
+
+    override fun advance(state: State.Ok<DecoderData>): State<DecoderData> {
+        if (state !is State.Eos) {
+            peaks.add(state.value.buffer.asShortBuffer(), state.value.timeUs)
+        }
+        return state
+    }
+}
@@ -1,7 +1,9 @@
 package com.otaliastudios.transcoder.internal.pipeline
 
 import android.util.Log
+import com.otaliastudios.transcoder.TranscodeTracer
 import com.otaliastudios.transcoder.internal.utils.Logger
+import com.otaliastudios.transcoder.internal.utils.trace
 
 
 
@@ -67,7 +69,11 @@ private class PipelineItem(
     }
 }
 
-internal class Pipeline private constructor(name: String, private val items: List<PipelineItem>) {
+internal class Pipeline private constructor(
+    private val name: String,
+    private val items: List<PipelineItem>,
+    private val tracer: TranscodeTracer?
+) {
 
     private val log = Logger(name)
 
@@ -85,7 +91,7 @@ internal class Pipeline private constructor(name: String, private val items: Lis
 
             if (item.canHandle(i == 0)) {
                 log.v("${item.name} START #${item.packets} (${item.unhandled.size} pending)")
-                val failure = item.handle()
+                val failure = tracer.trace(name, item.name) { item.handle() }
                 if (failure != null) {
                     sleeps = sleeps || failure.sleep
                     log.v("${item.name} FAILED #${item.packets}")
@@ -169,7 +175,7 @@ internal class Pipeline private constructor(name: String, private val items: Lis
     }
 
     companion object {
-        internal fun build(name: String, debug: String? = null, builder: () -> Builder<*, Channel> = { Builder<Unit, Channel>() }): Pipeline {
+        internal fun build(name: String, debug: String? = null, tracer: TranscodeTracer? = null, builder: () -> Builder<*, Channel> = { Builder<Unit, Channel>() }): Pipeline {
             val steps = builder().steps
             val items = steps.mapIndexed { index, step ->
                 @Suppress("UNCHECKED_CAST")
@@ -178,7 +184,7 @@ internal class Pipeline private constructor(name: String, private val items: Lis
                     name = "${index+1}/${steps.size} '${step.name}'"
                 )
             }
-            return Pipeline("${name}Pipeline${debug ?: ""}", items)
+            return Pipeline("${name}Pipeline${debug ?: ""}", items, tracer)
         }
     }
 
@@ -2,15 +2,18 @@ package com.otaliastudios.transcoder.internal.pipeline
 
 import android.media.MediaFormat
 import com.otaliastudios.transcoder.common.TrackType
+import com.otaliastudios.transcoder.TranscodeTracer
 import com.otaliastudios.transcoder.internal.Codecs
 import com.otaliastudios.transcoder.internal.audio.AudioEngine
 import com.otaliastudios.transcoder.internal.data.*
 import com.otaliastudios.transcoder.internal.data.Reader
 import com.otaliastudios.transcoder.internal.data.ReaderTimer
 import com.otaliastudios.transcoder.internal.data.Writer
+import com.otaliastudios.transcoder.internal.codec.BitRateController
 import com.otaliastudios.transcoder.internal.codec.Decoder
 import com.otaliastudios.transcoder.internal.codec.DecoderTimer
 import com.otaliastudios.transcoder.internal.codec.Encoder
+import com.otaliastudios.transcoder.internal.peaks.PeaksOutput
 import com.otaliastudios.transcoder.internal.video.VideoPublisher
 import com.otaliastudios.transcoder.internal.video.VideoRenderer
 import com.otaliastudios.transcoder.resample.AudioResampler
@@ -25,12 +28,13 @@ internal fun PassThroughPipeline(
     track: TrackType,
     source: DataSource,
     sink: DataSink,
-    interpolator: TimeInterpolator
-) = Pipeline.build("PassThrough$track") {
+    interpolator: TimeInterpolator,
+    tracer: TranscodeTracer? = null
+) = Pipeline.build("PassThrough$track", tracer = tracer) {
     Reader(source, track) +
             ReaderTimer(track, interpolator) +
             Bridge(source.getTrackFormat(track)!!) +
-            Writer(sink, track)
+            Writer(sink, track, tracer)
 }
 
 internal fun RegularPipeline(
@@ -43,10 +47,13 @@ internal fun RegularPipeline(
     codecs: Codecs,
     videoRotation: Int,
     audioStretcher: AudioStretcher,
-    audioResampler: AudioResampler
+    audioResampler: AudioResampler,
+    audioPeaks: PeaksOutput? = null,
+    videoBitRate: BitRateController? = null,
+    tracer: TranscodeTracer? = null
 ) = when (track) {
-    TrackType.VIDEO -> VideoPipeline(debug, source, sink, interpolator, format, codecs, videoRotation)
-    TrackType.AUDIO -> AudioPipeline(debug, source, sink, interpolator, format, codecs, audioStretcher, audioResampler)
+    TrackType.VIDEO -> VideoPipeline(debug, source, sink, interpolator, format, codecs, videoRotation, videoBitRate, tracer)
+    TrackType.AUDIO -> AudioPipeline(debug, source, sink, interpolator, format, codecs, audioStretcher, audioResampler, audioPeaks, tracer)
 }
 
 private fun VideoPipeline(
@@ -56,15 +63,17 @@ private fun VideoPipeline(
     interpolator: TimeInterpolator,
     format: MediaFormat,
     codecs: Codecs,
-    videoRotation: Int
-) = Pipeline.build("Video", debug) {
+    videoRotation: Int,
+    bitRate: BitRateController?,
+    tracer: TranscodeTracer?
+) = Pipeline.build("Video", debug, tracer) {
     Reader(source, TrackType.VIDEO) +
-            Decoder(source.getTrackFormat(TrackType.VIDEO)!!, true) +
+            Decoder(source.getTrackFormat(TrackType.VIDEO)!!, true, tracer) +
             DecoderTimer(TrackType.VIDEO, interpolator) +
             VideoRenderer(source.orientation, videoRotation, format) +
             VideoPublisher() +
-            Encoder(codecs, TrackType.VIDEO) +
-            Writer(sink, TrackType.VIDEO)
+            Encoder(codecs, TrackType.VIDEO, bitRate, tracer) +
+            Writer(sink, TrackType.VIDEO, tracer)
 }
 
 private fun AudioPipeline(
@@ -75,12 +84,16 @@ private fun AudioPipeline(
     format: MediaFormat,
     codecs: Codecs,
     audioStretcher: AudioStretcher,
-    audioResampler: AudioResampler
-) = Pipeline.build("Audio", debug) {
-    Reader(source, TrackType.AUDIO) +
-            Decoder(source.getTrackFormat(TrackType.AUDIO)!!, true) +
-            DecoderTimer(TrackType.AUDIO, interpolator) +
+    audioResampler: AudioResampler,
+    audioPeaks: PeaksOutput?,
+    tracer: TranscodeTracer?
+) = Pipeline.build("Audio", debug, tracer) {
+    val decoded = Reader(source, TrackType.AUDIO) +
+            Decoder(source.getTrackFormat(TrackType.AUDIO)!!, true, tracer) +
+            DecoderTimer(TrackType.AUDIO, interpolator)
+    val tapped = if (audioPeaks != null) decoded + audioPeaks.tap() else decoded
+    tapped +
             AudioEngine(audioStretcher, audioResampler, format) +
-            Encoder(codecs, TrackType.AUDIO) +
-            Writer(sink, TrackType.AUDIO)
+            Encoder(codecs, TrackType.AUDIO, tracer = tracer) +
+            Writer(sink, TrackType.AUDIO, tracer)
 }
\ No newline at end of file
@@ -23,15 +23,24 @@ import com.otaliastudios.transcoder.internal.pipeline.EmptyPipeline
 import com.otaliastudios.transcoder.internal.pipeline.Pipeline
 import com.otaliastudios.transcoder.internal.utils.*
 import com.otaliastudios.transcoder.internal.utils.forcingEos
+import com.otaliastudios.transcoder.internal.video.ReadbackBuffers
 import com.otaliastudios.transcoder.internal.video.VideoPublisher
 import com.otaliastudios.transcoder.internal.video.VideoRenderer
 import com.otaliastudios.transcoder.internal.video.VideoSnapshots
 import com.otaliastudios.transcoder.resize.Resizer
+import com.otaliastudios.transcoder.source.DataSource
+import com.otaliastudios.transcoder.source.DataSourceWrapper
+import com.otaliastudios.transcoder.source.DefaultDataSource
 import com.otaliastudios.transcoder.strategy.DefaultVideoStrategy
 import com.otaliastudios.transcoder.strategy.RemoveTrackStrategy
+import com.otaliastudios.transcoder.thumbnail.BitmapPool
+import com.otaliastudios.transcoder.thumbnail.Storyboard
+import com.otaliastudios.transcoder.thumbnail.StoryboardRequest
 import com.otaliastudios.transcoder.thumbnail.Thumbnail
+import com.otaliastudios.transcoder.thumbnail.ThumbnailCache
 import com.otaliastudios.transcoder.thumbnail.ThumbnailRequest
 import com.otaliastudios.transcoder.time.DefaultTimeInterpolator
+import java.io.File
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import kotlin.math.abs
@@ -40,11 +49,29 @@ internal class DefaultThumbnailsEngine(
         private val dataSources: DataSources,
         private val rotation: Int,
         resizer: Resizer,
-        requests: List<ThumbnailRequest>
+        requests: List<ThumbnailRequest>,
+        partition: Int = 0,
+        partitions: Int = 1,
+        private val cache: ThumbnailCache? = null,
+        private val fingerprint: String? = null,
+        private val bitmapConfig: Bitmap.Config = Bitmap.Config.ARGB_8888,
+        private val bitmapPool: BitmapPool? = null,
+        keyframeIndex: Boolean = false,
+        keyframeIndexDirectory: File? = null
 ) : ThumbnailsEngine() {
 
     private val log = Logger("ThumbnailsEngine")
 
+    // The planner needs sync frame times up front, see syncFrameUs.
+    init {
+        if (keyframeIndex) dataSources.video.forEach { source ->
+            when (source) {
+                is DefaultDataSource -> source.setKeyframeIndexEnabled(true, keyframeIndexDirectory)
+                is DataSourceWrapper -> source.setKeyframeIndexEnabled(true, keyframeIndexDirectory)
+            }
+        }
+    }
+
     // Huge framerate triks the VideoRenderer into not dropping frames, which is important
     // for thumbnail requests that want to catch the very last frame.
     private val tracks = Tracks(trackMapOf(
@@ -63,16 +90,52 @@ internal class DefaultThumbnailsEngine(
         log.i("Created Tracks, Segments, Timer...")
     }
 
-    private val positions = requests.flatMap { request ->
+    // The index is the position of this request among all positions of the same request.
+    private data class Position(val positionUs: Long, val request: ThumbnailRequest, val index: Int)
+
+    // When extracting in parallel, each engine takes a contiguous range of the sorted positions.
+    // Positions found in the cache are removed before creating any pipeline.
+    private var positions = requests.flatMap { request ->
+        val duration = timer.totalDurationUs
+        request.locate(duration).mapIndexed { index, positionUs -> Position(positionUs, request, index) }
+    }.sortedBy { it.positionUs }.let { all ->
+        all.subList(all.size * partition / partitions, all.size * (partition + 1) / partitions)
+    }
+
+    // Storyboard sheets, by request. Each tile lasts until the next one or the end of the media.
+    // Storyboards are not partitioned, so these cover all the positions of the request.
+    private val sheets = requests.filterIsInstance<StoryboardRequest>().associateWith { request ->
         val duration = timer.totalDurationUs
-        request.locate(duration).map { it to request }
-    }.sortedBy { it.first }
+        val all = request.locate(duration)
+        all.chunked(request.tilesPerSheet).mapIndexed { sheet, positions ->
+            val ends = positions.indices.map { tile ->
+                all.getOrNull(sheet * request.tilesPerSheet + tile + 1) ?: duration
+            }
+            StoryboardSheet(request, sheet, positions, ends)
+        }
+    }
+
+    // Read before creating pipelines, since VideoRenderer flips the output format in place.
+    private val cacheKeyPrefix = tracks.outputFormats.video.let {
+        "$fingerprint|${it.getInteger(KEY_WIDTH)}x${it.getInteger(KEY_HEIGHT)}|$rotation|$bitmapConfig"
+    }
+
+    // Shared by the snapshot steps of all segments.
+    private val readbackBuffers = ReadbackBuffers()
+
+    private fun cacheKey(positionUs: Long, request: ThumbnailRequest): String {
+        return "$cacheKeyPrefix|$positionUs|${request.syncFramesOnly}"
+    }
 
     private class Stub(
             val request: ThumbnailRequest,
             val positionUs: Long,
-            val localizedUs: Long) {
+            val localizedUs: Long,
+            val tile: Int) {
+        // The position we expect a frame at. For sync frame requests, this is the sync frame.
+        var targetUs: Long = localizedUs
         var actualLocalizedUs: Long = localizedUs
+        var seek = true
     }
 
     private fun createPipeline(
@@ -82,40 +145,96 @@ internal class DefaultThumbnailsEngine(
             status: TrackStatus,
             outputFormat: MediaFormat
     ): Pipeline {
-        log.i("Creating pipeline #$index. absoluteUs=${positions.joinToString { it.first.toString() }}")
-        val stubs = positions.mapNotNull { (positionUs, request) ->
+        log.i("Creating pipeline #$index. absoluteUs=${positions.joinToString { it.positionUs.toString() }}")
+        val stubs = positions.mapNotNull { (positionUs, request, tile) ->
             val localizedUs = timer.localize(type, index, positionUs)
-            localizedUs?.let { Stub(request, positionUs, localizedUs) }
+            localizedUs?.let { Stub(request, positionUs, localizedUs, tile) }
         }.toMutableList()
 
         if (stubs.isEmpty()) return EmptyPipeline()
+        var decodedFrames = 0
         val source = dataSources[type][index].forcingEos {
             stubs.isEmpty()
+        }.countingReads {
+            decodedFrames++
+        }
+
+        // Group stubs by GOP. Sync frame requests in a GOP that we are already decoding
+        // can be satisfied by the frame we're at, which is at or after their sync frame.
+        val original = dataSources[type][index]
+        val plan = ThumbnailsPlanner { original.syncFrameUs(it) }.plan(stubs.map { it.localizedUs })
+        stubs.forEachIndexed { i, stub ->
+            stub.seek = plan[i].seek
+            if (stub.request.syncFramesOnly) {
+                stub.targetUs = if (stub.seek || i == 0) plan[i].syncUs else stubs[i - 1].targetUs
+            }
         }
-        val positions = stubs.map { it.localizedUs }
-        log.i("Requests for step #$index: ${positions.joinToString()} [duration=${source.durationUs}]")
+
+        val positions = stubs.filter { it.seek }.map { it.localizedUs }
+        log.i("Requests for step #$index: ${stubs.joinToString { it.localizedUs.toString() }} " +
+                "seeks: ${positions.joinToString()} [duration=${source.durationUs}]")
         return Pipeline.build("Thumbnails") {
-            Seeker(source, positions) { it == stubs.firstOrNull()?.localizedUs } +
+            Seeker(source, positions,
+                    syncFrame = { stubs.firstOrNull()?.request?.syncFramesOnly ?: false },
+                    onSeek = { _, actualUs ->
+                        val stub = stubs.firstOrNull()
+                        if (stub != null && stub.request.syncFramesOnly) stub.targetUs = actualUs
+                    }
+            ) { position ->
+                val stub = stubs.firstOrNull()
+                stub != null && stub.seek && stub.localizedUs == position
+            } +
                     Reader(source, type) +
                     Decoder(source.getTrackFormat(type)!!, continuous = false) +
                     VideoRenderer(source.orientation, rotation, outputFormat, flipY = true) +
-                    VideoSnapshots(outputFormat, positions, 50 * 1000) { pos, bitmap ->
+                    VideoSnapshots(outputFormat, 50 * 1000, { stubs.firstOrNull()?.targetUs },
+                            bitmapConfig, bitmapPool, readbackBuffers,
+                            onRelease = { sheets.values.flatten().forEach { it.detach() } }
+                    ) { pos, snapshot ->
                         val stub = stubs.removeFirst()
                         stub.actualLocalizedUs = pos
                         log.i("Got snapshot. positionUs=${stub.positionUs} " +
                                 "localizedUs=${stub.localizedUs} " +
                                 "actualLocalizedUs=${stub.actualLocalizedUs} " +
-                                "deltaUs=${stub.localizedUs - stub.actualLocalizedUs}")
-                        val thumbnail = Thumbnail(stub.request, stub.positionUs, bitmap)
+                                "deltaUs=${stub.localizedUs - stub.actualLocalizedUs} " +
+                                "decodedFrames=$decodedFrames")
+                        val request = stub.request
+                        if (request is StoryboardRequest) {
+                            val sheet = sheets.getValue(request)[stub.tile / request.tilesPerSheet]
+                            sheet.copy(stub.tile % request.tilesPerSheet,
+                                    outputFormat.getInteger(KEY_WIDTH),
+                                    outputFormat.getInteger(KEY_HEIGHT))
+                            if (sheet.isComplete) sheet.encode()?.let(onStoryboard)
+                            return@VideoSnapshots
+                        }
+                        val bitmap = snapshot()
+                        val thumbnail = Thumbnail(stub.request, stub.positionUs, bitmap, decodedFrames, bitmapPool)
+                        decodedFrames = 0
+                        if (cache != null && fingerprint != null) {
+                            // Pooled bitmaps will be recycled, so they can't be kept in memory.
+                            cache.put(cacheKey(stub.positionUs, stub.request), bitmap, bitmapPool == null)
+                        }
                         progress(thumbnail)
                     }
         }
     }
 
     private lateinit var progress: (Thumbnail) -> Unit
+    private lateinit var onStoryboard: (Storyboard) -> Unit
 
-    override fun thumbnails(progress: (Thumbnail) -> Unit) {
+    override fun thumbnails(progress: (Thumbnail) -> Unit, onStoryboard: (Storyboard) -> Unit) {
         this.progress = progress
+        this.onStoryboard = onStoryboard
+        if (cache != null && fingerprint != null) {
+            val count = positions.size
+            positions = positions.filter { (positionUs, request) ->
+                if (request is StoryboardRequest) return@filter true
+                val bitmap = cache.get(cacheKey(positionUs, request), bitmapConfig) ?: return@filter true
+                progress(Thumbnail(request, positionUs, bitmap))
+                false
+            }
+            log.i("thumbnails(): ${count - positions.size} of $count positions found in cache.")
+        }
         while (true) {
             val advanced = segments.next(TrackType.VIDEO)?.advance() ?: false
             val completed = !advanced && !segments.hasNext() // avoid calling hasNext if we advanced.
@@ -127,6 +246,11 @@ internal class DefaultThumbnailsEngine(
                 Thread.sleep(WAIT_MS)
             }
         }
+        // Sheets whose tiles could not all be found, e.g. because of inaccurate durations.
+        // The context of the last segment, if any, is still current.
+        sheets.values.flatten().filter { !it.isEncoded }.forEach { sheet ->
+            sheet.encode()?.let(onStoryboard)
+        }
     }
 
     override fun cleanup() {
@@ -134,6 +258,23 @@ internal class DefaultThumbnailsEngine(
         runCatching { dataSources.release() }
     }
 
+    // Without a keyframe index, the sync frame is only known after seeking.
+    private fun DataSource.syncFrameUs(positionUs: Long): Long? {
+        val syncUs = when (this) {
+            is DefaultDataSource -> getSyncFrameUs(positionUs)
+            is DataSourceWrapper -> getSyncFrameUs(positionUs)
+            else -> Long.MIN_VALUE
+        }
+        return syncUs.takeIf { it != Long.MIN_VALUE }
+    }
+
+    private fun DataSource.countingReads(onRead: () -> Unit): DataSource = object : DataSource by this {
+        override fun readTrack(chunk: DataSource.Chunk) {
+            this@countingReads.readTrack(chunk)
+            onRead()
+        }
+    }
+
     companion object {
         private val WAIT_MS = 2L
         private val PROGRESS_LOOPS = 10L
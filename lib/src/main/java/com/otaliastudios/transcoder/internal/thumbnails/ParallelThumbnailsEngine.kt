@@ -0,0 +1,106 @@
+package com.otaliastudios.transcoder.internal.thumbnails
+
+import com.otaliastudios.transcoder.internal.utils.Logger
+import com.otaliastudios.transcoder.thumbnail.Storyboard
+import com.otaliastudios.transcoder.thumbnail.Thumbnail
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs a number of [ThumbnailsEngine]s, each one taking care of a contiguous range of
+ * positions, on separate threads. When [ordered] is true, thumbnails are dispatched in
+ * engine order: those of an engine are held until all the previous engines have completed.
+ *
+ * Each engine is released on its own thread, since it owns EGL resources created there.
+ */
+internal class ParallelThumbnailsEngine(
+    private val engines: List<ThumbnailsEngine>,
+    private val ordered: Boolean
+) : ThumbnailsEngine() {
+
+    private val log = Logger("ParallelThumbnailsEngine")
+    private val started = BooleanArray(engines.size)
+
+    private val executor = Executors.newFixedThreadPool(engines.size, object : ThreadFactory {
+        private val count = AtomicInteger(1)
+        override fun newThread(r: Runnable): Thread {
+            return Thread(r, "ThumbnailsThread #" + count.getAndIncrement())
+        }
+    })
+
+    // Storyboards are never split, see computePartitions.
+    override fun thumbnails(progress: (Thumbnail) -> Unit, onStoryboard: (Storyboard) -> Unit) {
+        log.i("thumbnails(): running ${engines.size} engines in parallel, ordered=$ordered")
+        val lock = Any()
+        val pending = List(engines.size) { mutableListOf<Thumbnail>() }
+        val completed = BooleanArray(engines.size)
+        var head = 0
+
+        // Must hold the lock. Dispatches everything that is not blocked by a previous engine.
+        fun flush() {
+            while (head < engines.size) {
+                pending[head].forEach(progress)
+                pending[head].clear()
+                if (!completed[head]) break
+                head++
+            }
+        }
+
+        val completion = ExecutorCompletionService<Unit>(executor)
+        engines.forEachIndexed { index, engine ->
+            completion.submit(Callable {
+                synchronized(lock) { started[index] = true }
+                try {
+                    engine.thumbnails({ thumbnail ->
+                        synchronized(lock) {
+                            if (ordered) {
+                                pending[index].add(thumbnail)
+                                flush()
+                            } else {
+                                progress(thumbnail)
+                            }
+                        }
+                    }, { storyboard ->
+                        synchronized(lock) { onStoryboard(storyboard) }
+                    })
+                    synchronized(lock) {
+                        completed[index] = true
+                        if (ordered) flush()
+                    }
+                } finally {
+                    engine.cleanup()
+                }
+            })
+        }
+        try {
+            // Take futures as they complete, so that we fail as soon as any engine fails.
+            repeat(engines.size) { completion.take().get() }
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    override fun cleanup() {
+        executor.shutdownNow()
+        var interrupted = false
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) break
+            } catch (e: InterruptedException) {
+                interrupted = true
+            }
+        }
+        // Engines that have been started are released by their own thread.
+        engines.forEachIndexed { index, engine ->
+            if (!started[index]) runCatching { engine.cleanup() }
+        }
+        if (interrupted) Thread.currentThread().interrupt()
+    }
+}
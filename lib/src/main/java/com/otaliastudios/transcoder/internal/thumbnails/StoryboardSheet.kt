@@ -0,0 +1,132 @@
+package com.otaliastudios.transcoder.internal.thumbnails
+
+import android.graphics.Bitmap
+import android.opengl.GLES20
+import com.otaliastudios.opengl.core.Egloo
+import com.otaliastudios.transcoder.internal.utils.Logger
+import com.otaliastudios.transcoder.thumbnail.Storyboard
+import com.otaliastudios.transcoder.thumbnail.StoryboardRequest
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * A sheet of a [StoryboardRequest], backed by a GL texture. Tiles are copied from the current
+ * surface into the texture, which is read back only once, when the sheet is encoded.
+ *
+ * The texture lives in the EGL context of the current segment. When that is released,
+ * [detach] moves the pixels to memory, and they are uploaded again on the next copy.
+ */
+internal class StoryboardSheet(
+        private val request: StoryboardRequest,
+        private val index: Int,
+        private val positions: List<Long>,
+        private val ends: List<Long>
+) {
+
+    private val log = Logger("StoryboardSheet")
+
+    private var tileWidth = 0
+    private var tileHeight = 0
+    private val width get() = tileWidth * request.columns
+    private val height get() = tileHeight * request.rows
+
+    private var texture = 0
+    private var pixels: ByteBuffer? = null
+    private var copied = 0
+    private var encoded = false
+
+    val isComplete get() = copied == positions.size
+    val isEncoded get() = encoded
+
+    private fun attach(tileWidth: Int, tileHeight: Int) {
+        if (texture != 0) return
+        if (this.tileWidth == 0) {
+            this.tileWidth = tileWidth
+            this.tileHeight = tileHeight
+            val max = IntArray(1)
+            GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, max, 0)
+            require(width <= max[0] && height <= max[0]) {
+                "Storyboard sheet is too large (${width}x$height, max=${max[0]}). Use less tiles."
+            }
+        }
+        val textures = IntArray(1)
+        GLES20.glGenTextures(1, textures, 0)
+        texture = textures[0]
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture)
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST)
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST)
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels?.also { it.rewind() })
+        Egloo.checkGlError("glTexImage2D")
+        pixels = null
+    }
+
+    /**
+     * Copies the current surface, whose size is [width]x[height], into the given tile.
+     */
+    fun copy(tile: Int, width: Int, height: Int) {
+        attach(width, height)
+        val x = tile % request.columns * tileWidth
+        val y = tile / request.columns * tileHeight
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture)
+        GLES20.glCopyTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, 0, 0,
+                minOf(width, tileWidth), minOf(height, tileHeight))
+        Egloo.checkGlError("glCopyTexSubImage2D")
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0)
+        copied++
+    }
+
+    /**
+     * Reads the texture into memory and deletes it. Must be called before
+     * the EGL context is released.
+     */
+    fun detach() {
+        if (texture == 0) return
+        val framebuffers = IntArray(1)
+        GLES20.glGenFramebuffers(1, framebuffers, 0)
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[0])
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, texture, 0)
+        val buffer = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN)
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer)
+        Egloo.checkGlError("glReadPixels")
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0)
+        GLES20.glDeleteFramebuffers(1, framebuffers, 0)
+        GLES20.glDeleteTextures(1, intArrayOf(texture), 0)
+        texture = 0
+        pixels = buffer
+    }
+
+    /**
+     * Encodes the sheet, or returns null if no tile was copied.
+     * If attached, the EGL context must be current.
+     */
+    fun encode(): Storyboard? {
+        if (copied == 0 || encoded) return null
+        encoded = true
+        detach()
+        val pixels = pixels!!.also { it.rewind() }
+        val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+        bitmap.copyPixelsFromBuffer(pixels)
+        val image = ByteArrayOutputStream().use {
+            bitmap.compress(request.format, request.quality, it)
+            it.toByteArray()
+        }
+        bitmap.recycle()
+        this.pixels = null
+        log.i("encode(): sheet #$index, ${width}x$height, ${positions.size} tiles, ${image.size} bytes")
+        val tiles = positions.mapIndexed { tile, positionUs ->
+            Storyboard.Tile(
+                    positionUs = positionUs,
+                    startUs = positionUs,
+                    endUs = ends[tile],
+                    x = tile % request.columns * tileWidth,
+                    y = tile / request.columns * tileHeight,
+                    width = tileWidth,
+                    height = tileHeight
+            )
+        }
+        return Storyboard(request, index, width, height, image, tiles)
+    }
+}
@@ -6,6 +6,7 @@ import androidx.annotation.NonNull;
 
 import com.otaliastudios.transcoder.ThumbnailerListener;
 import com.otaliastudios.transcoder.ThumbnailerOptions;
+import com.otaliastudios.transcoder.thumbnail.Storyboard;
 import com.otaliastudios.transcoder.thumbnail.Thumbnail;
 
 import java.util.ArrayList;
@@ -52,6 +53,15 @@ class ThumbnailsDispatcher {
         });
     }
 
+    void dispatchStoryboard(@NonNull final Storyboard storyboard) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onStoryboard(storyboard);
+            }
+        });
+    }
+
     void dispatchThumbnail(@NonNull final Thumbnail thumbnail) {
         mResults.add(thumbnail);
         mHandler.post(new Runnable() {
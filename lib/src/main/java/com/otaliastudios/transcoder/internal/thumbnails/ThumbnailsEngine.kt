@@ -1,16 +1,22 @@
 package com.otaliastudios.transcoder.internal.thumbnails
 
+import android.media.MediaCodecList
+import android.media.MediaFormat
+import android.os.Build
 import com.otaliastudios.transcoder.ThumbnailerOptions
 import com.otaliastudios.transcoder.Transcoder
 import com.otaliastudios.transcoder.TranscoderOptions
+import com.otaliastudios.transcoder.common.TrackType
 import com.otaliastudios.transcoder.internal.DataSources
 import com.otaliastudios.transcoder.internal.utils.Logger
 import com.otaliastudios.transcoder.internal.utils.trackMapOf
+import com.otaliastudios.transcoder.thumbnail.Storyboard
+import com.otaliastudios.transcoder.thumbnail.StoryboardRequest
 import com.otaliastudios.transcoder.thumbnail.Thumbnail
 
 internal abstract class ThumbnailsEngine {
 
-    abstract fun thumbnails(progress: (Thumbnail) -> Unit)
+    abstract fun thumbnails(progress: (Thumbnail) -> Unit, onStoryboard: (Storyboard) -> Unit)
 
     abstract fun cleanup()
 
@@ -23,21 +29,112 @@ internal abstract class ThumbnailsEngine {
             return this.cause?.isInterrupted() ?: false
         }
 
+        /**
+         * Number of engines to be used for the given options. This is bounded by the requested
+         * parallelism, the number of thumbnails, the number of processors, and by the number of
+         * decoder instances that the device can handle for this format.
+         */
+        private fun computePartitions(options: ThumbnailerOptions, dataSources: DataSources): Int {
+            if (options.parallelism <= 1) return 1
+            if (options.dataSourceFactories == null) {
+                log.w("Parallelism was requested, but some data sources can't be replicated.")
+                return 1
+            }
+            if (!dataSources.hasVideo) return 1
+            if (options.thumbnailRequests.any { it is StoryboardRequest }) {
+                log.w("Parallelism was requested, but storyboards can't be split.")
+                return 1
+            }
+            val durationUs = dataSources.video.sumOf { it.durationUs }
+            val thumbnails = options.thumbnailRequests.sumOf { it.locate(durationUs).size }
+            val processors = Runtime.getRuntime().availableProcessors()
+            val decoders = dataSources.video.mapNotNull {
+                it.getTrackFormat(TrackType.VIDEO)?.getString(MediaFormat.KEY_MIME)
+            }.distinct().minOfOrNull { maxDecoderInstances(it) } ?: 1
+            return minOf(options.parallelism, thumbnails, processors, decoders).also {
+                log.i("computePartitions(): partitions=$it parallelism=${options.parallelism} " +
+                        "thumbnails=$thumbnails processors=$processors decoders=$decoders")
+            }
+        }
+
+        /**
+         * Fingerprint of all data sources, to be used as cache key, or null if
+         * there is no cache or some source can't be fingerprinted.
+         */
+        private fun computeFingerprint(options: ThumbnailerOptions): String? {
+            if (options.cache == null) return null
+            val fingerprints = options.dataSourceFingerprints ?: run {
+                log.w("A cache was set, but some data sources can't be fingerprinted.")
+                return null
+            }
+            return runCatching {
+                fingerprints.joinToString(",") { it() }
+            }.onFailure {
+                log.w("Could not fingerprint data sources. Cache will not be used.", it)
+            }.getOrNull()
+        }
+
+        private fun maxDecoderInstances(mime: String): Int {
+            // Keep one instance for other apps / components. Before API 23, we don't know.
+            if (Build.VERSION.SDK_INT < 23) return 2
+            val infos = MediaCodecList(MediaCodecList.REGULAR_CODECS).codecInfos.filter {
+                !it.isEncoder && it.supportedTypes.any { type -> type.equals(mime, ignoreCase = true) }
+            }
+            val max = infos.maxOfOrNull { info ->
+                val type = info.supportedTypes.first { it.equals(mime, ignoreCase = true) }
+                info.getCapabilitiesForType(type).maxSupportedInstances
+            } ?: return 1
+            return (max - 1).coerceAtLeast(1)
+        }
+
         @JvmStatic
         fun thumbnails(options: ThumbnailerOptions) {
             log.i("thumbnails(): called...")
             var engine: ThumbnailsEngine? = null
             val dispatcher = ThumbnailsDispatcher(options)
             try {
-                engine = DefaultThumbnailsEngine(
-                        dataSources = DataSources(options),
-                        rotation = options.rotation,
-                        resizer = options.resizer,
-                        requests = options.thumbnailRequests
-                )
-                engine.thumbnails {
-                    dispatcher.dispatchThumbnail(it)
+                val dataSources = DataSources(options)
+                val partitions = computePartitions(options, dataSources)
+                val fingerprint = computeFingerprint(options)
+                engine = if (partitions <= 1) {
+                    DefaultThumbnailsEngine(
+                            dataSources = dataSources,
+                            rotation = options.rotation,
+                            resizer = options.resizer,
+                            requests = options.thumbnailRequests,
+                            cache = options.cache,
+                            fingerprint = fingerprint,
+                            bitmapConfig = options.bitmapConfig,
+                            bitmapPool = options.bitmapPool,
+                            keyframeIndex = options.keyframeIndex,
+                            keyframeIndexDirectory = options.keyframeIndexDirectory
+                    )
+                } else {
+                    ParallelThumbnailsEngine(
+                            engines = List(partitions) { partition ->
+                                DefaultThumbnailsEngine(
+                                        dataSources = if (partition == 0) dataSources
+                                        else DataSources(options.dataSourceFactories!!.map { it() }),
+                                        rotation = options.rotation,
+                                        resizer = options.resizer,
+                                        requests = options.thumbnailRequests,
+                                        partition = partition,
+                                        partitions = partitions,
+                                        cache = options.cache,
+                                        fingerprint = fingerprint,
+                                        bitmapConfig = options.bitmapConfig,
+                                        bitmapPool = options.bitmapPool,
+                                        keyframeIndex = options.keyframeIndex,
+                                        keyframeIndexDirectory = options.keyframeIndexDirectory
+                                )
+                            },
+                            ordered = options.orderedDelivery
+                    )
                 }
+                engine.thumbnails(
+                        progress = { dispatcher.dispatchThumbnail(it) },
+                        onStoryboard = { dispatcher.dispatchStoryboard(it) }
+                )
                 dispatcher.dispatchCompletion()
             } catch (e: Exception) {
                 if (e.isInterrupted()) {
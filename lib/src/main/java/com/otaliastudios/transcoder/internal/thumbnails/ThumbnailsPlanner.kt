@@ -0,0 +1,48 @@
+package com.otaliastudios.transcoder.internal.thumbnails
+
+import com.otaliastudios.transcoder.internal.utils.Logger
+import com.otaliastudios.transcoder.source.DataSource
+import com.otaliastudios.transcoder.source.DefaultDataSource
+
+/**
+ * Decides, for each thumbnail position, whether we should seek or keep decoding forward,
+ * so that each group of pictures (GOP) is decoded at most once per job.
+ *
+ * Positions are grouped by the sync frame that precedes them, which [syncUs] returns
+ * without touching the source state. For [DataSource], this is the frame that
+ * [DataSource.seekTo] would move to, as found in the keyframe index
+ * (see [DefaultDataSource.getSyncFrameUs]). When [syncUs] returns null, the sync frame
+ * is unknown and the position gets its own seek.
+ *
+ * - The first position of each group needs a seek: this skips everything between
+ *   the previous position and the new sync frame.
+ * - The other positions of the same group don't: the decoder is already in that GOP,
+ *   before the requested position, so we just keep decoding forward.
+ */
+internal class ThumbnailsPlanner(private val syncUs: (Long) -> Long?) {
+
+    private val log = Logger("ThumbnailsPlanner")
+
+    class Step(val positionUs: Long, val syncUs: Long, val seek: Boolean)
+
+    /**
+     * Creates a plan for the given positions, which must be sorted.
+     */
+    fun plan(positions: List<Long>): List<Step> {
+        var lastSyncUs = Long.MIN_VALUE
+        return positions.map { positionUs ->
+            val syncUs = syncUs(positionUs)
+            if (syncUs == null) {
+                lastSyncUs = Long.MIN_VALUE
+                Step(positionUs, positionUs, true)
+            } else {
+                val seek = syncUs != lastSyncUs
+                lastSyncUs = syncUs
+                Step(positionUs, syncUs, seek)
+            }
+        }.also { steps ->
+            log.i("plan(): ${steps.size} positions, ${steps.count { it.seek }} groups. " +
+                    steps.joinToString { "${it.positionUs}(sync=${it.syncUs}, seek=${it.seek})" })
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.otaliastudios.transcoder.internal.transcode
 
 import android.media.MediaFormat
+import com.otaliastudios.transcoder.TranscodeProgress
+import com.otaliastudios.transcoder.TranscodeTracer
 import com.otaliastudios.transcoder.common.TrackStatus
 import com.otaliastudios.transcoder.common.TrackType
 import com.otaliastudios.transcoder.internal.*
@@ -9,18 +11,26 @@ import com.otaliastudios.transcoder.internal.DataSources
 import com.otaliastudios.transcoder.internal.Segments
 import com.otaliastudios.transcoder.internal.Timer
 import com.otaliastudios.transcoder.internal.Tracks
+import com.otaliastudios.transcoder.internal.codec.BitRateController
+import com.otaliastudios.transcoder.internal.media.MediaFormatConstants
+import com.otaliastudios.transcoder.internal.peaks.PeaksOutput
 import com.otaliastudios.transcoder.internal.pipeline.EmptyPipeline
 import com.otaliastudios.transcoder.internal.pipeline.PassThroughPipeline
 import com.otaliastudios.transcoder.internal.pipeline.Pipeline
 import com.otaliastudios.transcoder.internal.pipeline.RegularPipeline
+import com.otaliastudios.transcoder.internal.utils.BitRates
 import com.otaliastudios.transcoder.internal.utils.Logger
 import com.otaliastudios.transcoder.internal.utils.TrackMap
 import com.otaliastudios.transcoder.internal.utils.forcingEos
 import com.otaliastudios.transcoder.internal.utils.ignoringEos
+import com.otaliastudios.transcoder.internal.utils.trace
 import com.otaliastudios.transcoder.resample.AudioResampler
 import com.otaliastudios.transcoder.sink.DataSink
 import com.otaliastudios.transcoder.strategy.TrackStrategy
 import com.otaliastudios.transcoder.stretch.AudioStretcher
+import com.otaliastudios.transcoder.time.DefaultTimeInterpolator
+import com.otaliastudios.transcoder.time.SpeedRampTimeInterpolator
+import com.otaliastudios.transcoder.time.SpeedTimeInterpolator
 import com.otaliastudios.transcoder.time.TimeInterpolator
 import com.otaliastudios.transcoder.validator.Validator
 
@@ -32,7 +42,11 @@ internal class DefaultTranscodeEngine(
         private val videoRotation: Int,
         private val audioStretcher: AudioStretcher,
         private val audioResampler: AudioResampler,
-        interpolator: TimeInterpolator
+        interpolator: TimeInterpolator,
+        private val audioPeaks: PeaksOutput? = null,
+        private val progressIntervalUs: Long = 0L,
+        private val progressStepUs: Long = 0L,
+        private val tracer: TranscodeTracer? = null
 ) : TranscodeEngine() {
 
     private val log = Logger("TranscodeEngine")
@@ -46,6 +60,46 @@ internal class DefaultTranscodeEngine(
 
     private val codecs = Codecs(dataSources, tracks, segments.currentIndex)
 
+    /**
+     * When the video strategy asked for a target size, steers the video bit rate.
+     * Encoders are created lazily, so we can still fix the initial bit rate in the format.
+     * The budget is spread over the output duration, which we can only compute in advance for
+     * interpolators that keep no state. For others, the controller measures it while encoding.
+     */
+    private val videoBitRate: BitRateController? = run {
+        val format = tracks.outputFormats.video
+        if (tracks.all.video != TrackStatus.COMPRESSING) return@run null
+        if (!format.containsKey(MediaFormatConstants.KEY_TARGET_SIZE)) return@run null
+        val inputDurationUs = timer.totalDurationUs
+        BitRateController(
+                targetBytes = format.getLong(MediaFormatConstants.KEY_TARGET_SIZE),
+                otherBitRate = audioBitRate(),
+                timer = timer,
+                outputDurationUs = when (interpolator) {
+                    is DefaultTimeInterpolator -> inputDurationUs
+                    is SpeedTimeInterpolator -> (inputDurationUs / interpolator.getFactor(TrackType.VIDEO, 0L).toDouble()).toLong()
+                    is SpeedRampTimeInterpolator -> interpolator.interpolate(TrackType.VIDEO, inputDurationUs)
+                    else -> null
+                }
+        ).also {
+            format.setInteger(MediaFormat.KEY_BIT_RATE, it.bitRate)
+        }
+    }
+
+    private fun audioBitRate(): Long {
+        fun MediaFormat.bitRate(): Long = when {
+            containsKey(MediaFormat.KEY_BIT_RATE) -> getInteger(MediaFormat.KEY_BIT_RATE).toLong()
+            containsKey(MediaFormat.KEY_CHANNEL_COUNT) && containsKey(MediaFormat.KEY_SAMPLE_RATE) ->
+                BitRates.estimateAudioBitRate(getInteger(MediaFormat.KEY_CHANNEL_COUNT), getInteger(MediaFormat.KEY_SAMPLE_RATE))
+            else -> 0L
+        }
+        return when (tracks.all.audio) {
+            TrackStatus.COMPRESSING -> tracks.outputFormats.audio.bitRate()
+            TrackStatus.PASS_THROUGH -> dataSources.audio.maxOfOrNull { it.getTrackFormat(TrackType.AUDIO)?.bitRate() ?: 0L } ?: 0L
+            else -> 0L
+        }
+    }
+
     init {
         log.i("Created Tracks, Segments, Timer...")
     }
@@ -77,13 +131,16 @@ internal class DefaultTranscodeEngine(
             timer.positionUs[type] > timer.totalDurationUs + 100L
         }
         val sink = dataSink.ignoringEos { index < sources.lastIndex }
-        return when (status) {
-            TrackStatus.ABSENT -> EmptyPipeline()
-            TrackStatus.REMOVING -> EmptyPipeline()
-            TrackStatus.PASS_THROUGH -> PassThroughPipeline(type, source, sink, interpolator)
-            TrackStatus.COMPRESSING -> RegularPipeline(type, if (count > 1) "${index+1}/$count" else null,
-                    source, sink, interpolator, outputFormat, codecs,
-                    videoRotation, audioStretcher, audioResampler)
+        // This is a segment switch: creating the pipeline also configures the decoders.
+        return tracer.trace(TRACE_CATEGORY, "createPipeline($type, ${index+1}/$count)") {
+            when (status) {
+                TrackStatus.ABSENT -> EmptyPipeline()
+                TrackStatus.REMOVING -> EmptyPipeline()
+                TrackStatus.PASS_THROUGH -> PassThroughPipeline(type, source, sink, interpolator, tracer)
+                TrackStatus.COMPRESSING -> RegularPipeline(type, if (count > 1) "${index+1}/$count" else null,
+                        source, sink, interpolator, outputFormat, codecs,
+                        videoRotation, audioStretcher, audioResampler, audioPeaks, videoBitRate, tracer)
+            }
         }
     }
 
@@ -100,8 +157,9 @@ internal class DefaultTranscodeEngine(
      * We don't have to worry about which tracks are available and how. The [Segments] class
      * will simply return null if there's nothing to be done.
      */
-    override fun transcode(progress: (Double) -> Unit) {
+    override fun transcode(progress: (TranscodeProgress) -> Unit) {
         var loop = 0L
+        val sampler = ProgressSampler(timer, tracks, progressIntervalUs, progressStepUs)
         log.i("transcode(): about to start, " +
                 "durationUs=${timer.totalDurationUs}, " +
                 "audioUs=${timer.durationUs.audioOrNull()}, " +
@@ -121,19 +179,23 @@ internal class DefaultTranscodeEngine(
                 throw InterruptedException()
             }
             if (completed) {
-                progress(1.0)
+                progress(sampler.complete())
                 break
             }
 
             if (!advanced && audio?.needsSleep() != false && video?.needsSleep() != false) {
-                Thread.sleep(WAIT_MS)
+                tracer.trace(TRACE_CATEGORY, "sleep") {
+                    Thread.sleep(WAIT_MS)
+                }
             }
 
-            if (advanced && ++loop % PROGRESS_LOOPS == 0L) {
-                val audioProgress = timer.progress.audio
-                val videoProgress = timer.progress.video
-                log.v("transcode(): got progress, video=$videoProgress audio=$audioProgress")
-                progress((videoProgress + audioProgress) / tracks.active.size)
+            if (advanced) {
+                loop++
+                val snapshot = sampler.sample()
+                if (snapshot != null) {
+                    log.v("transcode(): got progress, $snapshot")
+                    progress(snapshot)
+                }
             }
         }
         dataSink.stop()
@@ -149,6 +211,6 @@ internal class DefaultTranscodeEngine(
 
     companion object {
         private val WAIT_MS = 2L
-        private val PROGRESS_LOOPS = 10L
+        private const val TRACE_CATEGORY = "TranscodeEngine"
     }
 }
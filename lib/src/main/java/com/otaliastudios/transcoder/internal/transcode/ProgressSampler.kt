@@ -0,0 +1,99 @@
+package com.otaliastudios.transcoder.internal.transcode
+
+import com.otaliastudios.transcoder.TranscodeProgress
+import com.otaliastudios.transcoder.common.TrackType
+import com.otaliastudios.transcoder.internal.Timer
+import com.otaliastudios.transcoder.internal.Tracks
+import com.otaliastudios.transcoder.internal.utils.mutableTrackMapOf
+
+/**
+ * Decides when progress should be reported, and estimates throughput and remaining time.
+ *
+ * Progress is reported when [intervalUs] of wall time have passed since the last report,
+ * or when the media position moved by [stepUs]. Either check can be disabled by passing 0.
+ * When both are 0, progress is reported on each call.
+ *
+ * Throughput is media time per wall time, per track, smoothed with an exponential moving
+ * average over the reports. The remaining time is that of the slowest track.
+ */
+internal class ProgressSampler(
+        private val timer: Timer,
+        private val tracks: Tracks,
+        private val intervalUs: Long,
+        private val stepUs: Long
+) {
+
+    private val startNanos = System.nanoTime()
+    private var lastNanos = startNanos
+    private var lastReportedUs = 0L
+    private val lastPositionsUs = mutableTrackMapOf(0L, 0L)
+    private val throughputs = mutableTrackMapOf(0.0, 0.0)
+
+    /**
+     * Returns a new snapshot if it's time to report progress, null otherwise.
+     * Meant to be called after each advanced iteration, so it should be cheap.
+     */
+    fun sample(): TranscodeProgress? {
+        val nanos = System.nanoTime()
+        val always = intervalUs <= 0L && stepUs <= 0L
+        val interval = intervalUs > 0L && (nanos - lastNanos) / 1000L >= intervalUs
+        val step = stepUs > 0L && !interval && positionUs() - lastReportedUs >= stepUs
+        if (!always && !interval && !step) return null
+        return snapshot(nanos, completed = false)
+    }
+
+    /**
+     * Returns the final snapshot.
+     */
+    fun complete(): TranscodeProgress = snapshot(System.nanoTime(), completed = true)
+
+    // The media position of the slowest track.
+    private fun positionUs(): Long {
+        var positionUs = Long.MAX_VALUE
+        if (tracks.active.hasVideo) positionUs = minOf(positionUs, timer.positionUs.video)
+        if (tracks.active.hasAudio) positionUs = minOf(positionUs, timer.positionUs.audio)
+        return if (positionUs == Long.MAX_VALUE) 0L else positionUs
+    }
+
+    private fun snapshot(nanos: Long, completed: Boolean): TranscodeProgress {
+        val deltaUs = (nanos - lastNanos) / 1000L
+        var etaUs = 0L
+        for (type in TrackType.values()) {
+            if (!tracks.active.has(type)) continue
+            val positionUs = timer.positionUs[type]
+            if (deltaUs > 0L) {
+                val throughput = (positionUs - lastPositionsUs[type]).toDouble() / deltaUs
+                val previous = throughputs[type]
+                throughputs[type] = if (previous == 0.0) throughput
+                else SMOOTHING * throughput + (1 - SMOOTHING) * previous
+            }
+            lastPositionsUs[type] = positionUs
+            if (etaUs >= 0L && !completed) {
+                val remainingUs = (timer.durationUs[type] - positionUs).coerceAtLeast(0L)
+                val throughput = throughputs[type]
+                etaUs = if (throughput <= 0.0) -1L
+                else maxOf(etaUs, (remainingUs / throughput).toLong())
+            }
+        }
+        lastNanos = nanos
+        lastReportedUs = positionUs()
+        val progress = if (completed) 1.0
+        else (timer.progress.video + timer.progress.audio) / tracks.active.size
+        return TranscodeProgress(
+                progress,
+                (nanos - startNanos) / 1000L,
+                etaUs,
+                timer.positionUs.video,
+                timer.positionUs.audio,
+                timer.durationUs.video,
+                timer.durationUs.audio,
+                throughputs.video,
+                throughputs.audio
+        )
+    }
+
+    private companion object {
+        // Weight of the latest measurement in the throughput average.
+        private const val SMOOTHING = 0.3
+    }
+}
@@ -4,8 +4,10 @@ import android.os.Handler;
 
 import androidx.annotation.NonNull;
 
+import com.otaliastudios.transcoder.TranscodeProgress;
 import com.otaliastudios.transcoder.TranscoderListener;
 import com.otaliastudios.transcoder.TranscoderOptions;
+import com.otaliastudios.transcoder.TranscoderProgressListener;
 
 /**
  * Wraps a TranscoderListener and posts events on the given handler.
@@ -47,11 +49,14 @@ class TranscodeDispatcher {
         });
     }
 
-    void dispatchProgress(final double progress) {
+    void dispatchProgress(@NonNull final TranscodeProgress progress) {
         mHandler.post(new Runnable() {
             @Override
             public void run() {
-                mListener.onTranscodeProgress(progress);
+                mListener.onTranscodeProgress(progress.getProgress());
+                if (mListener instanceof TranscoderProgressListener) {
+                    ((TranscoderProgressListener) mListener).onTranscodeProgress(progress);
+                }
             }
         });
     }
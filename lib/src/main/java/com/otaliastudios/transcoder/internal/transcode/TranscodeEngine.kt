@@ -1,8 +1,10 @@
 package com.otaliastudios.transcoder.internal.transcode
 
+import com.otaliastudios.transcoder.TranscodeProgress
 import com.otaliastudios.transcoder.Transcoder
 import com.otaliastudios.transcoder.TranscoderOptions
 import com.otaliastudios.transcoder.internal.DataSources
+import com.otaliastudios.transcoder.internal.peaks.PeaksOutput
 import com.otaliastudios.transcoder.internal.utils.Logger
 import com.otaliastudios.transcoder.internal.utils.trackMapOf
 
@@ -10,7 +12,7 @@ internal abstract class TranscodeEngine {
 
     abstract fun validate(): Boolean
 
-    abstract fun transcode(progress: (Double) -> Unit)
+    abstract fun transcode(progress: (TranscodeProgress) -> Unit)
 
     abstract fun cleanup()
 
@@ -28,6 +30,9 @@ internal abstract class TranscodeEngine {
             log.i("transcode(): called...")
             var engine: TranscodeEngine? = null
             val dispatcher = TranscodeDispatcher(options)
+            val audioPeaks = options.audioPeaksListener?.let {
+                PeaksOutput(options.audioPeaksBucketDurationUs, it, options.listenerHandler)
+            }
             try {
                 engine = DefaultTranscodeEngine(
                         dataSources = DataSources(options),
@@ -40,22 +45,30 @@ internal abstract class TranscodeEngine {
                         videoRotation = options.videoRotation,
                         interpolator = options.timeInterpolator,
                         audioStretcher = options.audioStretcher,
-                        audioResampler = options.audioResampler
+                        audioResampler = options.audioResampler,
+                        audioPeaks = audioPeaks,
+                        progressIntervalUs = options.progressIntervalUs,
+                        progressStepUs = options.progressStepUs,
+                        tracer = options.tracer
                 )
                 if (!engine.validate()) {
+                    audioPeaks?.complete()
                     dispatcher.dispatchSuccess(Transcoder.SUCCESS_NOT_NEEDED)
                 } else {
                     engine.transcode {
                         dispatcher.dispatchProgress(it)
                     }
+                    audioPeaks?.complete()
                     dispatcher.dispatchSuccess(Transcoder.SUCCESS_TRANSCODED)
                 }
             } catch (e: Exception) {
                 if (e.isInterrupted()) {
                     log.i("Transcode canceled.", e)
+                    audioPeaks?.cancel()
                     dispatcher.dispatchCancel()
                 } else {
                     log.e("Unexpected error while transcoding.", e)
+                    audioPeaks?.fail(e)
                     dispatcher.dispatchFailure(e)
                     throw e
                 }
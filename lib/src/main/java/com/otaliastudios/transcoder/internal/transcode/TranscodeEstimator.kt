@@ -0,0 +1,144 @@
+package com.otaliastudios.transcoder.internal.transcode
+
+import android.media.MediaFormat
+import com.otaliastudios.transcoder.TranscodeEstimate
+import com.otaliastudios.transcoder.TranscoderOptions
+import com.otaliastudios.transcoder.common.TrackStatus
+import com.otaliastudios.transcoder.common.TrackType
+import com.otaliastudios.transcoder.internal.DataSources
+import com.otaliastudios.transcoder.internal.Tracks
+import com.otaliastudios.transcoder.internal.utils.BitRates
+import com.otaliastudios.transcoder.internal.utils.Logger
+import com.otaliastudios.transcoder.internal.utils.trackMapOf
+
+/**
+ * Runs the first part of [TranscodeEngine] - opening sources, resolving [Tracks] through the
+ * strategies, and validating - without creating codecs or writing anything.
+ * Output size comes from bit rates, wall time from a rough throughput profile.
+ */
+internal class TranscodeEstimator(private val options: TranscoderOptions) {
+
+    private val log = Logger("TranscodeEstimator")
+
+    fun estimate(): TranscodeEstimate {
+        val sources = DataSources(options)
+        try {
+            val tracks = Tracks(trackMapOf(
+                    video = options.videoTrackStrategy,
+                    audio = options.audioTrackStrategy
+            ), sources, options.videoRotation, false)
+            val needed = options.validator.validate(tracks.all.video, tracks.all.audio)
+            val durationUs = TrackType.values()
+                    .filter { tracks.active.has(it) }
+                    .minOfOrNull { type -> sources[type].sumOf { it.durationUs } } ?: 0L
+            var sizeBits = 0.0
+            var wallTimeUs = 0.0
+            val bitRates = trackMapOf(
+                    video = bitRate(TrackType.VIDEO, sources, tracks),
+                    audio = bitRate(TrackType.AUDIO, sources, tracks)
+            )
+            if (needed) {
+                for (type in TrackType.values()) {
+                    if (!tracks.active.has(type)) continue
+                    sizeBits += bitRates[type].toDouble() * durationUs / 1_000_000
+                    wallTimeUs += wallTimeUs(type, sources, tracks, durationUs)
+                }
+            }
+            return TranscodeEstimate(
+                    needed,
+                    tracks.all.video,
+                    tracks.all.audio,
+                    if (needed) bitRates.video else 0L,
+                    if (needed) bitRates.audio else 0L,
+                    if (needed) durationUs else 0L,
+                    (sizeBits / 8).toLong(),
+                    wallTimeUs.toLong()
+            ).also {
+                log.i("estimate(): $it")
+            }
+        } finally {
+            sources.release()
+        }
+    }
+
+    /**
+     * Average bit rate of the output track. When compressing, this is the strategy target.
+     * When passing through, the source bit rates weighted by duration.
+     */
+    private fun bitRate(type: TrackType, sources: DataSources, tracks: Tracks): Long {
+        return when (tracks.all[type]) {
+            TrackStatus.COMPRESSING -> tracks.outputFormats[type].bitRate(type)
+            TrackStatus.PASS_THROUGH -> {
+                val list = sources[type]
+                val totalUs = list.sumOf { it.durationUs }
+                if (totalUs <= 0L) return 0L
+                val bits = list.sumOf { source ->
+                    val format = source.getTrackFormat(type) ?: return@sumOf 0.0
+                    format.bitRate(type).toDouble() * source.durationUs
+                }
+                (bits / totalUs).toLong()
+            }
+            else -> 0L
+        }.also {
+            log.v("bitRate($type): $it")
+        }
+    }
+
+    private fun MediaFormat.bitRate(type: TrackType): Long {
+        if (containsKey(MediaFormat.KEY_BIT_RATE)) return getInteger(MediaFormat.KEY_BIT_RATE).toLong()
+        return when (type) {
+            TrackType.VIDEO -> BitRates.estimateVideoBitRate(
+                    getIntegerOr(MediaFormat.KEY_WIDTH),
+                    getIntegerOr(MediaFormat.KEY_HEIGHT),
+                    getIntegerOr(MediaFormat.KEY_FRAME_RATE))
+            TrackType.AUDIO -> BitRates.estimateAudioBitRate(
+                    getIntegerOr(MediaFormat.KEY_CHANNEL_COUNT),
+                    getIntegerOr(MediaFormat.KEY_SAMPLE_RATE))
+        }
+    }
+
+    private fun MediaFormat.getIntegerOr(key: String, default: Int = 0): Int {
+        return if (containsKey(key)) getInteger(key) else default
+    }
+
+    /**
+     * Wall time spent on a track. Tracks are processed by the same thread, so these add up.
+     * Video compression is bound by the pixels to decode and encode per second.
+     */
+    private fun wallTimeUs(type: TrackType, sources: DataSources, tracks: Tracks, durationUs: Long): Double {
+        return when (tracks.all[type]) {
+            TrackStatus.PASS_THROUGH -> durationUs / PASS_THROUGH_SPEED
+            TrackStatus.COMPRESSING -> when (type) {
+                TrackType.AUDIO -> durationUs / AUDIO_SPEED
+                TrackType.VIDEO -> {
+                    val output = tracks.outputFormats.video
+                    val outputPixels = output.getIntegerOr(MediaFormat.KEY_WIDTH).toDouble() *
+                            output.getIntegerOr(MediaFormat.KEY_HEIGHT)
+                    sources.video.sumOf { source ->
+                        val input = source.getTrackFormat(TrackType.VIDEO) ?: return@sumOf 0.0
+                        val inputPixels = input.getIntegerOr(MediaFormat.KEY_WIDTH).toDouble() *
+                                input.getIntegerOr(MediaFormat.KEY_HEIGHT)
+                        val frames = source.durationUs / 1_000_000.0 *
+                                input.getIntegerOr(MediaFormat.KEY_FRAME_RATE, DEFAULT_FRAME_RATE)
+                        frames * maxOf(inputPixels, outputPixels) / VIDEO_PIXELS_PER_SECOND * 1_000_000
+                    }
+                }
+            }
+            else -> 0.0
+        }
+    }
+
+    companion object {
+        // Throughput of a typical mid-range device, in media time per wall time,
+        // or pixels per wall second for video compression (1080p at about 120 fps).
+        private const val PASS_THROUGH_SPEED = 500.0
+        private const val AUDIO_SPEED = 50.0
+        private const val VIDEO_PIXELS_PER_SECOND = 250_000_000.0
+        private const val DEFAULT_FRAME_RATE = 30
+
+        @JvmStatic
+        fun estimate(options: TranscoderOptions): TranscodeEstimate {
+            return TranscodeEstimator(options).estimate()
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A parsed MPEG-4 AudioSpecificConfig, as found in the csd-0 buffer of AAC formats.
+ * Refer: ISO/IEC 14496-3, 1.6.2.1.
+ */
+public class AudioSpecificConfig {
+
+    public static final int OBJECT_TYPE_AAC_LC = 2;
+    public static final int OBJECT_TYPE_SBR = 5;
+    public static final int OBJECT_TYPE_PS = 29;
+
+    private static final int[] SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000,
+            22050, 16000, 12000, 11025, 8000, 7350
+    };
+
+    // Indexed by channelConfiguration. 0 means that channels are defined elsewhere.
+    private static final int[] CHANNEL_COUNTS = {0, 1, 2, 3, 4, 5, 6, 8};
+
+    public int objectType;
+    public int sampleRate;
+    public int channelConfig;
+
+    /** For explicitly signaled SBR and PS streams, the extension type and output sample rate. Otherwise 0. */
+    public int extensionObjectType;
+    public int extensionSampleRate;
+
+    /** From the GASpecificConfig: samples per frame, 1024 or 960. */
+    public int frameLength = 1024;
+    public boolean dependsOnCoreCoder;
+    public int coreCoderDelay;
+
+    /** When channelConfig is 0, the channels declared by the program_config_element. */
+    public int programChannelCount;
+
+    /**
+     * The channel count the decoder will output, or 0 if unknown.
+     * Parametric stereo streams are mono in the config but decode to stereo.
+     */
+    public int getChannelCount() {
+        if (channelConfig >= CHANNEL_COUNTS.length) return 0;
+        int count = channelConfig == 0 ? programChannelCount : CHANNEL_COUNTS[channelConfig];
+        return extensionObjectType == OBJECT_TYPE_PS && count == 1 ? 2 : count;
+    }
+
+    /**
+     * The sample rate the decoder will output. This can't account for implicitly
+     * signaled SBR, in which case the decoder output is twice this value.
+     */
+    public int getOutputSampleRate() {
+        return extensionSampleRate > 0 ? extensionSampleRate : sampleRate;
+    }
+
+    @NonNull
+    public static AudioSpecificConfig parse(@NonNull ByteBuffer buffer) {
+        BitReader reader = new BitReader(buffer, false);
+        AudioSpecificConfig config = new AudioSpecificConfig();
+        config.objectType = readObjectType(reader);
+        config.sampleRate = readSampleRate(reader);
+        config.channelConfig = reader.readInt(4);
+        if (config.objectType == OBJECT_TYPE_SBR || config.objectType == OBJECT_TYPE_PS) {
+            config.extensionObjectType = config.objectType;
+            config.extensionSampleRate = readSampleRate(reader);
+            config.objectType = readObjectType(reader);
+        }
+        if (isGeneralAudio(config.objectType)) {
+            readGASpecificConfig(reader, config);
+            if (isErrorResilient(config.objectType)) reader.skipBits(2); // epConfig
+            if (config.extensionObjectType != OBJECT_TYPE_SBR && reader.bitsLeft() >= 16) {
+                readSyncExtension(reader, config);
+            }
+        }
+        if (config.sampleRate <= 0) {
+            throw new IllegalStateException("Invalid sample rate in AudioSpecificConfig.");
+        }
+        return config;
+    }
+
+    // Refer: ISO/IEC 14496-3, 4.4.1.
+    private static void readGASpecificConfig(@NonNull BitReader reader, @NonNull AudioSpecificConfig config) {
+        config.frameLength = reader.readBit() ? 960 : 1024;
+        config.dependsOnCoreCoder = reader.readBit();
+        if (config.dependsOnCoreCoder) config.coreCoderDelay = reader.readInt(14);
+        boolean extension = reader.readBit();
+        if (config.channelConfig == 0) config.programChannelCount = readProgramConfigElement(reader);
+        if (config.objectType == 6 || config.objectType == 20) reader.skipBits(3); // layerNr
+        if (extension) {
+            if (config.objectType == 22) reader.skipBits(16); // numOfSubFrame, layer_length
+            if (config.objectType == 17 || config.objectType == 19
+                    || config.objectType == 20 || config.objectType == 23) {
+                reader.skipBits(3); // resilience flags
+            }
+            reader.skipBits(1); // extensionFlag3
+        }
+    }
+
+    // Refer: ISO/IEC 14496-3, 4.4.1.1. Returns the channel count, stopping before the comment.
+    private static int readProgramConfigElement(@NonNull BitReader reader) {
+        reader.skipBits(10); // element_instance_tag, object_type, sampling_frequency_index
+        int front = reader.readInt(4);
+        int side = reader.readInt(4);
+        int back = reader.readInt(4);
+        int lfe = reader.readInt(2);
+        int assocData = reader.readInt(3);
+        int validCc = reader.readInt(4);
+        if (reader.readBit()) reader.skipBits(4); // mono_mixdown_element_number
+        if (reader.readBit()) reader.skipBits(4); // stereo_mixdown_element_number
+        if (reader.readBit()) reader.skipBits(3); // matrix_mixdown_idx, pseudo_surround_enable
+        int channels = 0;
+        for (int i = 0; i < front + side + back; i++) {
+            channels += reader.readBit() ? 2 : 1; // element_is_cpe
+            reader.skipBits(4); // element_tag_select
+        }
+        reader.skipBits(4 * lfe + 4 * assocData + 5 * validCc);
+        return channels + lfe;
+    }
+
+    // Backward compatible signaling of SBR and PS. Refer: ISO/IEC 14496-3, 1.6.6.
+    private static void readSyncExtension(@NonNull BitReader reader, @NonNull AudioSpecificConfig config) {
+        if (reader.readInt(11) != 0x2b7) return;
+        int type = readObjectType(reader);
+        if (type != OBJECT_TYPE_SBR || !reader.readBit()) return; // sbrPresentFlag
+        config.extensionObjectType = OBJECT_TYPE_SBR;
+        config.extensionSampleRate = readSampleRate(reader);
+        if (reader.bitsLeft() >= 12 && reader.readInt(11) == 0x548 && reader.readBit()) {
+            config.extensionObjectType = OBJECT_TYPE_PS;
+        }
+    }
+
+    private static boolean isGeneralAudio(int objectType) {
+        return (objectType >= 1 && objectType <= 4) || objectType == 6 || objectType == 7
+                || objectType == 17 || (objectType >= 19 && objectType <= 23);
+    }
+
+    private static boolean isErrorResilient(int objectType) {
+        return objectType == 17 || (objectType >= 19 && objectType <= 27);
+    }
+
+    private static int readObjectType(@NonNull BitReader reader) {
+        int type = reader.readInt(5);
+        return type == 31 ? 32 + reader.readInt(6) : type;
+    }
+
+    private static int readSampleRate(@NonNull BitReader reader) {
+        int index = reader.readInt(4);
+        if (index == 15) return reader.readInt(24);
+        return index < SAMPLE_RATES.length ? SAMPLE_RATES[index] : 0;
+    }
+}
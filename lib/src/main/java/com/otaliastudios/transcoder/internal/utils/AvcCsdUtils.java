@@ -34,6 +34,7 @@ public class AvcCsdUtils {
     // https://tools.ietf.org/html/rfc6184
     private static final byte AVC_SPS_NAL_2 = 39; // 0<<7 + 1<<5 + 7<<0
     private static final byte AVC_SPS_NAL_3 = 71; // 0<<7 + 2<<5 + 7<<0
+    private static final int AVC_PPS_NAL_TYPE = 8;
 
     /**
      * @param format the input format
@@ -56,6 +57,27 @@ public class AvcCsdUtils {
         return prefixedSpsBuffer.slice();
     }
 
+    /**
+     * @param format the input format
+     * @return ByteBuffer contains PPS without NAL header.
+     */
+    @NonNull
+    public static ByteBuffer getPpsBuffer(@NonNull MediaFormat format) {
+        ByteBuffer sourceBuffer = format.getByteBuffer(MediaFormatConstants.KEY_AVC_PPS).asReadOnlyBuffer(); // might be direct buffer
+        ByteBuffer prefixedPpsBuffer = ByteBuffer.allocate(sourceBuffer.limit()).order(sourceBuffer.order());
+        prefixedPpsBuffer.put(sourceBuffer);
+        prefixedPpsBuffer.flip();
+
+        skipStartCode(prefixedPpsBuffer);
+
+        byte ppsNalData = prefixedPpsBuffer.get();
+        if ((ppsNalData & 0x1F) != AVC_PPS_NAL_TYPE) {
+            throw new IllegalStateException("Got non PPS NAL data.");
+        }
+
+        return prefixedPpsBuffer.slice();
+    }
+
     private static void skipStartCode(@NonNull ByteBuffer prefixedSpsBuffer) {
         byte[] prefix3 = new byte[3];
         prefixedSpsBuffer.get(prefix3);
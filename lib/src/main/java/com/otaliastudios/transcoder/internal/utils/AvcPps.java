@@ -0,0 +1,84 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A parsed H.264 picture parameter set, as returned by {@link AvcCsdUtils#getPpsBuffer}:
+ * the buffer should start right after the NAL header.
+ * Refer: ITU-T H.264, 7.3.2.2.
+ */
+public class AvcPps {
+
+    public int id;
+    public int spsId;
+    public boolean entropyCodingMode; // CABAC if true
+    public boolean bottomFieldPicOrderInFramePresent;
+    public int numSliceGroups;
+    public int numRefIdxL0DefaultActive;
+    public int numRefIdxL1DefaultActive;
+    public boolean weightedPred;
+    public int weightedBipredIdc;
+    public int picInitQp;
+    public int picInitQs;
+    public int chromaQpIndexOffset;
+    public boolean deblockingFilterControlPresent;
+    public boolean constrainedIntraPred;
+    public boolean redundantPicCntPresent;
+    public boolean transform8x8Mode;
+    public boolean picScalingMatrixPresent;
+    public int secondChromaQpIndexOffset;
+
+    @NonNull
+    public static AvcPps parse(@NonNull ByteBuffer buffer) {
+        BitReader reader = new BitReader(buffer, true);
+        AvcPps pps = new AvcPps();
+        pps.id = reader.readUE();
+        pps.spsId = reader.readUE();
+        pps.entropyCodingMode = reader.readBit();
+        pps.bottomFieldPicOrderInFramePresent = reader.readBit();
+        pps.numSliceGroups = reader.readUE() + 1;
+        if (pps.numSliceGroups > 1) skipSliceGroups(reader, pps.numSliceGroups);
+        pps.numRefIdxL0DefaultActive = reader.readUE() + 1;
+        pps.numRefIdxL1DefaultActive = reader.readUE() + 1;
+        pps.weightedPred = reader.readBit();
+        pps.weightedBipredIdc = reader.readInt(2);
+        pps.picInitQp = 26 + reader.readSE();
+        pps.picInitQs = 26 + reader.readSE();
+        pps.chromaQpIndexOffset = reader.readSE();
+        pps.deblockingFilterControlPresent = reader.readBit();
+        pps.constrainedIntraPred = reader.readBit();
+        pps.redundantPicCntPresent = reader.readBit();
+        // When absent, it is inferred to be equal to chroma_qp_index_offset.
+        pps.secondChromaQpIndexOffset = pps.chromaQpIndexOffset;
+        if (reader.hasMoreRbspData()) {
+            pps.transform8x8Mode = reader.readBit();
+            pps.picScalingMatrixPresent = reader.readBit();
+            // The scaling lists depend on the SPS, so if present we stop here.
+            if (!pps.picScalingMatrixPresent) {
+                pps.secondChromaQpIndexOffset = reader.readSE();
+            }
+        }
+        return pps;
+    }
+
+    private static void skipSliceGroups(@NonNull BitReader reader, int numSliceGroups) {
+        int mapType = reader.readUE();
+        if (mapType == 0) {
+            for (int i = 0; i < numSliceGroups; i++) reader.readUE(); // run_length_minus1
+        } else if (mapType == 2) {
+            for (int i = 0; i < numSliceGroups - 1; i++) {
+                reader.readUE(); // top_left
+                reader.readUE(); // bottom_right
+            }
+        } else if (mapType >= 3 && mapType <= 5) {
+            reader.skipBits(1); // slice_group_change_direction_flag
+            reader.readUE(); // slice_group_change_rate_minus1
+        } else if (mapType == 6) {
+            int units = reader.readUE() + 1;
+            int bits = 32 - Integer.numberOfLeadingZeros(numSliceGroups - 1);
+            reader.skipBits(units * bits);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A parsed H.264 sequence parameter set, as returned by {@link AvcCsdUtils#getSpsBuffer}:
+ * the buffer should start right after the NAL header.
+ * Refer: ITU-T H.264, 7.3.2.1.1 and E.1.1.
+ */
+public class AvcSps {
+
+    public int profileIdc;
+    public int constraintFlags;
+    public int levelIdc;
+    public int id;
+    public int chromaFormatIdc = 1;
+    public boolean separateColourPlane;
+    public int bitDepthLuma = 8;
+    public int bitDepthChroma = 8;
+    public boolean qpprimeYZeroTransformBypass;
+    public boolean scalingMatrixPresent;
+    public int log2MaxFrameNum;
+    public int picOrderCntType;
+    public int log2MaxPicOrderCntLsb;
+    public int maxNumRefFrames;
+    public boolean gapsInFrameNumAllowed;
+    public boolean frameMbsOnly;
+    public boolean mbAdaptiveFrameField;
+    public boolean direct8x8Inference;
+
+    /** Decoded size in pixels, after cropping. */
+    public int width;
+    public int height;
+
+    /** Cropping in pixels. */
+    public int cropLeft;
+    public int cropRight;
+    public int cropTop;
+    public int cropBottom;
+
+    public int sarWidth = 1;
+    public int sarHeight = 1;
+
+    /** The frame rate from the VUI timing info, or 0 if absent. */
+    public float frameRate;
+
+    /** From the VUI bitstream restrictions, or -1 if absent. */
+    public int maxNumReorderFrames = -1;
+    public int maxDecFrameBuffering = -1;
+
+    @NonNull
+    public static AvcSps parse(@NonNull ByteBuffer buffer) {
+        BitReader reader = new BitReader(buffer, true);
+        AvcSps sps = new AvcSps();
+        sps.profileIdc = reader.readInt(8);
+        sps.constraintFlags = reader.readInt(8);
+        sps.levelIdc = reader.readInt(8);
+        sps.id = reader.readUE();
+        if (hasChromaInfo(sps.profileIdc)) {
+            sps.chromaFormatIdc = reader.readUE();
+            if (sps.chromaFormatIdc == 3) sps.separateColourPlane = reader.readBit();
+            sps.bitDepthLuma = 8 + reader.readUE();
+            sps.bitDepthChroma = 8 + reader.readUE();
+            sps.qpprimeYZeroTransformBypass = reader.readBit();
+            sps.scalingMatrixPresent = reader.readBit();
+            if (sps.scalingMatrixPresent) {
+                int lists = sps.chromaFormatIdc != 3 ? 8 : 12;
+                for (int i = 0; i < lists; i++) {
+                    if (reader.readBit()) skipScalingList(reader, i < 6 ? 16 : 64);
+                }
+            }
+        }
+        sps.log2MaxFrameNum = 4 + reader.readUE();
+        sps.picOrderCntType = reader.readUE();
+        if (sps.picOrderCntType == 0) {
+            sps.log2MaxPicOrderCntLsb = 4 + reader.readUE();
+        } else if (sps.picOrderCntType == 1) {
+            reader.skipBits(1); // delta_pic_order_always_zero_flag
+            reader.readSE(); // offset_for_non_ref_pic
+            reader.readSE(); // offset_for_top_to_bottom_field
+            int cycle = reader.readUE();
+            for (int i = 0; i < cycle; i++) reader.readSE();
+        }
+        sps.maxNumRefFrames = reader.readUE();
+        sps.gapsInFrameNumAllowed = reader.readBit();
+        int widthInMbs = reader.readUE() + 1;
+        int heightInMapUnits = reader.readUE() + 1;
+        sps.frameMbsOnly = reader.readBit();
+        if (!sps.frameMbsOnly) sps.mbAdaptiveFrameField = reader.readBit();
+        sps.direct8x8Inference = reader.readBit();
+
+        int chromaArrayType = sps.separateColourPlane ? 0 : sps.chromaFormatIdc;
+        int cropUnitX = chromaArrayType == 0 || chromaArrayType == 3 ? 1 : 2;
+        int cropUnitY = (chromaArrayType == 1 ? 2 : 1) * (sps.frameMbsOnly ? 1 : 2);
+        if (reader.readBit()) { // frame_cropping_flag
+            sps.cropLeft = reader.readUE() * cropUnitX;
+            sps.cropRight = reader.readUE() * cropUnitX;
+            sps.cropTop = reader.readUE() * cropUnitY;
+            sps.cropBottom = reader.readUE() * cropUnitY;
+        }
+        sps.width = widthInMbs * 16 - sps.cropLeft - sps.cropRight;
+        sps.height = (sps.frameMbsOnly ? 1 : 2) * heightInMapUnits * 16 - sps.cropTop - sps.cropBottom;
+        if (reader.readBit()) parseVui(reader, sps);
+        return sps;
+    }
+
+    private static boolean hasChromaInfo(int profileIdc) {
+        switch (profileIdc) {
+            case 100: case 110: case 122: case 244: case 44: case 83:
+            case 86: case 118: case 128: case 138: case 139: case 134: case 135:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void skipScalingList(@NonNull BitReader reader, int size) {
+        int last = 8;
+        int next = 8;
+        for (int j = 0; j < size; j++) {
+            if (next != 0) next = (last + reader.readSE() + 256) % 256;
+            if (next != 0) last = next;
+        }
+    }
+
+    private static void parseVui(@NonNull BitReader reader, @NonNull AvcSps sps) {
+        if (reader.readBit()) { // aspect_ratio_info_present_flag
+            int idc = reader.readInt(8);
+            if (idc == 255) { // Extended_SAR
+                sps.sarWidth = reader.readInt(16);
+                sps.sarHeight = reader.readInt(16);
+            } else if (idc > 0 && idc < SAR.length) {
+                sps.sarWidth = SAR[idc][0];
+                sps.sarHeight = SAR[idc][1];
+            }
+        }
+        if (reader.readBit()) reader.skipBits(1); // overscan
+        if (reader.readBit()) { // video_signal_type_present_flag
+            reader.skipBits(4);
+            if (reader.readBit()) reader.skipBits(24); // colour description
+        }
+        if (reader.readBit()) { // chroma_loc_info_present_flag
+            reader.readUE();
+            reader.readUE();
+        }
+        if (reader.readBit()) { // timing_info_present_flag
+            long unitsInTick = reader.readBits(32);
+            long timeScale = reader.readBits(32);
+            reader.skipBits(1); // fixed_frame_rate_flag
+            if (unitsInTick > 0) sps.frameRate = timeScale / (2F * unitsInTick);
+        }
+        boolean nalHrd = reader.readBit();
+        if (nalHrd) skipHrd(reader);
+        boolean vclHrd = reader.readBit();
+        if (vclHrd) skipHrd(reader);
+        if (nalHrd || vclHrd) reader.skipBits(1); // low_delay_hrd_flag
+        reader.skipBits(1); // pic_struct_present_flag
+        if (reader.readBit()) { // bitstream_restriction_flag
+            reader.skipBits(1); // motion_vectors_over_pic_boundaries_flag
+            reader.readUE(); // max_bytes_per_pic_denom
+            reader.readUE(); // max_bits_per_mb_denom
+            reader.readUE(); // log2_max_mv_length_horizontal
+            reader.readUE(); // log2_max_mv_length_vertical
+            sps.maxNumReorderFrames = reader.readUE();
+            sps.maxDecFrameBuffering = reader.readUE();
+        }
+    }
+
+    private static void skipHrd(@NonNull BitReader reader) {
+        int count = reader.readUE() + 1;
+        reader.skipBits(8); // bit_rate_scale, cpb_size_scale
+        for (int i = 0; i < count; i++) {
+            reader.readUE(); // bit_rate_value_minus1
+            reader.readUE(); // cpb_size_value_minus1
+            reader.skipBits(1); // cbr_flag
+        }
+        reader.skipBits(20); // delay and offset lengths
+    }
+
+    // Table E-1, indexed by aspect_ratio_idc.
+    private static final int[][] SAR = {
+            {0, 0}, {1, 1}, {12, 11}, {10, 11}, {16, 11}, {40, 33}, {24, 11}, {20, 11},
+            {32, 11}, {80, 33}, {18, 11}, {15, 11}, {64, 33}, {160, 99}, {4, 3}, {3, 2}, {2, 1}
+    };
+}
@@ -13,6 +13,12 @@ public class BitRates {
         return (long) (0.07F * 2 * width * height * frameRate);
     }
 
+    // Same as above, scaled by a content complexity factor, where 1 is the typical content
+    // the formula above was made for.
+    public static long estimateVideoBitRate(int width, int height, int frameRate, float complexity) {
+        return (long) (estimateVideoBitRate(width, height, frameRate) * complexity);
+    }
+
     // Wildly assuming a 0.75 compression rate for AAC.
     @SuppressWarnings("UnnecessaryLocalVariable")
     public static long estimateAudioBitRate(int channels, int sampleRate) {
@@ -0,0 +1,107 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads bits, MSB first, from a copy of the given buffer's remaining bytes.
+ * Supports the Exp-Golomb codes used by H.264 / H.265 parameter sets.
+ *
+ * When unescape is true, emulation prevention bytes (the 0x03 in 0x000003) are
+ * removed while copying, so that the reader sees the raw RBSP.
+ */
+public class BitReader {
+
+    private final byte[] mData;
+    private final int mSize;
+    private int mPosition; // in bits
+
+    public BitReader(@NonNull ByteBuffer buffer, boolean unescape) {
+        ByteBuffer source = buffer.duplicate();
+        mData = new byte[source.remaining()];
+        int size = 0;
+        int zeros = 0;
+        while (source.hasRemaining()) {
+            byte b = source.get();
+            if (unescape && zeros >= 2 && b == 0x03) {
+                zeros = 0;
+                continue;
+            }
+            zeros = b == 0 ? zeros + 1 : 0;
+            mData[size++] = b;
+        }
+        mSize = size;
+    }
+
+    public int bitsLeft() {
+        return mSize * 8 - mPosition;
+    }
+
+    public boolean readBit() {
+        if (mPosition >= mSize * 8) {
+            throw new IllegalStateException("Reading past the end of the bitstream.");
+        }
+        int value = mData[mPosition / 8] >> (7 - mPosition % 8);
+        mPosition++;
+        return (value & 1) == 1;
+    }
+
+    /**
+     * Reads up to 32 bits as an unsigned value.
+     */
+    public long readBits(int count) {
+        if (count < 0 || count > 32) {
+            throw new IllegalArgumentException("Invalid bit count: " + count);
+        }
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 1) | (readBit() ? 1 : 0);
+        }
+        return value;
+    }
+
+    public int readInt(int count) {
+        if (count > 31) throw new IllegalArgumentException("Use readBits for " + count + " bits.");
+        return (int) readBits(count);
+    }
+
+    public void skipBits(int count) {
+        if (count > bitsLeft()) {
+            throw new IllegalStateException("Skipping past the end of the bitstream.");
+        }
+        mPosition += count;
+    }
+
+    /**
+     * Whether there is more data before the RBSP trailing bits, that is,
+     * before the last bit set to 1. Refer: ITU-T H.264, 7.2, more_rbsp_data().
+     */
+    public boolean hasMoreRbspData() {
+        int last = mSize - 1;
+        while (last >= 0 && mData[last] == 0) last--;
+        if (last < 0) return false;
+        int stopBit = last * 8 + 7 - Integer.numberOfTrailingZeros(mData[last] & 0xFF);
+        return mPosition < stopBit;
+    }
+
+    /**
+     * Unsigned Exp-Golomb code, ue(v).
+     */
+    public int readUE() {
+        int zeros = 0;
+        while (!readBit()) {
+            zeros++;
+            if (zeros > 31) throw new IllegalStateException("Invalid Exp-Golomb code.");
+        }
+        return (int) ((1L << zeros) - 1 + readBits(zeros));
+    }
+
+    /**
+     * Signed Exp-Golomb code, se(v).
+     */
+    public int readSE() {
+        int value = readUE();
+        return (value & 1) == 1 ? (value + 1) / 2 : -(value / 2);
+    }
+}
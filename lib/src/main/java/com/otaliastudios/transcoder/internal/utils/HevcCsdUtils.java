@@ -0,0 +1,91 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import android.media.MediaFormat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * For H.265, {@link android.media.MediaExtractor} puts VPS, SPS and PPS together in csd-0,
+ * each one prefixed by an Annex-B start code. These helpers find one of them and return it
+ * without the start code and the two bytes NAL header, as expected by the parsers.
+ */
+public class HevcCsdUtils {
+
+    private static final String KEY_CSD = "csd-0";
+    // Refer: ITU-T H.265, Table 7-1.
+    private static final int HEVC_VPS_NAL_TYPE = 32;
+    private static final int HEVC_SPS_NAL_TYPE = 33;
+    private static final int HEVC_PPS_NAL_TYPE = 34;
+
+    /**
+     * @param format the input format
+     * @return ByteBuffer contains VPS without NAL header.
+     */
+    @NonNull
+    public static ByteBuffer getVpsBuffer(@NonNull MediaFormat format) {
+        return getNalBuffer(format, HEVC_VPS_NAL_TYPE);
+    }
+
+    /**
+     * @param format the input format
+     * @return ByteBuffer contains SPS without NAL header.
+     */
+    @NonNull
+    public static ByteBuffer getSpsBuffer(@NonNull MediaFormat format) {
+        return getNalBuffer(format, HEVC_SPS_NAL_TYPE);
+    }
+
+    /**
+     * @param format the input format
+     * @return ByteBuffer contains PPS without NAL header.
+     */
+    @NonNull
+    public static ByteBuffer getPpsBuffer(@NonNull MediaFormat format) {
+        return getNalBuffer(format, HEVC_PPS_NAL_TYPE);
+    }
+
+    @NonNull
+    private static ByteBuffer getNalBuffer(@NonNull MediaFormat format, int nalType) {
+        ByteBuffer sourceBuffer = format.getByteBuffer(KEY_CSD).asReadOnlyBuffer(); // might be direct buffer
+        ByteBuffer csd = ByteBuffer.allocate(sourceBuffer.remaining());
+        csd.put(sourceBuffer);
+        csd.flip();
+        ByteBuffer nal = findNal(csd, nalType);
+        if (nal == null) {
+            throw new IllegalStateException("NAL unit of type " + nalType + " not found in csd.");
+        }
+        return nal;
+    }
+
+    @Nullable
+    private static ByteBuffer findNal(@NonNull ByteBuffer csd, int nalType) {
+        int limit = csd.limit();
+        int start = nextPayload(csd, 0);
+        while (start >= 0 && start < limit) {
+            int next = nextPayload(csd, start);
+            // The end of this NAL is the start of the next start code.
+            int end = next < 0 ? limit : next - 3;
+            while (end > start && csd.get(end - 1) == 0) end--; // 4 bytes start codes, trailing zeros
+            if (end - start > 2 && ((csd.get(start) >> 1) & 0x3F) == nalType) {
+                ByteBuffer nal = csd.duplicate();
+                nal.position(start + 2);
+                nal.limit(end);
+                return nal.slice();
+            }
+            start = next;
+        }
+        return null;
+    }
+
+    // Returns the position after the next 0x000001 start code, or -1.
+    private static int nextPayload(@NonNull ByteBuffer csd, int from) {
+        int code = NalFramer.findStartCode(csd, from, csd.limit());
+        return code < 0 ? -1 : code + 3;
+    }
+
+    private HevcCsdUtils() {
+    }
+}
@@ -0,0 +1,99 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A parsed H.265 picture parameter set, as returned by {@link HevcCsdUtils#getPpsBuffer}:
+ * the buffer should start right after the NAL header. Parsing stops before the range and
+ * multilayer extensions. Refer: ITU-T H.265, 7.3.2.3.1.
+ */
+public class HevcPps {
+
+    public int id;
+    public int spsId;
+    public boolean dependentSliceSegmentsEnabled;
+    public boolean outputFlagPresent;
+    public int numExtraSliceHeaderBits;
+    public boolean signDataHidingEnabled;
+    public boolean cabacInitPresent;
+    public int numRefIdxL0DefaultActive;
+    public int numRefIdxL1DefaultActive;
+    public int initQp;
+    public boolean constrainedIntraPred;
+    public boolean transformSkipEnabled;
+    public boolean cuQpDeltaEnabled;
+    public int diffCuQpDeltaDepth;
+    public int cbQpOffset;
+    public int crQpOffset;
+    public boolean sliceChromaQpOffsetsPresent;
+    public boolean weightedPred;
+    public boolean weightedBipred;
+    public boolean transquantBypassEnabled;
+    public boolean tilesEnabled;
+    public boolean entropyCodingSyncEnabled;
+    public boolean loopFilterAcrossSlicesEnabled;
+    public boolean deblockingFilterControlPresent;
+    public boolean deblockingFilterOverrideEnabled;
+    public boolean deblockingFilterDisabled;
+    public int betaOffset;
+    public int tcOffset;
+    public boolean scalingListDataPresent;
+    public boolean listsModificationPresent;
+    public int log2ParallelMergeLevel;
+    public boolean sliceSegmentHeaderExtensionPresent;
+
+    @NonNull
+    public static HevcPps parse(@NonNull ByteBuffer buffer) {
+        BitReader reader = new BitReader(buffer, true);
+        HevcPps pps = new HevcPps();
+        pps.id = reader.readUE();
+        pps.spsId = reader.readUE();
+        pps.dependentSliceSegmentsEnabled = reader.readBit();
+        pps.outputFlagPresent = reader.readBit();
+        pps.numExtraSliceHeaderBits = reader.readInt(3);
+        pps.signDataHidingEnabled = reader.readBit();
+        pps.cabacInitPresent = reader.readBit();
+        pps.numRefIdxL0DefaultActive = reader.readUE() + 1;
+        pps.numRefIdxL1DefaultActive = reader.readUE() + 1;
+        pps.initQp = 26 + reader.readSE();
+        pps.constrainedIntraPred = reader.readBit();
+        pps.transformSkipEnabled = reader.readBit();
+        pps.cuQpDeltaEnabled = reader.readBit();
+        if (pps.cuQpDeltaEnabled) pps.diffCuQpDeltaDepth = reader.readUE();
+        pps.cbQpOffset = reader.readSE();
+        pps.crQpOffset = reader.readSE();
+        pps.sliceChromaQpOffsetsPresent = reader.readBit();
+        pps.weightedPred = reader.readBit();
+        pps.weightedBipred = reader.readBit();
+        pps.transquantBypassEnabled = reader.readBit();
+        pps.tilesEnabled = reader.readBit();
+        pps.entropyCodingSyncEnabled = reader.readBit();
+        if (pps.tilesEnabled) {
+            int columns = reader.readUE() + 1;
+            int rows = reader.readUE() + 1;
+            if (!reader.readBit()) { // uniform_spacing_flag
+                for (int i = 0; i < columns - 1; i++) reader.readUE(); // column_width_minus1
+                for (int i = 0; i < rows - 1; i++) reader.readUE(); // row_height_minus1
+            }
+            reader.skipBits(1); // loop_filter_across_tiles_enabled_flag
+        }
+        pps.loopFilterAcrossSlicesEnabled = reader.readBit();
+        pps.deblockingFilterControlPresent = reader.readBit();
+        if (pps.deblockingFilterControlPresent) {
+            pps.deblockingFilterOverrideEnabled = reader.readBit();
+            pps.deblockingFilterDisabled = reader.readBit();
+            if (!pps.deblockingFilterDisabled) {
+                pps.betaOffset = 2 * reader.readSE();
+                pps.tcOffset = 2 * reader.readSE();
+            }
+        }
+        pps.scalingListDataPresent = reader.readBit();
+        if (pps.scalingListDataPresent) HevcSps.skipScalingListData(reader);
+        pps.listsModificationPresent = reader.readBit();
+        pps.log2ParallelMergeLevel = 2 + reader.readUE();
+        pps.sliceSegmentHeaderExtensionPresent = reader.readBit();
+        return pps;
+    }
+}
@@ -0,0 +1,46 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The general part of an H.265 profile_tier_level() structure, shared by VPS and SPS.
+ * Sub-layer values are skipped. Refer: ITU-T H.265, 7.3.3.
+ */
+public class HevcProfileTierLevel {
+
+    public int profileSpace;
+    public boolean tier; // high tier if true
+    public int profileIdc;
+    public long profileCompatibilityFlags;
+    public boolean progressiveSource;
+    public boolean interlacedSource;
+    public int levelIdc; // 30 times the level number
+
+    @NonNull
+    static HevcProfileTierLevel parse(@NonNull BitReader reader, int maxSubLayersMinus1) {
+        HevcProfileTierLevel ptl = new HevcProfileTierLevel();
+        ptl.profileSpace = reader.readInt(2);
+        ptl.tier = reader.readBit();
+        ptl.profileIdc = reader.readInt(5);
+        ptl.profileCompatibilityFlags = reader.readBits(32);
+        ptl.progressiveSource = reader.readBit();
+        ptl.interlacedSource = reader.readBit();
+        reader.skipBits(2); // non_packed_constraint_flag, frame_only_constraint_flag
+        reader.skipBits(44); // constraint flags and reserved bits
+        ptl.levelIdc = reader.readInt(8);
+        boolean[] profilePresent = new boolean[maxSubLayersMinus1];
+        boolean[] levelPresent = new boolean[maxSubLayersMinus1];
+        for (int i = 0; i < maxSubLayersMinus1; i++) {
+            profilePresent[i] = reader.readBit();
+            levelPresent[i] = reader.readBit();
+        }
+        if (maxSubLayersMinus1 > 0) {
+            reader.skipBits(2 * (8 - maxSubLayersMinus1)); // reserved_zero_2bits
+        }
+        for (int i = 0; i < maxSubLayersMinus1; i++) {
+            if (profilePresent[i]) reader.skipBits(88);
+            if (levelPresent[i]) reader.skipBits(8);
+        }
+        return ptl;
+    }
+}
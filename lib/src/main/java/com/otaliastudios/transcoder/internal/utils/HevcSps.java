@@ -0,0 +1,188 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A parsed H.265 sequence parameter set, as returned by {@link HevcCsdUtils#getSpsBuffer}:
+ * the buffer should start right after the NAL header. Parsing stops before the VUI, after
+ * all the fields that the slice headers depend on. Refer: ITU-T H.265, 7.3.2.2.
+ */
+public class HevcSps {
+
+    public int vpsId;
+    public int maxSubLayers;
+    public boolean temporalIdNesting;
+    public HevcProfileTierLevel profileTierLevel;
+    public int id;
+    public int chromaFormatIdc;
+    public boolean separateColourPlane;
+    public int bitDepthLuma;
+    public int bitDepthChroma;
+    public int log2MaxPicOrderCntLsb;
+
+    /** Decoded size in pixels, after cropping. */
+    public int width;
+    public int height;
+
+    /** Cropping in pixels. */
+    public int cropLeft;
+    public int cropRight;
+    public int cropTop;
+    public int cropBottom;
+
+    /** For the highest sub-layer. */
+    public int maxDecPicBuffering;
+    public int maxNumReorderPics;
+
+    public int log2MinLumaCodingBlockSize;
+    public int log2DiffMaxMinLumaCodingBlockSize;
+    public int log2MinLumaTransformBlockSize;
+    public int log2DiffMaxMinLumaTransformBlockSize;
+    public boolean scalingListEnabled;
+    public boolean ampEnabled;
+    public boolean sampleAdaptiveOffsetEnabled;
+    public boolean pcmEnabled;
+    public int numShortTermRefPicSets;
+    public boolean longTermRefPicsPresent;
+    public int numLongTermRefPicsSps;
+    public boolean temporalMvpEnabled;
+    public boolean strongIntraSmoothingEnabled;
+
+    /**
+     * The syntax values of the reference picture sets, in bitstream order.
+     * Slice headers refer to these by index, so two streams can only share an SPS if they match.
+     */
+    public int[] shortTermRefPicSets;
+    public int[] longTermRefPicsSps;
+
+    @NonNull
+    public static HevcSps parse(@NonNull ByteBuffer buffer) {
+        BitReader reader = new BitReader(buffer, true);
+        HevcSps sps = new HevcSps();
+        sps.vpsId = reader.readInt(4);
+        sps.maxSubLayers = reader.readInt(3) + 1;
+        sps.temporalIdNesting = reader.readBit();
+        sps.profileTierLevel = HevcProfileTierLevel.parse(reader, sps.maxSubLayers - 1);
+        sps.id = reader.readUE();
+        sps.chromaFormatIdc = reader.readUE();
+        if (sps.chromaFormatIdc == 3) sps.separateColourPlane = reader.readBit();
+        int codedWidth = reader.readUE();
+        int codedHeight = reader.readUE();
+        if (reader.readBit()) { // conformance_window_flag
+            int chromaArrayType = sps.separateColourPlane ? 0 : sps.chromaFormatIdc;
+            int subWidth = chromaArrayType == 1 || chromaArrayType == 2 ? 2 : 1;
+            int subHeight = chromaArrayType == 1 ? 2 : 1;
+            sps.cropLeft = subWidth * reader.readUE();
+            sps.cropRight = subWidth * reader.readUE();
+            sps.cropTop = subHeight * reader.readUE();
+            sps.cropBottom = subHeight * reader.readUE();
+        }
+        sps.width = codedWidth - sps.cropLeft - sps.cropRight;
+        sps.height = codedHeight - sps.cropTop - sps.cropBottom;
+        sps.bitDepthLuma = 8 + reader.readUE();
+        sps.bitDepthChroma = 8 + reader.readUE();
+        sps.log2MaxPicOrderCntLsb = 4 + reader.readUE();
+        boolean orderingInfoPresent = reader.readBit();
+        for (int i = orderingInfoPresent ? 0 : sps.maxSubLayers - 1; i < sps.maxSubLayers; i++) {
+            sps.maxDecPicBuffering = reader.readUE() + 1;
+            sps.maxNumReorderPics = reader.readUE();
+            reader.readUE(); // sps_max_latency_increase_plus1
+        }
+        sps.log2MinLumaCodingBlockSize = 3 + reader.readUE();
+        sps.log2DiffMaxMinLumaCodingBlockSize = reader.readUE();
+        sps.log2MinLumaTransformBlockSize = 2 + reader.readUE();
+        sps.log2DiffMaxMinLumaTransformBlockSize = reader.readUE();
+        reader.readUE(); // max_transform_hierarchy_depth_inter
+        reader.readUE(); // max_transform_hierarchy_depth_intra
+        sps.scalingListEnabled = reader.readBit();
+        if (sps.scalingListEnabled && reader.readBit()) { // sps_scaling_list_data_present_flag
+            skipScalingListData(reader);
+        }
+        sps.ampEnabled = reader.readBit();
+        sps.sampleAdaptiveOffsetEnabled = reader.readBit();
+        sps.pcmEnabled = reader.readBit();
+        if (sps.pcmEnabled) {
+            reader.skipBits(8); // pcm_sample_bit_depth_luma_minus1, pcm_sample_bit_depth_chroma_minus1
+            reader.readUE(); // log2_min_pcm_luma_coding_block_size_minus3
+            reader.readUE(); // log2_diff_max_min_pcm_luma_coding_block_size
+            reader.skipBits(1); // pcm_loop_filter_disabled_flag
+        }
+        sps.numShortTermRefPicSets = reader.readUE();
+        int[] numDeltaPocs = new int[sps.numShortTermRefPicSets];
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < sps.numShortTermRefPicSets; i++) {
+            numDeltaPocs[i] = readShortTermRefPicSet(reader, i, numDeltaPocs, values);
+        }
+        sps.shortTermRefPicSets = toArray(values);
+        values.clear();
+        sps.longTermRefPicsPresent = reader.readBit();
+        if (sps.longTermRefPicsPresent) {
+            sps.numLongTermRefPicsSps = reader.readUE();
+            for (int i = 0; i < sps.numLongTermRefPicsSps; i++) {
+                values.add(reader.readInt(sps.log2MaxPicOrderCntLsb)); // lt_ref_pic_poc_lsb_sps
+                values.add(reader.readInt(1)); // used_by_curr_pic_lt_sps_flag
+            }
+        }
+        sps.longTermRefPicsSps = toArray(values);
+        sps.temporalMvpEnabled = reader.readBit();
+        sps.strongIntraSmoothingEnabled = reader.readBit();
+        return sps;
+    }
+
+    // Refer: ITU-T H.265, 7.3.7. Returns NumDeltaPocs for this set.
+    private static int readShortTermRefPicSet(@NonNull BitReader reader, int index,
+                                              @NonNull int[] numDeltaPocs,
+                                              @NonNull List<Integer> values) {
+        boolean interPrediction = index != 0 && reader.readBit();
+        values.add(interPrediction ? 1 : 0);
+        if (interPrediction) {
+            // delta_idx_minus1 is only present in slice headers, so the reference is the previous set.
+            values.add(reader.readInt(1)); // delta_rps_sign
+            values.add(reader.readUE()); // abs_delta_rps_minus1
+            int count = 0;
+            for (int j = 0; j <= numDeltaPocs[index - 1]; j++) {
+                boolean usedByCurrPic = reader.readBit();
+                boolean useDelta = usedByCurrPic || reader.readBit();
+                values.add((usedByCurrPic ? 2 : 0) + (useDelta ? 1 : 0));
+                if (useDelta) count++;
+            }
+            return count;
+        } else {
+            int negative = reader.readUE();
+            int positive = reader.readUE();
+            values.add(negative);
+            values.add(positive);
+            for (int j = 0; j < negative + positive; j++) {
+                values.add(reader.readUE()); // delta_poc_s0_minus1 or delta_poc_s1_minus1
+                values.add(reader.readInt(1)); // used_by_curr_pic_s0_flag or used_by_curr_pic_s1_flag
+            }
+            return negative + positive;
+        }
+    }
+
+    @NonNull
+    private static int[] toArray(@NonNull List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) array[i] = values.get(i);
+        return array;
+    }
+
+    // Refer: ITU-T H.265, 7.3.4.
+    static void skipScalingListData(@NonNull BitReader reader) {
+        for (int sizeId = 0; sizeId < 4; sizeId++) {
+            for (int matrixId = 0; matrixId < 6; matrixId += sizeId == 3 ? 3 : 1) {
+                if (!reader.readBit()) { // scaling_list_pred_mode_flag
+                    reader.readUE(); // scaling_list_pred_matrix_id_delta
+                } else {
+                    int coefficients = Math.min(64, 1 << (4 + (sizeId << 1)));
+                    if (sizeId > 1) reader.readSE(); // scaling_list_dc_coef_minus8
+                    for (int i = 0; i < coefficients; i++) reader.readSE(); // scaling_list_delta_coef
+                }
+            }
+        }
+    }
+}
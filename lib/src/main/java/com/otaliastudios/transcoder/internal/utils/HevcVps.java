@@ -0,0 +1,43 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A parsed H.265 video parameter set, as returned by {@link HevcCsdUtils#getVpsBuffer}:
+ * the buffer should start right after the NAL header. Parsing stops after the sub-layer
+ * ordering info. Refer: ITU-T H.265, 7.3.2.1.
+ */
+public class HevcVps {
+
+    public int id;
+    public int maxLayers;
+    public int maxSubLayers;
+    public boolean temporalIdNesting;
+    public HevcProfileTierLevel profileTierLevel;
+
+    /** For the highest sub-layer. */
+    public int maxDecPicBuffering;
+    public int maxNumReorderPics;
+
+    @NonNull
+    public static HevcVps parse(@NonNull ByteBuffer buffer) {
+        BitReader reader = new BitReader(buffer, true);
+        HevcVps vps = new HevcVps();
+        vps.id = reader.readInt(4);
+        reader.skipBits(2); // vps_base_layer_internal_flag, vps_base_layer_available_flag
+        vps.maxLayers = reader.readInt(6) + 1;
+        vps.maxSubLayers = reader.readInt(3) + 1;
+        vps.temporalIdNesting = reader.readBit();
+        reader.skipBits(16); // vps_reserved_0xffff_16bits
+        vps.profileTierLevel = HevcProfileTierLevel.parse(reader, vps.maxSubLayers - 1);
+        boolean orderingInfoPresent = reader.readBit();
+        for (int i = orderingInfoPresent ? 0 : vps.maxSubLayers - 1; i < vps.maxSubLayers; i++) {
+            vps.maxDecPicBuffering = reader.readUE() + 1;
+            vps.maxNumReorderPics = reader.readUE();
+            reader.readUE(); // vps_max_latency_increase_plus1
+        }
+        return vps;
+    }
+}
@@ -0,0 +1,204 @@
+package com.otaliastudios.transcoder.internal.utils;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Converts the NAL unit framing of H.264 / H.265 samples in place, between Annex-B
+ * (start code prefixed, as returned by {@link android.media.MediaExtractor} and encoders)
+ * and length prefixed (AVCC / HVCC, as stored in MP4 files and expected by some packetizers).
+ *
+ * Conversion works on the buffer region between position and limit, which is updated on return.
+ * Since 3 bytes start codes and short length prefixes grow when converted to 4 bytes,
+ * the buffer capacity must leave room for one extra byte per NAL unit in the worst case.
+ * Units are moved with overlapping-safe copies, so no temporary buffer is needed. The only
+ * state is the table of unit offsets, which grows once and is then reused: keep one instance
+ * per stream and don't share it across threads.
+ */
+public class NalFramer {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final int OUTPUT_PREFIX_SIZE = 4;
+
+    private int[] mStarts = new int[16];
+    private int[] mLengths = new int[16];
+    private int[] mTargets = new int[16];
+    private int mCount;
+
+    /**
+     * Converts Annex-B units to units prefixed by their size, as 4 bytes big endian integers.
+     * Both 3 and 4 bytes start codes are accepted. Zero bytes that trail a unit
+     * (trailing_zero_8bits) are dropped.
+     *
+     * @param buffer the buffer
+     */
+    public void toLengthPrefixed(@NonNull ByteBuffer buffer) {
+        int base = buffer.position();
+        int limit = buffer.limit();
+        int code = findStartCode(buffer, base, limit);
+        if (code < 0) throw new IllegalArgumentException("Annex-B start code not found.");
+        mCount = 0;
+        int start = code + 3;
+        while (true) {
+            int next = findStartCode(buffer, start, limit);
+            int end = next < 0 ? limit : next;
+            // A unit ends with the RBSP stop bit, so zeros belong to the next start code.
+            while (end > start && buffer.get(end - 1) == 0) end--;
+            if (end > start) add(start, end - start);
+            if (next < 0) break;
+            start = next + 3;
+        }
+        relocate(buffer, base, false);
+    }
+
+    /**
+     * Converts units prefixed by their size, as big endian integers of the given size,
+     * to Annex-B units with 4 bytes start codes.
+     *
+     * @param buffer the buffer
+     * @param lengthSize size of the length prefix: 1, 2 or 4
+     */
+    public void toAnnexB(@NonNull ByteBuffer buffer, int lengthSize) {
+        if (lengthSize != 1 && lengthSize != 2 && lengthSize != 4) {
+            throw new IllegalArgumentException("Invalid length size: " + lengthSize);
+        }
+        int base = buffer.position();
+        int limit = buffer.limit();
+        mCount = 0;
+        int position = base;
+        while (position < limit) {
+            if (position + lengthSize > limit) {
+                throw new IllegalArgumentException("Truncated length prefix at " + position);
+            }
+            long length = 0;
+            for (int i = 0; i < lengthSize; i++) {
+                length = (length << 8) | (buffer.get(position + i) & 0xFF);
+            }
+            position += lengthSize;
+            if (length > limit - position) {
+                throw new IllegalArgumentException("NAL unit of size " + length + " exceeds the buffer.");
+            }
+            if (length > 0) add(position, (int) length);
+            position += (int) length;
+        }
+        relocate(buffer, base, true);
+    }
+
+    /**
+     * Returns the index of the first byte of the next 0x000001 start code in [from, to),
+     * or -1 if there's none. For 4 bytes start codes, this points to the second zero.
+     *
+     * Emulation prevention guarantees that 0x000001 never appears inside a unit, so the scan
+     * needs no state. Since every start code begins with a zero byte, eight bytes at a time
+     * are checked for zeros and skipped when there are none, which is the common case
+     * in compressed data.
+     *
+     * @param buffer the buffer
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     * @return index or -1
+     */
+    public static int findStartCode(@NonNull ByteBuffer buffer, int from, int to) {
+        int last = to - 3; // last index where a start code can begin
+        int i = from;
+        while (i <= last) {
+            if (i + 8 <= to) {
+                long word = buffer.getLong(i);
+                if (((word - ONES) & ~word & HIGHS) == 0) {
+                    i += 8;
+                    continue;
+                }
+            }
+            int end = Math.min(i + 8, last + 1);
+            for (int j = i; j < end; j++) {
+                if (buffer.get(j) == 0 && buffer.get(j + 1) == 0 && buffer.get(j + 2) == 1) {
+                    return j;
+                }
+            }
+            i = end;
+        }
+        return -1;
+    }
+
+    private void add(int start, int length) {
+        if (mCount == mStarts.length) {
+            int size = mCount * 2;
+            mStarts = Arrays.copyOf(mStarts, size);
+            mLengths = Arrays.copyOf(mLengths, size);
+            mTargets = Arrays.copyOf(mTargets, size);
+        }
+        mStarts[mCount] = start;
+        mLengths[mCount] = length;
+        mCount++;
+    }
+
+    /**
+     * Moves the collected units to their final position, each one after a 4 bytes prefix.
+     * Units moving towards the start are processed front to back, while runs of units
+     * moving towards the end are processed back to front, so that no unit is overwritten
+     * before being moved.
+     */
+    private void relocate(@NonNull ByteBuffer buffer, int base, boolean annexB) {
+        int target = base;
+        for (int i = 0; i < mCount; i++) {
+            target += OUTPUT_PREFIX_SIZE;
+            mTargets[i] = target;
+            target += mLengths[i];
+        }
+        if (target > buffer.capacity()) {
+            throw new IllegalStateException("Not enough room to convert in place: need "
+                    + (target - base) + " bytes, have " + (buffer.capacity() - base));
+        }
+        if (target > buffer.limit()) buffer.limit(target);
+        int i = 0;
+        while (i < mCount) {
+            if (mTargets[i] <= mStarts[i]) {
+                moveUnit(buffer, i, annexB);
+                i++;
+                continue;
+            }
+            int runEnd = i;
+            while (runEnd + 1 < mCount && mTargets[runEnd + 1] > mStarts[runEnd + 1]) runEnd++;
+            for (int j = runEnd; j >= i; j--) moveUnit(buffer, j, annexB);
+            i = runEnd + 1;
+        }
+        buffer.limit(target);
+        buffer.position(base);
+    }
+
+    // The prefix is written after moving, since it may overlap the unit's old position.
+    private void moveUnit(@NonNull ByteBuffer buffer, int index, boolean annexB) {
+        int target = mTargets[index];
+        int length = mLengths[index];
+        move(buffer, mStarts[index], target, length);
+        int prefix = target - OUTPUT_PREFIX_SIZE;
+        if (annexB) {
+            buffer.put(prefix, (byte) 0);
+            buffer.put(prefix + 1, (byte) 0);
+            buffer.put(prefix + 2, (byte) 0);
+            buffer.put(prefix + 3, (byte) 1);
+        } else {
+            buffer.put(prefix, (byte) (length >>> 24));
+            buffer.put(prefix + 1, (byte) (length >>> 16));
+            buffer.put(prefix + 2, (byte) (length >>> 8));
+            buffer.put(prefix + 3, (byte) length);
+        }
+    }
+
+    // Like memmove: the copy direction depends on the overlap. Eight bytes at a time.
+    private static void move(@NonNull ByteBuffer buffer, int from, int to, int length) {
+        if (from == to || length == 0) return;
+        if (to < from) {
+            int i = 0;
+            for (; i + 8 <= length; i += 8) buffer.putLong(to + i, buffer.getLong(from + i));
+            for (; i < length; i++) buffer.put(to + i, buffer.get(from + i));
+        } else {
+            int i = length;
+            for (; i >= 8; i -= 8) buffer.putLong(to + i - 8, buffer.getLong(from + i - 8));
+            for (; i > 0; i--) buffer.put(to + i - 1, buffer.get(from + i - 1));
+        }
+    }
+}
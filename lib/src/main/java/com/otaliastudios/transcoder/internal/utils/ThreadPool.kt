@@ -26,4 +26,24 @@ internal object ThreadPool {
                     return Thread(r, "TranscoderThread #" + count.getAndIncrement())
                 }
             })
-}
\ No newline at end of file
+
+    /**
+     * Bounded executor for blocking I/O, like opening data sources. This is separate from
+     * [executor], because its threads might be blocked waiting for these tasks.
+     */
+    @JvmStatic
+    val io = ThreadPoolExecutor(
+            IO_THREADS,
+            IO_THREADS,
+            60,
+            TimeUnit.SECONDS,
+            LinkedBlockingQueue(),
+            object : ThreadFactory {
+                private val count = AtomicInteger(1)
+                override fun newThread(r: Runnable): Thread {
+                    return Thread(r, "TranscoderIOThread #" + count.getAndIncrement())
+                }
+            }).apply { allowCoreThreadTimeOut(true) }
+
+    private const val IO_THREADS = 4
+}
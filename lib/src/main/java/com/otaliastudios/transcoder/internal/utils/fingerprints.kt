@@ -0,0 +1,46 @@
+package com.otaliastudios.transcoder.internal.utils
+
+import android.content.Context
+import android.net.Uri
+import android.system.Os
+import java.io.FileDescriptor
+import java.io.FileInputStream
+import java.security.MessageDigest
+
+private const val FINGERPRINT_BYTES = 64 * 1024
+
+/**
+ * Computes a cheap fingerprint of the media in the given descriptor range, that can be used
+ * as a cache key. It includes the size, the modification time, and a hash of the first and
+ * last bytes: this covers the MP4 moov box, which can be at either end of the file.
+ */
+internal fun fingerprintOf(descriptor: FileDescriptor, offset: Long = 0L, length: Long = Long.MAX_VALUE): String {
+    val stat = Os.fstat(descriptor)
+    val size = minOf(stat.st_size - offset, length)
+    val digest = MessageDigest.getInstance("SHA-1")
+    val bytes = ByteArray(minOf(size, FINGERPRINT_BYTES.toLong()).toInt())
+    fun hash(position: Long) {
+        var read = 0
+        while (read < bytes.size) {
+            val count = Os.pread(descriptor, bytes, read, bytes.size - read, position + read)
+            if (count <= 0) break
+            read += count
+        }
+        digest.update(bytes, 0, read)
+    }
+    hash(offset)
+    if (size > bytes.size) hash(offset + size - bytes.size)
+    val hash = digest.digest().joinToString("") { "%02x".format(it) }
+    return "$size-${stat.st_mtime}-$hash"
+}
+
+internal fun fingerprintOf(path: String): String {
+    return FileInputStream(path).use { fingerprintOf(it.fd) }
+}
+
+internal fun fingerprintOf(context: Context, uri: Uri): String {
+    val descriptor = checkNotNull(context.contentResolver.openFileDescriptor(uri, "r")) {
+        "Could not open $uri."
+    }
+    return descriptor.use { fingerprintOf(it.fileDescriptor) }
+}
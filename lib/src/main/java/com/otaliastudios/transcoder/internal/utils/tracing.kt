@@ -0,0 +1,15 @@
+package com.otaliastudios.transcoder.internal.utils
+
+import com.otaliastudios.transcoder.TranscodeTracer
+
+// Records the duration of block, if tracing is enabled. Inlined, so that it costs
+// a null check when disabled.
+internal inline fun <T> TranscodeTracer?.trace(category: String, name: String, block: () -> T): T {
+    if (this == null) return block()
+    val start = System.nanoTime()
+    try {
+        return block()
+    } finally {
+        complete(category, name, start)
+    }
+}
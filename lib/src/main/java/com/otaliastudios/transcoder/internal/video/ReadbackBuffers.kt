@@ -0,0 +1,31 @@
+package com.otaliastudios.transcoder.internal.video
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Direct buffers used by [VideoSnapshots] to read pixels back from the GL surface.
+ * They are allocated once and reused across frames, and can be shared by
+ * all the snapshot steps of the same engine.
+ */
+internal class ReadbackBuffers {
+
+    private var rgba: ByteBuffer? = null
+    private var rgb565: ByteBuffer? = null
+
+    fun rgba(capacity: Int): ByteBuffer {
+        val buffer = rgba?.takeIf { it.capacity() >= capacity } ?: allocate(capacity).also { rgba = it }
+        buffer.clear().limit(capacity)
+        return buffer
+    }
+
+    fun rgb565(capacity: Int): ByteBuffer {
+        val buffer = rgb565?.takeIf { it.capacity() >= capacity } ?: allocate(capacity).also { rgb565 = it }
+        buffer.clear().limit(capacity)
+        return buffer
+    }
+
+    private fun allocate(capacity: Int): ByteBuffer {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN)
+    }
+}
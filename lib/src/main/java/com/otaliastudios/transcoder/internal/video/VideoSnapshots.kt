@@ -13,21 +13,33 @@ import com.otaliastudios.opengl.surface.EglSurface
 import com.otaliastudios.transcoder.internal.pipeline.BaseStep
 import com.otaliastudios.transcoder.internal.pipeline.Channel
 import com.otaliastudios.transcoder.internal.pipeline.State
-import com.otaliastudios.transcoder.internal.utils.Logger
-import com.otaliastudios.transcoder.thumbnail.Thumbnail
+import com.otaliastudios.transcoder.thumbnail.BitmapPool
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 import kotlin.math.abs
 
+/**
+ * Takes snapshots of the rendered frames. [nextRequestUs] returns the position of the
+ * next pending request, while [onSnapshot] is expected to consume it, so that more requests
+ * can be satisfied by the same frame. The frame is still in the current surface during
+ * [onSnapshot], and its pixels are only read if the bitmap is requested.
+ * [onRelease] is called while the EGL context is still current.
+ *
+ * Pixels are read into [buffers], which are reused, and copied into bitmaps with the given
+ * [config] taken from [pool], if possible. Only [Bitmap.Config.ARGB_8888] and
+ * [Bitmap.Config.RGB_565] are supported.
+ */
 internal class VideoSnapshots(
     format: MediaFormat,
-    requests: List<Long>,
     private val accuracyUs: Long,
-    private val onSnapshot: (Long, Bitmap) -> Unit
+    private val nextRequestUs: () -> Long?,
+    private val config: Bitmap.Config = Bitmap.Config.ARGB_8888,
+    private val pool: BitmapPool? = null,
+    private val buffers: ReadbackBuffers = ReadbackBuffers(),
+    private val onRelease: () -> Unit = {},
+    private val onSnapshot: (Long, () -> Bitmap) -> Unit
 ) : BaseStep<Long, Channel, Long, Channel>("VideoSnapshots") {
 
     override val channel = Channel
-    private val requests = requests.toMutableList()
     private val width = format.getInteger(KEY_WIDTH)
     private val height = format.getInteger(KEY_HEIGHT)
     private val core = EglCore(EGL14.EGL_NO_CONTEXT, EglCore.FLAG_RECORDABLE)
@@ -35,30 +47,75 @@ internal class VideoSnapshots(
         it.makeCurrent()
     }
 
-    override fun advance(state: State.Ok<Long>): State<Long> {
-        if (requests.isEmpty()) return state
+    init {
+        require(config == Bitmap.Config.ARGB_8888 || config == Bitmap.Config.RGB_565) {
+            "Unsupported bitmap config: $config"
+        }
+    }
+
+    // Some drivers can read RGB_565 directly, saving the conversion and half the bandwidth.
+    private val canRead565 by lazy {
+        val values = IntArray(2)
+        GLES20.glGetIntegerv(GLES20.GL_IMPLEMENTATION_COLOR_READ_FORMAT, values, 0)
+        GLES20.glGetIntegerv(GLES20.GL_IMPLEMENTATION_COLOR_READ_TYPE, values, 1)
+        (values[0] == GLES20.GL_RGB && values[1] == GLES20.GL_UNSIGNED_SHORT_5_6_5).also {
+            log.i("canRead565=$it")
+        }
+    }
 
-        val expectedUs = requests.first()
-        val deltaUs = abs(expectedUs - state.value)
-        if (deltaUs < accuracyUs || (state is State.Eos && expectedUs > state.value)) {
-            log.i("Request MATCHED! expectedUs=$expectedUs actualUs=${state.value} deltaUs=$deltaUs")
-            requests.removeFirst()
-            val buffer = ByteBuffer.allocateDirect(width * height * 4)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
-            GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer)
+    private fun readPixels(): ByteBuffer {
+        if (config == Bitmap.Config.RGB_565 && canRead565) {
+            val buffer = buffers.rgb565(width * height * 2)
+            GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 2)
+            GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, buffer)
             Egloo.checkGlError("glReadPixels")
-            buffer.rewind()
-            val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
-            bitmap.copyPixelsFromBuffer(buffer)
-            onSnapshot(state.value, bitmap)
-        } else {
-            log.v("Request has high delta. expectedUs=$expectedUs actualUs=${state.value} deltaUs=$deltaUs")
+            return buffer
+        }
+        val rgba = buffers.rgba(width * height * 4)
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, rgba)
+        Egloo.checkGlError("glReadPixels")
+        if (config == Bitmap.Config.ARGB_8888) return rgba
+        // Convert to RGB_565 in software. In little endian, each RGBA pixel reads as ABGR.
+        val buffer = buffers.rgb565(width * height * 2)
+        val input = rgba.asIntBuffer()
+        val output = buffer.asShortBuffer()
+        for (i in 0 until width * height) {
+            val pixel = input.get(i)
+            val r = pixel and 0xFF
+            val g = (pixel shr 8) and 0xFF
+            val b = (pixel shr 16) and 0xFF
+            output.put(i, ((r shr 3 shl 11) or (g shr 2 shl 5) or (b shr 3)).toShort())
+        }
+        return buffer
+    }
+
+    override fun advance(state: State.Ok<Long>): State<Long> {
+        var expectedUs = nextRequestUs() ?: return state
+        var buffer: ByteBuffer? = null
+        while (true) {
+            val deltaUs = abs(expectedUs - state.value)
+            if (deltaUs < accuracyUs || (state is State.Eos && expectedUs > state.value)) {
+                log.i("Request MATCHED! expectedUs=$expectedUs actualUs=${state.value} deltaUs=$deltaUs")
+                onSnapshot(state.value) {
+                    val pixels = buffer ?: readPixels().also { buffer = it }
+                    pixels.rewind()
+                    val bitmap = pool?.get(width, height, config)
+                            ?: Bitmap.createBitmap(width, height, config)
+                    bitmap.copyPixelsFromBuffer(pixels)
+                    bitmap
+                }
+                expectedUs = nextRequestUs() ?: break
+            } else {
+                log.v("Request has high delta. expectedUs=$expectedUs actualUs=${state.value} deltaUs=$deltaUs")
+                break
+            }
         }
         return state
     }
 
     override fun release() {
+        onRelease()
         surface.release()
         core.release()
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package com.otaliastudios.transcoder.peaks
+
+/**
+ * Audio peaks, in buckets of [bucketDurationUs]. For each bucket, [min], [max] and [rms]
+ * hold the 16-bit PCM values across all channels. Buckets with no audio are all zeros.
+ */
+class Peaks internal constructor(
+        val bucketDurationUs: Long,
+        val min: ShortArray,
+        val max: ShortArray,
+        val rms: ShortArray
+) {
+    val size get() = min.size
+}
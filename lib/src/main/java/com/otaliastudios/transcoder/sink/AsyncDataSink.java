@@ -0,0 +1,263 @@
+package com.otaliastudios.transcoder.sink;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import androidx.annotation.NonNull;
+
+import com.otaliastudios.transcoder.common.TrackStatus;
+import com.otaliastudios.transcoder.common.TrackType;
+import com.otaliastudios.transcoder.internal.utils.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link DataSink} wrapper that moves all calls to the wrapped sink to a dedicated
+ * writer thread. This is useful with slow outputs (e.g. {@link DefaultDataSink} on SD cards),
+ * because I/O stalls will not block the decoding and encoding steps.
+ *
+ * In {@link #writeTrack(TrackType, ByteBuffer, MediaCodec.BufferInfo)}, data is copied into
+ * one of a bounded number of buffers, so that the codec buffer can be released right away.
+ * When all buffers are in use, the caller blocks until the writer thread frees one: the time spent
+ * waiting is returned by {@link #getBlockedTimeUs()}.
+ *
+ * Calls are executed in order. Failures of the wrapped sink are thrown by the next call.
+ */
+public class AsyncDataSink implements DataSink {
+
+    private final static Logger LOG = new Logger("AsyncDataSink");
+
+    @SuppressWarnings("WeakerAccess")
+    public final static int DEFAULT_DEPTH = 16;
+
+    private final static long WAIT_MS = 100;
+
+    private static class Slot {
+        private ByteBuffer buffer;
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    }
+
+    private final DataSink mSink;
+    private final BlockingQueue<Slot> mFreeSlots;
+    private final BlockingQueue<Runnable> mTasks = new LinkedBlockingQueue<>();
+    private final Thread mThread;
+    private final AtomicLong mBlockedTimeNs = new AtomicLong(0);
+    private final AtomicLong mWriteTimeNs = new AtomicLong(0);
+    private volatile Throwable mError;
+    private volatile boolean mReleased;
+
+    public AsyncDataSink(@NonNull DataSink sink) {
+        this(sink, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Creates a new sink.
+     *
+     * @param sink the sink to be wrapped
+     * @param depth the maximum number of samples waiting to be written
+     */
+    @SuppressWarnings("WeakerAccess")
+    public AsyncDataSink(@NonNull DataSink sink, int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("Depth must be greater than 0.");
+        }
+        mSink = sink;
+        mFreeSlots = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i++) {
+            mFreeSlots.add(new Slot());
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "AsyncDataSink");
+        mThread.start();
+    }
+
+    /**
+     * Returns the total time, in microseconds, that the transcoding thread has spent
+     * waiting for the writer thread because all buffers were in use.
+     *
+     * @return time blocked on I/O
+     */
+    @SuppressWarnings("unused")
+    public long getBlockedTimeUs() {
+        return mBlockedTimeNs.get() / 1000;
+    }
+
+    /**
+     * Returns the total time, in microseconds, spent by the writer thread
+     * inside the wrapped sink {@link DataSink#writeTrack(TrackType, ByteBuffer, MediaCodec.BufferInfo)}.
+     *
+     * @return time spent writing
+     */
+    @SuppressWarnings("unused")
+    public long getWriteTimeUs() {
+        return mWriteTimeNs.get() / 1000;
+    }
+
+    private void loop() {
+        while (true) {
+            Runnable task;
+            try {
+                task = mTasks.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (mError != null) continue; // Skip everything after a failure.
+            try {
+                task.run();
+            } catch (Throwable e) {
+                LOG.e("Wrapped sink failed.", e);
+                mError = e;
+            }
+        }
+    }
+
+    private void checkError() {
+        Throwable error = mError;
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error != null) throw new RuntimeException(error);
+    }
+
+    private void post(@NonNull Runnable task) {
+        checkError();
+        mTasks.add(task);
+    }
+
+    @Override
+    public void setOrientation(final int orientation) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mSink.setOrientation(orientation);
+            }
+        });
+    }
+
+    @Override
+    public void setLocation(final double latitude, final double longitude) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mSink.setLocation(latitude, longitude);
+            }
+        });
+    }
+
+    @Override
+    public void setTrackStatus(@NonNull final TrackType type, @NonNull final TrackStatus status) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mSink.setTrackStatus(type, status);
+            }
+        });
+    }
+
+    @Override
+    public void setTrackFormat(@NonNull final TrackType type, @NonNull final MediaFormat format) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mSink.setTrackFormat(type, format);
+            }
+        });
+    }
+
+    @Override
+    public void writeTrack(@NonNull final TrackType type,
+                           @NonNull ByteBuffer byteBuffer,
+                           @NonNull MediaCodec.BufferInfo bufferInfo) {
+        checkError();
+        Slot slot = mFreeSlots.poll();
+        if (slot == null) {
+            long start = System.nanoTime();
+            try {
+                while (slot == null) {
+                    // After a failure, slots are not released anymore, so check errors periodically.
+                    slot = mFreeSlots.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+                    checkError();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            mBlockedTimeNs.addAndGet(System.nanoTime() - start);
+        }
+        // Copy what bufferInfo describes: at EOS, size is 0 even if the buffer still holds data.
+        int size = bufferInfo.size;
+        if (slot.buffer == null || slot.buffer.capacity() < size) {
+            slot.buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer data = byteBuffer.duplicate();
+        data.limit(bufferInfo.offset + size);
+        data.position(bufferInfo.offset);
+        slot.buffer.clear();
+        slot.buffer.put(data);
+        slot.buffer.flip();
+        slot.info.set(0, size, bufferInfo.presentationTimeUs, bufferInfo.flags);
+        final Slot task = slot;
+        post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.nanoTime();
+                    mSink.writeTrack(type, task.buffer, task.info);
+                    mWriteTimeNs.addAndGet(System.nanoTime() - start);
+                } finally {
+                    mFreeSlots.add(task);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for all pending operations to be executed by the writer thread.
+     */
+    private void flush() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        post(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        try {
+            while (!latch.await(WAIT_MS, TimeUnit.MILLISECONDS)) {
+                checkError(); // task is skipped after a failure, so latch is never released
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        checkError();
+    }
+
+    @Override
+    public void stop() {
+        flush();
+        mSink.stop(); // writer thread is idle, so it's safe to call this here.
+    }
+
+    @Override
+    public void release() {
+        if (mReleased) return;
+        mReleased = true;
+        mThread.interrupt();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            LOG.w("Interrupted while waiting for the writer thread.", e);
+        }
+        mTasks.clear();
+        LOG.i("release(): blockedTimeUs=" + getBlockedTimeUs() + " writeTimeUs=" + getWriteTimeUs());
+        mSink.release();
+    }
+}
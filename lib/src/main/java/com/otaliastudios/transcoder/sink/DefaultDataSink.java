@@ -6,6 +6,7 @@ import android.media.MediaMuxer;
 import android.os.Build;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.otaliastudios.transcoder.common.TrackStatus;
@@ -15,12 +16,10 @@ import com.otaliastudios.transcoder.internal.utils.Logger;
 import com.otaliastudios.transcoder.time.MonotonicTimeInterpolator;
 import com.otaliastudios.transcoder.time.TimeInterpolator;
 
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
 
 import static com.otaliastudios.transcoder.internal.utils.TrackMapKt.mutableTrackMapOf;
 
@@ -33,34 +32,18 @@ import static com.otaliastudios.transcoder.internal.utils.TrackMapKt.mutableTrac
  */
 public class DefaultDataSink implements DataSink {
 
+    private final static Logger LOG = new Logger("DefaultDataSink");
+
     /**
-     * A queued sample is a sample that we haven't written yet because
-     * the muxer is still being started (waiting for output formats).
+     * Default value for the maximum amount of memory used to hold samples
+     * before the muxer is started.
      */
-    private static class QueuedSample {
-        private final TrackType mType;
-        private ByteBuffer mByteBuffer;
-
-        private final int mSize;
-        private final long mTimeUs;
-        private final int mFlags;
-
-        private QueuedSample(@NonNull TrackType type,
-                             @NonNull ByteBuffer byteBuffer,
-                             @NonNull MediaCodec.BufferInfo bufferInfo) {
-            mType = type;
-            mByteBuffer = byteBuffer;
-            mSize = bufferInfo.size;
-            mTimeUs = bufferInfo.presentationTimeUs;
-            mFlags = bufferInfo.flags;
-        }
-    }
-
-    private final static Logger LOG = new Logger("DefaultDataSink");
+    @SuppressWarnings("WeakerAccess")
+    public final static long DEFAULT_QUEUE_MEMORY_LIMIT = 4 * 1024 * 1024;
 
     private boolean mMuxerStarted = false;
     private final MediaMuxer mMuxer;
-    private final List<QueuedSample> mQueue = new ArrayList<>();
+    private final DefaultDataSinkQueue mQueue;
     private final MutableTrackMap<TrackStatus> mStatus = mutableTrackMapOf(null);
     private final MutableTrackMap<MediaFormat> mLastFormat = mutableTrackMapOf(null);
     private final MutableTrackMap<Integer> mMuxerIndex = mutableTrackMapOf(null);
@@ -73,6 +56,23 @@ public class DefaultDataSink implements DataSink {
 
     @SuppressWarnings("WeakerAccess")
     public DefaultDataSink(@NonNull String outputFilePath, int format) {
+        this(outputFilePath, format, DEFAULT_QUEUE_MEMORY_LIMIT, null);
+    }
+
+    /**
+     * Creates a sink that writes to the given path. Samples that are received before
+     * all output formats are known are kept in memory up to queueMemoryLimit bytes,
+     * and spilled to a temporary file in queueSpillDirectory after that.
+     *
+     * @param outputFilePath output path
+     * @param format one of {@link MediaMuxer.OutputFormat}
+     * @param queueMemoryLimit memory limit for pending samples, in bytes
+     * @param queueSpillDirectory directory for the spill file, or null for the default temp directory
+     */
+    @SuppressWarnings("WeakerAccess")
+    public DefaultDataSink(@NonNull String outputFilePath, int format,
+                           long queueMemoryLimit, @Nullable File queueSpillDirectory) {
+        mQueue = createQueue(queueMemoryLimit, queueSpillDirectory);
         try {
             mMuxer = new MediaMuxer(outputFilePath, format);
         } catch (IOException e) {
@@ -88,6 +88,24 @@ public class DefaultDataSink implements DataSink {
     @RequiresApi(api = Build.VERSION_CODES.O)
     @SuppressWarnings("WeakerAccess")
     public DefaultDataSink(@NonNull FileDescriptor fileDescriptor, int format) {
+        this(fileDescriptor, format, DEFAULT_QUEUE_MEMORY_LIMIT, null);
+    }
+
+    /**
+     * Creates a sink that writes to the given descriptor. Samples that are received before
+     * all output formats are known are kept in memory up to queueMemoryLimit bytes,
+     * and spilled to a temporary file in queueSpillDirectory after that.
+     *
+     * @param fileDescriptor output descriptor
+     * @param format one of {@link MediaMuxer.OutputFormat}
+     * @param queueMemoryLimit memory limit for pending samples, in bytes
+     * @param queueSpillDirectory directory for the spill file, or null for the default temp directory
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @SuppressWarnings("WeakerAccess")
+    public DefaultDataSink(@NonNull FileDescriptor fileDescriptor, int format,
+                           long queueMemoryLimit, @Nullable File queueSpillDirectory) {
+        mQueue = createQueue(queueMemoryLimit, queueSpillDirectory);
         try {
             mMuxer = new MediaMuxer(fileDescriptor, format);
         } catch (IOException e) {
@@ -95,6 +113,14 @@ public class DefaultDataSink implements DataSink {
         }
     }
 
+    @NonNull
+    private static DefaultDataSinkQueue createQueue(long memoryLimit, @Nullable File spillDirectory) {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Queue memory limit cannot be negative.");
+        }
+        return new DefaultDataSinkQueue(Math.min(memoryLimit, Integer.MAX_VALUE), spillDirectory);
+    }
+
     @Override
     public void setOrientation(int rotation) {
         mMuxer.setOrientationHint(rotation);
@@ -170,8 +196,8 @@ public class DefaultDataSink implements DataSink {
     }
 
     /**
-     * Enqueues the given byffer by writing it into our own buffer and
-     * just storing its position and size.
+     * Enqueues the given buffer by copying it into our own queue, which
+     * reuses memory across samples and spills to disk when it grows too much.
      *
      * @param type track type
      * @param buffer input buffer
@@ -184,10 +210,7 @@ public class DefaultDataSink implements DataSink {
                 + "\trealOffset=" + buffer.position()
                 + "\tsize=" + bufferInfo.size
                 + "\trealSize=" + buffer.remaining());
-
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bufferInfo.size).order(ByteOrder.nativeOrder());
-        byteBuffer.put(buffer);
-        mQueue.add(new QueuedSample(type, byteBuffer, bufferInfo));
+        mQueue.enqueue(type, buffer, bufferInfo);
     }
 
     /**
@@ -198,14 +221,14 @@ public class DefaultDataSink implements DataSink {
         if (mQueue.isEmpty()) return;
         LOG.i("Output format determined, writing pending data into the muxer. "
                 + "samples:" + mQueue.size());
-        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
-        for (QueuedSample sample : mQueue) {
-            bufferInfo.set(0, sample.mSize, sample.mTimeUs, sample.mFlags);
-            sample.mByteBuffer.position(0);
-            writeTrack(sample.mType, sample.mByteBuffer, bufferInfo);
-            sample.mByteBuffer = null;
-        }
-        mQueue.clear();
+        mQueue.drain(new DefaultDataSinkQueue.Consumer() {
+            @Override
+            public void consume(@NonNull TrackType type,
+                                @NonNull ByteBuffer buffer,
+                                @NonNull MediaCodec.BufferInfo bufferInfo) {
+                writeTrack(type, buffer, bufferInfo);
+            }
+        });
     }
 
     @Override
@@ -215,6 +238,7 @@ public class DefaultDataSink implements DataSink {
 
     @Override
     public void release() {
+        mQueue.release();
         try {
             mMuxer.release();
         } catch (Exception e) {
@@ -16,6 +16,7 @@
 package com.otaliastudios.transcoder.sink;
 
 import android.media.MediaFormat;
+import android.os.Build;
 
 import com.otaliastudios.transcoder.common.TrackType;
 import com.otaliastudios.transcoder.internal.utils.Logger;
@@ -42,8 +43,14 @@ class DefaultDataSinkChecks {
         String mime = format.getString(MediaFormat.KEY_MIME);
         // Refer: http://developer.android.com/guide/appendix/media-formats.html#core
         // Refer: http://en.wikipedia.org/wiki/MPEG-4_Part_14#Data_streams
+        // MediaMuxer writes HEVC to MP4 from API 24, and AV1 from API 34.
+        if ((MediaFormatConstants.MIMETYPE_VIDEO_HEVC.equals(mime) && Build.VERSION.SDK_INT >= 24)
+                || (MediaFormatConstants.MIMETYPE_VIDEO_AV1.equals(mime) && Build.VERSION.SDK_INT >= 34)) {
+            LOG.i("Output video codec: " + mime);
+            return;
+        }
         if (!MediaFormatConstants.MIMETYPE_VIDEO_AVC.equals(mime)) {
-            throw new InvalidOutputFormatException("Video codecs other than AVC is not supported, actual mime type: " + mime);
+            throw new InvalidOutputFormatException("Video codecs other than AVC, HEVC (API 24+) and AV1 (API 34+) are not supported, actual mime type: " + mime);
         }
 
         // The original lib by ypresto was throwing when detected a non-baseline profile.
@@ -0,0 +1,204 @@
+package com.otaliastudios.transcoder.sink;
+
+import android.media.MediaCodec;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.otaliastudios.transcoder.common.TrackType;
+import com.otaliastudios.transcoder.internal.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the samples that {@link DefaultDataSink} receives before the muxer is started.
+ *
+ * Instead of allocating one buffer per sample, data is appended to a single direct arena
+ * which grows up to the given memory limit. Once the limit is reached, further samples are
+ * spilled to a temporary file and read back, one by one, through a single reusable buffer
+ * when the queue is drained.
+ */
+class DefaultDataSinkQueue {
+
+    interface Consumer {
+        void consume(@NonNull TrackType type,
+                     @NonNull ByteBuffer buffer,
+                     @NonNull MediaCodec.BufferInfo bufferInfo);
+    }
+
+    private static class Sample {
+        private final TrackType mType;
+        private final boolean mSpilled;
+        private final long mOffset;
+        private final int mSize;
+        private final long mTimeUs;
+        private final int mFlags;
+
+        private Sample(@NonNull TrackType type, boolean spilled, long offset,
+                       int size, long timeUs, int flags) {
+            mType = type;
+            mSpilled = spilled;
+            mOffset = offset;
+            mSize = size;
+            mTimeUs = timeUs;
+            mFlags = flags;
+        }
+    }
+
+    private final static Logger LOG = new Logger("DefaultDataSinkQueue");
+    private final static int MIN_ARENA_SIZE = 64 * 1024;
+
+    private final long mMaxMemoryBytes;
+    private final File mSpillDirectory;
+    private final List<Sample> mSamples = new ArrayList<>();
+
+    private ByteBuffer mArena;
+    private File mSpillFile;
+    private RandomAccessFile mSpillStream;
+    private FileChannel mSpillChannel;
+    private long mSpillSize;
+    private int mMaxSpilledSampleSize;
+
+    DefaultDataSinkQueue(long maxMemoryBytes, @Nullable File spillDirectory) {
+        mMaxMemoryBytes = maxMemoryBytes;
+        mSpillDirectory = spillDirectory;
+    }
+
+    boolean isEmpty() {
+        return mSamples.isEmpty();
+    }
+
+    int size() {
+        return mSamples.size();
+    }
+
+    void enqueue(@NonNull TrackType type,
+                 @NonNull ByteBuffer buffer,
+                 @NonNull MediaCodec.BufferInfo bufferInfo) {
+        // Only bufferInfo is meaningful: an EOS sample has size 0, whatever the buffer holds.
+        int size = bufferInfo.size;
+        ByteBuffer data = buffer.duplicate();
+        data.limit(bufferInfo.offset + size);
+        data.position(bufferInfo.offset);
+        Sample sample;
+        if (ensureArena(size)) {
+            int offset = mArena.position();
+            mArena.put(data);
+            sample = new Sample(type, false, offset, size,
+                    bufferInfo.presentationTimeUs, bufferInfo.flags);
+        } else {
+            long offset = spill(data);
+            mMaxSpilledSampleSize = Math.max(mMaxSpilledSampleSize, size);
+            sample = new Sample(type, true, offset, size,
+                    bufferInfo.presentationTimeUs, bufferInfo.flags);
+        }
+        mSamples.add(sample);
+    }
+
+    /**
+     * Makes sure that the arena has room for the given size, growing it if needed.
+     * Returns false if this is not possible because of the memory limit.
+     */
+    private boolean ensureArena(int size) {
+        int used = mArena == null ? 0 : mArena.position();
+        int capacity = mArena == null ? 0 : mArena.capacity();
+        if (mArena != null && used + size <= capacity) return true;
+        if (used + size > mMaxMemoryBytes) return false;
+        long newCapacity = Math.max(MIN_ARENA_SIZE, (long) capacity * 2);
+        while (newCapacity < used + size) newCapacity *= 2;
+        newCapacity = Math.min(newCapacity, mMaxMemoryBytes);
+        LOG.i("ensureArena(): growing arena from " + capacity + " to " + newCapacity + " bytes.");
+        ByteBuffer arena = ByteBuffer.allocateDirect((int) newCapacity).order(ByteOrder.nativeOrder());
+        if (mArena != null) {
+            mArena.flip();
+            arena.put(mArena);
+        }
+        mArena = arena;
+        return true;
+    }
+
+    private long spill(@NonNull ByteBuffer buffer) {
+        try {
+            if (mSpillChannel == null) {
+                mSpillFile = File.createTempFile("transcoder-sink", ".tmp", mSpillDirectory);
+                mSpillStream = new RandomAccessFile(mSpillFile, "rw");
+                mSpillChannel = mSpillStream.getChannel();
+                LOG.w("spill(): memory limit of " + mMaxMemoryBytes + " bytes reached. "
+                        + "Spilling pending samples to " + mSpillFile);
+            }
+            long offset = mSpillSize;
+            while (buffer.hasRemaining()) {
+                mSpillSize += mSpillChannel.write(buffer, mSpillSize);
+            }
+            return offset;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not spill pending sample to disk.", e);
+        }
+    }
+
+    /**
+     * Passes all samples to the given consumer, in the order they were enqueued,
+     * then releases all resources.
+     */
+    void drain(@NonNull Consumer consumer) {
+        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+        ByteBuffer memory = mArena == null ? null : mArena.duplicate().order(ByteOrder.nativeOrder());
+        ByteBuffer disk = mMaxSpilledSampleSize == 0 ? null
+                : ByteBuffer.allocateDirect(mMaxSpilledSampleSize).order(ByteOrder.nativeOrder());
+        try {
+            for (Sample sample : mSamples) {
+                ByteBuffer buffer;
+                if (sample.mSpilled) {
+                    disk.clear();
+                    disk.limit(sample.mSize);
+                    long position = sample.mOffset;
+                    while (disk.hasRemaining()) {
+                        int read = mSpillChannel.read(disk, position);
+                        if (read < 0) throw new IOException("Unexpected end of spill file.");
+                        position += read;
+                    }
+                    disk.flip();
+                    buffer = disk;
+                } else {
+                    memory.clear();
+                    memory.position((int) sample.mOffset);
+                    memory.limit((int) sample.mOffset + sample.mSize);
+                    buffer = memory;
+                }
+                bufferInfo.set(buffer.position(), sample.mSize, sample.mTimeUs, sample.mFlags);
+                consumer.consume(sample.mType, buffer, bufferInfo);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read pending sample from disk.", e);
+        } finally {
+            release();
+        }
+    }
+
+    void release() {
+        mSamples.clear();
+        mArena = null;
+        mMaxSpilledSampleSize = 0;
+        mSpillSize = 0;
+        if (mSpillChannel != null) {
+            try {
+                mSpillStream.close();
+            } catch (IOException e) {
+                LOG.w("Could not close spill file.", e);
+            }
+            if (!mSpillFile.delete()) {
+                LOG.w("Could not delete spill file " + mSpillFile);
+            }
+            mSpillChannel = null;
+            mSpillStream = null;
+            mSpillFile = null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.otaliastudios.transcoder.source;
 
 
+import android.media.MediaExtractor;
 import android.media.MediaFormat;
 
 import androidx.annotation.NonNull;
@@ -8,6 +9,8 @@ import androidx.annotation.Nullable;
 
 import com.otaliastudios.transcoder.common.TrackType;
 
+import java.io.File;
+
 /**
  * A {@link DataSource} wrapper that simply delegates all methods to the
  * wrapped source. It is the implementor responsibility to care about the case where
@@ -37,6 +40,74 @@ public class DataSourceWrapper implements DataSource {
         mSource = source;
     }
 
+    /**
+     * Returns the fingerprint of the wrapped source, if it is a {@link DefaultDataSource}
+     * or another wrapper, and null otherwise.
+     *
+     * @return a fingerprint or null
+     * @see DefaultDataSource#getFingerprint()
+     */
+    @Nullable
+    public String getFingerprint() {
+        if (mSource instanceof DefaultDataSource) {
+            return ((DefaultDataSource) mSource).getFingerprint();
+        } else if (mSource instanceof DataSourceWrapper) {
+            return ((DataSourceWrapper) mSource).getFingerprint();
+        }
+        return null;
+    }
+
+    /**
+     * Returns a new extractor from the wrapped source, if it is a {@link DefaultDataSource}
+     * or another wrapper, and null otherwise.
+     *
+     * @return a new extractor or null
+     * @see DefaultDataSource#createExtractor()
+     */
+    @Nullable
+    public MediaExtractor createExtractor() {
+        if (mSource instanceof DefaultDataSource) {
+            return ((DefaultDataSource) mSource).createExtractor();
+        } else if (mSource instanceof DataSourceWrapper) {
+            return ((DataSourceWrapper) mSource).createExtractor();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the sync frame position of the wrapped source, if it is a {@link DefaultDataSource}
+     * or another wrapper, and {@link Long#MIN_VALUE} otherwise. Wrappers that shift the
+     * timeline should override this.
+     *
+     * @param desiredPositionUs requested timestamp
+     * @return sync frame timestamp, or {@link Long#MIN_VALUE}
+     * @see DefaultDataSource#getSyncFrameUs(long)
+     */
+    public long getSyncFrameUs(long desiredPositionUs) {
+        if (mSource instanceof DefaultDataSource) {
+            return ((DefaultDataSource) mSource).getSyncFrameUs(desiredPositionUs);
+        } else if (mSource instanceof DataSourceWrapper) {
+            return ((DataSourceWrapper) mSource).getSyncFrameUs(desiredPositionUs);
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Enables the keyframe index of the wrapped source, if it is a {@link DefaultDataSource}
+     * or another wrapper, and does nothing otherwise.
+     *
+     * @param enabled whether to use the index
+     * @param cacheDirectory an optional directory for index files
+     * @see DefaultDataSource#setKeyframeIndexEnabled(boolean, File)
+     */
+    public void setKeyframeIndexEnabled(boolean enabled, @Nullable File cacheDirectory) {
+        if (mSource instanceof DefaultDataSource) {
+            ((DefaultDataSource) mSource).setKeyframeIndexEnabled(enabled, cacheDirectory);
+        } else if (mSource instanceof DataSourceWrapper) {
+            ((DataSourceWrapper) mSource).setKeyframeIndexEnabled(enabled, cacheDirectory);
+        }
+    }
+
     @Override
     public int getOrientation() {
         return mSource.getOrientation();
@@ -9,10 +9,12 @@ import androidx.annotation.Nullable;
 
 import com.otaliastudios.transcoder.common.TrackType;
 import com.otaliastudios.transcoder.common.TrackTypeKt;
+import com.otaliastudios.transcoder.internal.media.KeyframeIndex;
 import com.otaliastudios.transcoder.internal.utils.ISO6709LocationParser;
 import com.otaliastudios.transcoder.internal.utils.Logger;
 import com.otaliastudios.transcoder.internal.utils.MutableTrackMap;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -38,11 +40,64 @@ public abstract class DefaultDataSource implements DataSource {
     private MediaMetadataRetriever mMetadata = null;
     private MediaExtractor mExtractor = null;
     private long mOriginUs = Long.MIN_VALUE;
+    private long mDurationUs = Long.MIN_VALUE;
     private boolean mInitialized = false;
 
     private long mDontRenderRangeStart = -1L;
     private long mDontRenderRangeEnd = -1L;
 
+    private boolean mKeyframeIndexEnabled = false;
+    private File mKeyframeIndexDirectory = null;
+    private KeyframeIndex mKeyframeIndex = null;
+    private long mPendingSeekUs = Long.MIN_VALUE;
+    private String mFingerprint = null;
+    private boolean mFingerprintComputed = false;
+
+    /**
+     * Enables an index of the video sync samples, built once by scanning the track metadata
+     * without reading sample data. With the index, {@link #seekTo(long)} resolves to the exact
+     * preceding sync sample without touching the extractor: the actual seek is deferred until
+     * the next read, and skipped if we are already reading that group of pictures before the
+     * requested position. This is useful for components that seek often, like thumbnails.
+     *
+     * If a directory is given and the source can be fingerprinted, the index is also saved
+     * there, so that it is only built once per file.
+     *
+     * @param enabled whether to use the index
+     * @param cacheDirectory an optional directory for index files
+     */
+    public void setKeyframeIndexEnabled(boolean enabled, @Nullable File cacheDirectory) {
+        mKeyframeIndexEnabled = enabled;
+        mKeyframeIndexDirectory = cacheDirectory;
+    }
+
+    /**
+     * Returns a string identifying the contents of this source, used to name the
+     * keyframe index file and to cache format probes, or null if this is not possible.
+     * The value is computed once, by {@link #computeFingerprint()}.
+     *
+     * @return a fingerprint or null
+     */
+    @Nullable
+    public final synchronized String getFingerprint() {
+        if (!mFingerprintComputed) {
+            mFingerprint = computeFingerprint();
+            mFingerprintComputed = true;
+        }
+        return mFingerprint;
+    }
+
+    /**
+     * Computes the value returned by {@link #getFingerprint()}.
+     * Returns null by default, meaning that this source can't be fingerprinted.
+     *
+     * @return a fingerprint or null
+     */
+    @Nullable
+    protected String computeFingerprint() {
+        return null;
+    }
+
     @Override
     public void initialize() {
         LOG.i("initialize(): initializing...");
@@ -110,11 +165,13 @@ public abstract class DefaultDataSource implements DataSource {
 
         mSelectedTracks.clear();
         mOriginUs = Long.MIN_VALUE;
+        mDurationUs = Long.MIN_VALUE;
         mLastTimestampUs.reset(0L, 0L);
         mFormat.reset(null, null);
         mIndex.reset(null, null);
         mDontRenderRangeStart = -1;
         mDontRenderRangeEnd = -1;
+        mPendingSeekUs = Long.MIN_VALUE;
         mInitialized = false;
     }
 
@@ -126,6 +183,7 @@ public abstract class DefaultDataSource implements DataSource {
     @Override
     public void selectTrack(@NonNull TrackType type) {
         LOG.i("selectTrack(" + type + ")");
+        applyPendingSeek();
         if (!mSelectedTracks.contains(type)) {
             mSelectedTracks.add(type);
             mExtractor.selectTrack(mIndex.get(type));
@@ -135,6 +193,7 @@ public abstract class DefaultDataSource implements DataSource {
     @Override
     public void releaseTrack(@NonNull TrackType type) {
         LOG.i("releaseTrack(" + type + ")");
+        applyPendingSeek();
         if (mSelectedTracks.contains(type)) {
             mSelectedTracks.remove(type);
             mExtractor.unselectTrack(mIndex.get(type));
@@ -145,9 +204,81 @@ public abstract class DefaultDataSource implements DataSource {
 
     protected abstract void initializeRetriever(@NonNull MediaMetadataRetriever retriever);
 
+    /**
+     * Creates a new extractor for the same contents, independent from the one used by this
+     * source, so that samples can be inspected without affecting the current state.
+     * No track is selected. The caller is responsible for releasing it.
+     *
+     * @return a new extractor
+     */
+    @NonNull
+    public MediaExtractor createExtractor() {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            initializeExtractor(extractor);
+        } catch (IOException e) {
+            extractor.release();
+            throw new RuntimeException(e);
+        }
+        return extractor;
+    }
+
+    @Nullable
+    private KeyframeIndex getKeyframeIndex() {
+        if (!mKeyframeIndexEnabled || !mIndex.getHasVideo()) return null;
+        if (mKeyframeIndex == null) {
+            File file = null;
+            if (mKeyframeIndexDirectory != null) {
+                String fingerprint = getFingerprint();
+                if (fingerprint != null) {
+                    file = new File(mKeyframeIndexDirectory, "keyframes-" + fingerprint);
+                }
+            }
+            if (file != null) mKeyframeIndex = KeyframeIndex.read(file);
+            if (mKeyframeIndex == null) {
+                // Use a separate extractor, so that we don't lose the current state.
+                mKeyframeIndex = KeyframeIndex.scan(createExtractor(), mIndex.getVideo());
+                if (mKeyframeIndex != null && file != null) mKeyframeIndex.write(file);
+            }
+            if (mKeyframeIndex == null) {
+                LOG.w("getKeyframeIndex(): no sync samples found. Disabling the index.");
+                mKeyframeIndexEnabled = false;
+            }
+        }
+        return mKeyframeIndex;
+    }
+
+    /**
+     * Returns the position of the video sync frame that {@link #seekTo(long)} would move to,
+     * without seeking or changing any state. This needs the keyframe index, see
+     * {@link #setKeyframeIndexEnabled(boolean, File)}: when it's not available, returns
+     * {@link Long#MIN_VALUE}.
+     *
+     * @param desiredPositionUs requested timestamp
+     * @return sync frame timestamp, or {@link Long#MIN_VALUE}
+     */
+    public long getSyncFrameUs(long desiredPositionUs) {
+        initializeLazyProperties();
+        KeyframeIndex index = getKeyframeIndex();
+        if (index == null) return Long.MIN_VALUE;
+        return index.syncBefore(mOriginUs + desiredPositionUs) - mOriginUs;
+    }
+
     @Override
     public long seekTo(long desiredPositionUs) {
         initializeLazyProperties();
+        KeyframeIndex index = mSelectedTracks.contains(TrackType.VIDEO) ? getKeyframeIndex() : null;
+        if (index != null) {
+            long targetUs = mOriginUs + desiredPositionUs;
+            long syncUs = index.syncBefore(targetUs);
+            mPendingSeekUs = syncUs;
+            mDontRenderRangeStart = Math.min(syncUs, targetUs);
+            mDontRenderRangeEnd = targetUs;
+            LOG.i("seekTo(): deferred seek to " + syncUs + ", dontRenderRange=" +
+                    mDontRenderRangeStart + ".." + mDontRenderRangeEnd);
+            return syncUs - mOriginUs;
+        }
+        mPendingSeekUs = Long.MIN_VALUE;
 
         boolean hasVideo = mSelectedTracks.contains(TrackType.VIDEO);
         boolean hasAudio = mSelectedTracks.contains(TrackType.AUDIO);
@@ -189,19 +320,48 @@ public abstract class DefaultDataSource implements DataSource {
         return mExtractor.getSampleTime() - mOriginUs;
     }
 
+    /**
+     * Performs the seek deferred by {@link #seekTo(long)}, unless the extractor is already
+     * in the right group of pictures, before the requested position.
+     */
+    private void applyPendingSeek() {
+        if (mPendingSeekUs == Long.MIN_VALUE) return;
+        long syncUs = mPendingSeekUs;
+        mPendingSeekUs = Long.MIN_VALUE;
+        long nextUs = mExtractor.getSampleTime();
+        if (nextUs >= syncUs && nextUs <= mDontRenderRangeEnd
+                && mKeyframeIndex.syncBefore(nextUs) == syncUs) {
+            LOG.i("applyPendingSeek(): skipping seek, already at " + nextUs + " in the same GOP.");
+            return;
+        }
+        if (mSelectedTracks.contains(TrackType.AUDIO)) {
+            // See seekTo(): make sure that audio starts at the video sync frame.
+            mExtractor.unselectTrack(mIndex.getAudio());
+            mExtractor.seekTo(syncUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            mExtractor.selectTrack(mIndex.getAudio());
+            mExtractor.seekTo(mExtractor.getSampleTime(), MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+        } else {
+            mExtractor.seekTo(syncUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        }
+        LOG.i("applyPendingSeek(): sought to " + syncUs + " (extractorUs=" + mExtractor.getSampleTime() + ")");
+    }
+
     @Override
     public boolean isDrained() {
+        applyPendingSeek();
         return mExtractor.getSampleTrackIndex() < 0;
     }
 
     @Override
     public boolean canReadTrack(@NonNull TrackType type) {
+        applyPendingSeek();
         return mExtractor.getSampleTrackIndex() == mIndex.get(type);
     }
 
     @Override
     public void readTrack(@NonNull Chunk chunk) {
         initializeLazyProperties();
+        applyPendingSeek();
 
         int index = mExtractor.getSampleTrackIndex();
 
@@ -286,11 +446,15 @@ public abstract class DefaultDataSource implements DataSource {
     @Override
     public long getDurationUs() {
         // LOG.v("getDurationUs()");
-        try {
-            return Long.parseLong(mMetadata.extractMetadata(METADATA_KEY_DURATION)) * 1000;
-        } catch (NumberFormatException e) {
-            return -1;
+        // This is queried often, and the retriever can be slow. Cache until deinitialize().
+        if (mDurationUs == Long.MIN_VALUE) {
+            try {
+                mDurationUs = Long.parseLong(mMetadata.extractMetadata(METADATA_KEY_DURATION)) * 1000;
+            } catch (NumberFormatException e) {
+                mDurationUs = -1;
+            }
         }
+        return mDurationUs;
     }
 
     @Nullable
@@ -4,10 +4,13 @@ import android.content.res.AssetFileDescriptor;
 import android.media.MediaExtractor;
 import android.media.MediaMetadataRetriever;
 
+import com.otaliastudios.transcoder.internal.utils.FingerprintsKt;
+
 import java.io.FileDescriptor;
 import java.io.IOException;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * A {@link DataSource} backed by a file descriptor.
@@ -40,4 +43,14 @@ public class FileDescriptorDataSource extends DefaultDataSource {
     protected void initializeRetriever(@NonNull MediaMetadataRetriever retriever) {
         retriever.setDataSource(descriptor, offset, length);
     }
+
+    @Nullable
+    @Override
+    protected String computeFingerprint() {
+        try {
+            return FingerprintsKt.fingerprintOf(descriptor, offset, length);
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -2,10 +2,12 @@ package com.otaliastudios.transcoder.source;
 
 import android.media.MediaExtractor;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * A {@link DataSource} backed by a file absolute path.
@@ -19,6 +21,8 @@ import androidx.annotation.NonNull;
 public class FilePathDataSource extends DataSourceWrapper {
     private FileInputStream mStream;
     private final String mPath;
+    private boolean mKeyframeIndexEnabled;
+    private File mKeyframeIndexDirectory;
 
     public FilePathDataSource(@NonNull String path) {
         mPath = path;
@@ -28,13 +32,27 @@ public class FilePathDataSource extends DataSourceWrapper {
     public void initialize() {
         try {
             mStream = new FileInputStream(mPath);
-            setSource(new FileDescriptorDataSource(mStream.getFD()));
+            FileDescriptorDataSource source = new FileDescriptorDataSource(mStream.getFD());
+            source.setKeyframeIndexEnabled(mKeyframeIndexEnabled, mKeyframeIndexDirectory);
+            setSource(source);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
         super.initialize();
     }
 
+    /**
+     * See {@link DefaultDataSource#setKeyframeIndexEnabled(boolean, File)}.
+     * Must be called before initialization.
+     *
+     * @param enabled whether to use the index
+     * @param cacheDirectory an optional directory for index files
+     */
+    public void setKeyframeIndexEnabled(boolean enabled, @Nullable File cacheDirectory) {
+        mKeyframeIndexEnabled = enabled;
+        mKeyframeIndexDirectory = cacheDirectory;
+    }
+
     @Override
     public void deinitialize() {
         try { mStream.close(); } catch (IOException ignore) { }
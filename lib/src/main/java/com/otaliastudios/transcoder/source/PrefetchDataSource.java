@@ -0,0 +1,401 @@
+package com.otaliastudios.transcoder.source;
+
+import android.media.MediaFormat;
+
+import androidx.annotation.NonNull;
+
+import com.otaliastudios.transcoder.common.TrackType;
+import com.otaliastudios.transcoder.internal.utils.Logger;
+import com.otaliastudios.transcoder.internal.utils.MutableTrackMap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+
+import static com.otaliastudios.transcoder.internal.utils.TrackMapKt.mutableTrackMapOf;
+
+/**
+ * A {@link DataSource} wrapper that reads samples ahead of time on a background thread,
+ * so that slow sources (content providers, FUSE or network backed files) don't stall
+ * the pipeline thread. Up to a fixed number of samples per track are kept in memory,
+ * and their buffers are reused.
+ *
+ * - {@link #canReadTrack(TrackType)} and {@link #readTrack(Chunk)} are served from memory.
+ *   When no sample is ready, canReadTrack waits until one is, unless the background thread
+ *   is blocked on the queue of the other track.
+ * - {@link #seekTo(long)} waits for the current read, seeks the wrapped source and
+ *   discards all queued samples.
+ *
+ * The time spent reading in background and the time spent waiting for it are available
+ * through {@link #getReadTimeUs()} and {@link #getStallTimeUs()}.
+ */
+public class PrefetchDataSource extends DataSourceWrapper {
+
+    private static final Logger LOG = new Logger("PrefetchDataSource");
+    private static final int DEFAULT_SAMPLES = 16;
+    private static final int DEFAULT_VIDEO_BUFFER_SIZE = 1024 * 1024;
+    private static final int DEFAULT_AUDIO_BUFFER_SIZE = 64 * 1024;
+
+    private static class Sample {
+        private ByteBuffer buffer;
+        private boolean keyframe;
+        private long timeUs;
+        private boolean render;
+        private long positionUs; // wrapped source position after reading this sample
+    }
+
+    private final int mSamples;
+
+    // Guards the wrapped source. Held by the background thread while reading.
+    private final Object mSourceLock = new Object();
+
+    // Guards everything below.
+    private final Object mLock = new Object();
+    private final MutableTrackMap<ArrayDeque<Sample>> mQueues =
+            mutableTrackMapOf(new ArrayDeque<>(), new ArrayDeque<>());
+    private final MutableTrackMap<ArrayDeque<Sample>> mFree =
+            mutableTrackMapOf(new ArrayDeque<>(), new ArrayDeque<>());
+    private final HashSet<TrackType> mSelected = new HashSet<>();
+    private Thread mThread = null;
+    private boolean mRunning = false;
+    private int mGeneration = 0;
+    private boolean mDrained = false;
+    private boolean mBlocked = false;
+    private RuntimeException mError = null;
+    private TrackType mNextType = null;
+    private long mPositionUs = 0;
+    private long mReadNanos = 0;
+    private long mStallNanos = 0;
+
+    @SuppressWarnings("WeakerAccess")
+    public PrefetchDataSource(@NonNull DataSource source) {
+        this(source, DEFAULT_SAMPLES);
+    }
+
+    /**
+     * @param source the source to read from
+     * @param samples the maximum number of samples to read ahead, per track
+     */
+    @SuppressWarnings("WeakerAccess")
+    public PrefetchDataSource(@NonNull DataSource source, int samples) {
+        super(source);
+        if (samples <= 0) {
+            throw new IllegalArgumentException("Samples should be greater than 0.");
+        }
+        mSamples = samples;
+    }
+
+    /**
+     * Total time spent reading the wrapped source in background. Without prefetching,
+     * this time would be spent on the pipeline thread.
+     *
+     * @return the read time in microseconds
+     */
+    public long getReadTimeUs() {
+        synchronized (mLock) {
+            return mReadNanos / 1000;
+        }
+    }
+
+    /**
+     * Total time the pipeline thread spent waiting for samples that were not ready.
+     *
+     * @return the stall time in microseconds
+     */
+    public long getStallTimeUs() {
+        synchronized (mLock) {
+            return mStallNanos / 1000;
+        }
+    }
+
+    /**
+     * The time saved on the pipeline thread, that is {@link #getReadTimeUs()}
+     * minus {@link #getStallTimeUs()}.
+     *
+     * @return the saved time in microseconds
+     */
+    public long getSavedTimeUs() {
+        synchronized (mLock) {
+            return Math.max(0, mReadNanos - mStallNanos) / 1000;
+        }
+    }
+
+    @Override
+    public void selectTrack(@NonNull TrackType type) {
+        synchronized (mSourceLock) {
+            super.selectTrack(type);
+            synchronized (mLock) {
+                mSelected.add(type);
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void releaseTrack(@NonNull TrackType type) {
+        synchronized (mSourceLock) {
+            super.releaseTrack(type);
+            synchronized (mLock) {
+                mSelected.remove(type);
+                mFree.get(type).addAll(mQueues.get(type));
+                mQueues.get(type).clear();
+                if (mNextType == type) mNextType = null;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public long seekTo(long desiredPositionUs) {
+        synchronized (mSourceLock) {
+            long result = super.seekTo(desiredPositionUs);
+            synchronized (mLock) {
+                mGeneration++;
+                for (TrackType type : TrackType.values()) {
+                    mFree.get(type).addAll(mQueues.get(type));
+                    mQueues.get(type).clear();
+                }
+                mDrained = false;
+                mBlocked = false;
+                mNextType = null;
+                mPositionUs = super.getPositionUs();
+                mLock.notifyAll();
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public boolean isDrained() {
+        synchronized (mLock) {
+            start();
+            throwIfFailed();
+            return mDrained && mQueues.get(TrackType.VIDEO).isEmpty()
+                    && mQueues.get(TrackType.AUDIO).isEmpty();
+        }
+    }
+
+    @Override
+    public boolean canReadTrack(@NonNull TrackType type) {
+        synchronized (mLock) {
+            start();
+            ArrayDeque<Sample> queue = mQueues.get(type);
+            if (queue.isEmpty() && mSelected.contains(type)) {
+                long start = System.nanoTime();
+                while (queue.isEmpty() && !mDrained && !mBlocked && mError == null) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                mStallNanos += System.nanoTime() - start;
+            }
+            throwIfFailed();
+            if (queue.isEmpty()) return false;
+            mNextType = type;
+            return true;
+        }
+    }
+
+    @Override
+    public void readTrack(@NonNull Chunk chunk) {
+        synchronized (mLock) {
+            throwIfFailed();
+            Sample sample = mNextType == null ? null : mQueues.get(mNextType).poll();
+            if (sample == null) {
+                throw new IllegalStateException("No samples available! Forgot to call " +
+                        "canReadTrack / isDrained?");
+            }
+            int position = chunk.buffer.position();
+            int size = sample.buffer.remaining();
+            if (position + size > chunk.buffer.limit()) {
+                throw new IllegalStateException("Sample does not fit the buffer. " +
+                        "size=" + size + " available=" + (chunk.buffer.limit() - position));
+            }
+            chunk.buffer.put(sample.buffer);
+            chunk.buffer.limit(position + size);
+            chunk.buffer.position(position);
+            chunk.keyframe = sample.keyframe;
+            chunk.timeUs = sample.timeUs;
+            chunk.render = sample.render;
+            mPositionUs = Math.max(mPositionUs, sample.positionUs);
+            mFree.get(mNextType).add(sample);
+            mNextType = null;
+            mLock.notifyAll();
+        }
+    }
+
+    @Override
+    public long getPositionUs() {
+        synchronized (mLock) {
+            return mPositionUs;
+        }
+    }
+
+    @Override
+    public void deinitialize() {
+        stop();
+        synchronized (mLock) {
+            LOG.i("deinitialize(): readTimeUs=" + mReadNanos / 1000
+                    + " stallTimeUs=" + mStallNanos / 1000);
+            for (TrackType type : TrackType.values()) {
+                mQueues.get(type).clear();
+                mFree.get(type).clear();
+            }
+            mSelected.clear();
+            mDrained = false;
+            mBlocked = false;
+            mError = null;
+            mNextType = null;
+            mPositionUs = 0;
+        }
+        super.deinitialize();
+    }
+
+    // Must hold mLock.
+    private void throwIfFailed() {
+        if (mError != null) throw mError;
+    }
+
+    // Must hold mLock.
+    private void start() {
+        if (mThread != null) return;
+        mRunning = true;
+        mThread = new Thread(this::prefetch, "PrefetchThread");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    private void stop() {
+        Thread thread;
+        synchronized (mLock) {
+            thread = mThread;
+            mThread = null;
+            mRunning = false;
+            mLock.notifyAll();
+        }
+        if (thread == null) return;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private int bufferSize(@NonNull TrackType type) {
+        MediaFormat format = getTrackFormat(type);
+        if (format != null && format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+            return format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
+        }
+        return type == TrackType.VIDEO ? DEFAULT_VIDEO_BUFFER_SIZE : DEFAULT_AUDIO_BUFFER_SIZE;
+    }
+
+    private void prefetch() {
+        Chunk chunk = new Chunk();
+        try {
+            while (prefetchOnce(chunk)) {
+                // Keep going.
+            }
+        } catch (RuntimeException e) {
+            LOG.e("prefetch(): failed.", e);
+            synchronized (mLock) {
+                mError = e;
+                mLock.notifyAll();
+            }
+        } catch (InterruptedException ignore) {
+            // Stopped.
+        }
+    }
+
+    /**
+     * Reads one sample, or waits until there's something to do.
+     * Returns false when the thread should stop.
+     */
+    private boolean prefetchOnce(@NonNull Chunk chunk) throws InterruptedException {
+        int generation;
+        TrackType type = null;
+        Sample sample = null;
+        // Never wait while holding the source lock, or seeks would block.
+        synchronized (mLock) {
+            while (mRunning && (mDrained || mSelected.isEmpty())) {
+                mLock.wait();
+            }
+            if (!mRunning) return false;
+        }
+        synchronized (mSourceLock) {
+            synchronized (mLock) {
+                if (!mRunning) return false;
+                if (mDrained || mSelected.isEmpty()) return true;
+                generation = mGeneration;
+            }
+            if (getSource().isDrained()) {
+                synchronized (mLock) {
+                    mDrained = true;
+                    mLock.notifyAll();
+                }
+                return true;
+            }
+            for (TrackType candidate : TrackType.values()) {
+                if (mSelected.contains(candidate) && getSource().canReadTrack(candidate)) {
+                    type = candidate;
+                    break;
+                }
+            }
+            if (type != null) {
+                synchronized (mLock) {
+                    if (mQueues.get(type).size() < mSamples) {
+                        sample = mFree.get(type).poll();
+                        if (sample == null) {
+                            sample = new Sample();
+                            sample.buffer = ByteBuffer.allocateDirect(bufferSize(type))
+                                    .order(ByteOrder.nativeOrder());
+                        }
+                        mBlocked = false;
+                    }
+                }
+                if (sample != null) {
+                    long start = System.nanoTime();
+                    sample.buffer.clear();
+                    chunk.buffer = sample.buffer;
+                    getSource().readTrack(chunk);
+                    sample.keyframe = chunk.keyframe;
+                    sample.timeUs = chunk.timeUs;
+                    sample.render = chunk.render;
+                    sample.positionUs = getSource().getPositionUs();
+                    synchronized (mLock) {
+                        mReadNanos += System.nanoTime() - start;
+                    }
+                }
+            }
+        }
+        synchronized (mLock) {
+            if (type == null) {
+                // The next sample belongs to a track that was not selected here.
+                mLock.wait(1);
+            } else if (sample == null) {
+                // Queue is full. Wait for the consumer, unless a seek or release changed things.
+                mBlocked = true;
+                mLock.notifyAll();
+                while (mRunning && generation == mGeneration && mSelected.contains(type)
+                        && mQueues.get(type).size() >= mSamples) {
+                    mLock.wait();
+                }
+                mBlocked = false;
+            } else if (generation == mGeneration && mSelected.contains(type)) {
+                mQueues.get(type).add(sample);
+                mLock.notifyAll();
+            } else {
+                mFree.get(type).add(sample);
+            }
+        }
+        return true;
+    }
+}
@@ -112,4 +112,11 @@ public class TrimDataSource extends DataSourceWrapper {
         long superReceivedUs = getSource().seekTo(superDesiredUs);
         return superReceivedUs - trimStartUs;
     }
+
+    @Override
+    public long getSyncFrameUs(long desiredPositionUs) {
+        long superSyncUs = super.getSyncFrameUs(trimStartUs + desiredPositionUs);
+        if (superSyncUs == Long.MIN_VALUE) return Long.MIN_VALUE;
+        return superSyncUs - trimStartUs;
+    }
 }
@@ -5,9 +5,12 @@ import android.media.MediaExtractor;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 
+import com.otaliastudios.transcoder.internal.utils.FingerprintsKt;
+
 import java.io.IOException;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * A {@link DataSource} backed by an Uri, possibly
@@ -32,4 +35,14 @@ public class UriDataSource extends DefaultDataSource {
     protected void initializeRetriever(@NonNull MediaMetadataRetriever retriever) {
         retriever.setDataSource(context, uri);
     }
+
+    @Nullable
+    @Override
+    protected String computeFingerprint() {
+        try {
+            return FingerprintsKt.fingerprintOf(context, uri);
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,40 @@
+package com.otaliastudios.transcoder.strategy;
+
+import android.media.MediaFormat;
+
+import java.util.List;
+
+/**
+ * A {@link TrackStrategy} that can use statistics about the compressed input samples.
+ * When {@link #needsContentStats()} returns true, the input video formats passed to
+ * {@link #createOutputFormat(List, MediaFormat)} may contain the keys below.
+ *
+ * The statistics are read from a few windows of compressed samples spread across each source.
+ * Samples are read but not decoded, so this only costs I/O.
+ */
+public interface ContentAwareStrategy extends TrackStrategy {
+
+    /**
+     * Average size of non-sync samples over average size of sync samples. Values close to 0
+     * mean that little changes between frames, as in screen recordings. High values mean
+     * high motion or noise. Value is a float.
+     */
+    String KEY_INTER_FRAME_RATIO = "transcoder-inter-frame-ratio";
+
+    /**
+     * Average bit rate of the sampled windows, in bits per second. Value is an integer.
+     */
+    String KEY_SAMPLED_BIT_RATE = "transcoder-sampled-bit-rate";
+
+    /**
+     * Average distance between sync samples, in microseconds. Value is a long.
+     */
+    String KEY_SYNC_INTERVAL_US = "transcoder-sync-interval-us";
+
+    /**
+     * Whether input formats should be inspected to include the keys above.
+     *
+     * @return true to read statistics
+     */
+    boolean needsContentStats();
+}
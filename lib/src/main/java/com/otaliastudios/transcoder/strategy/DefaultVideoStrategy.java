@@ -15,27 +15,52 @@ import com.otaliastudios.transcoder.resize.MultiResizer;
 import com.otaliastudios.transcoder.common.Size;
 import com.otaliastudios.transcoder.resize.Resizer;
 import com.otaliastudios.transcoder.internal.utils.Logger;
+import com.otaliastudios.transcoder.internal.media.BitstreamCompatibility;
 import com.otaliastudios.transcoder.internal.media.MediaFormatConstants;
+import com.otaliastudios.transcoder.internal.media.VideoEncoders;
 
 import androidx.annotation.NonNull;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * An {@link TrackStrategy} for video that converts it AVC with the given size.
  * The input and output aspect ratio must match.
  */
-public class DefaultVideoStrategy implements TrackStrategy {
+public class DefaultVideoStrategy implements ContentAwareStrategy {
     private final static Logger LOG = new Logger("DefaultVideoStrategy");
 
     @SuppressWarnings("WeakerAccess")
     public final static long BITRATE_UNKNOWN = Long.MIN_VALUE;
 
+    @SuppressWarnings("WeakerAccess")
+    public final static long SIZE_UNKNOWN = Long.MIN_VALUE;
+
+    /**
+     * Can be passed to {@link Builder#mimeType(String)} to choose the most efficient codec
+     * that has a hardware encoder for the output size and frame rate.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public final static String MIME_TYPE_AUTO = "auto";
+
+    // Share of the target size that goes to the container.
+    private final static float CONTAINER_OVERHEAD = 0.02F;
+
     @SuppressWarnings("WeakerAccess")
     public final static float DEFAULT_KEY_FRAME_INTERVAL = 3;
 
     public final static int DEFAULT_FRAME_RATE = 30;
 
+    // Inter frame ratio of the typical content that BitRates estimates are made for.
+    private final static float REFERENCE_INTER_FRAME_RATIO = 0.15F;
+    private final static float MIN_COMPLEXITY = 0.25F;
+    private final static float MAX_COMPLEXITY = 2.5F;
+
+    // Bits needed for the same quality, relative to AVC.
+    private final static float HEVC_EFFICIENCY = 0.6F;
+    private final static float AV1_EFFICIENCY = 0.5F;
+
     /**
      * Holds configuration values.
      */
@@ -47,6 +72,8 @@ public class DefaultVideoStrategy implements TrackStrategy {
         private int targetFrameRate;
         private float targetKeyFrameInterval;
         private String targetMimeType;
+        private boolean contentAware;
+        private long targetSize;
     }
 
     /**
@@ -122,6 +149,8 @@ public class DefaultVideoStrategy implements TrackStrategy {
         private long targetBitRate = BITRATE_UNKNOWN;
         private float targetKeyFrameInterval = DEFAULT_KEY_FRAME_INTERVAL;
         private String targetMimeType = MediaFormatConstants.MIMETYPE_VIDEO_AVC;
+        private boolean contentAware = false;
+        private long targetSize = SIZE_UNKNOWN;
 
         @SuppressWarnings("unused")
         public Builder() { }
@@ -157,6 +186,24 @@ public class DefaultVideoStrategy implements TrackStrategy {
             return this;
         }
 
+        /**
+         * The desired output file size, in bytes. Can optionally be {@link #SIZE_UNKNOWN}.
+         * When set and {@link #bitRate(long)} is not, the initial bit rate is computed from
+         * the input duration and the size left after the other tracks. During transcoding,
+         * the encoder bit rate is then corrected from the bytes written so far, so that the
+         * output gets close to this size. Input is never passed through, unless its bit rate
+         * is known and fits the size.
+         *
+         * @param sizeBytes desired file size (bytes)
+         * @return this for chaining
+         */
+        @NonNull
+        @SuppressWarnings("unused")
+        public Builder targetSize(long sizeBytes) {
+            targetSize = sizeBytes;
+            return this;
+        }
+
         /**
          * The desired frame rate. It will never be bigger than
          * the input frame rate, if that information is available.
@@ -181,6 +228,16 @@ public class DefaultVideoStrategy implements TrackStrategy {
             return this;
         }
 
+        /**
+         * The output mime type. Defaults to AVC. If {@link #MIME_TYPE_AUTO}, HEVC (API 24+) or AV1
+         * (API 34+) are used when the device has a hardware encoder for the output size and frame rate,
+         * falling back to AVC otherwise. In this case, the estimated bit rate is scaled
+         * down to account for the more efficient codec, and input that is already encoded
+         * with AVC or the chosen codec can be passed through.
+         *
+         * @param mimeType the output mime type or {@link #MIME_TYPE_AUTO}
+         * @return this for chaining
+         */
         @SuppressWarnings("unused")
         @NonNull
         public Builder mimeType(@NonNull String mimeType) {
@@ -188,6 +245,25 @@ public class DefaultVideoStrategy implements TrackStrategy {
             return this;
         }
 
+        /**
+         * Whether to read a few windows of compressed input samples, to estimate how
+         * complex the content is. This costs some I/O before transcoding starts, but
+         * no decoding. When the bit rate is {@link #BITRATE_UNKNOWN}, the estimate is then
+         * scaled down for static content like screen recordings and up for high motion,
+         * and never exceeds the input bit rate scaled to the output size.
+         * The spacing of input sync frames is also used to decide whether the input
+         * already has the desired key frame interval. Defaults to false.
+         *
+         * @param contentAware whether to read input samples
+         * @return this for chaining
+         */
+        @NonNull
+        @SuppressWarnings("unused")
+        public Builder contentAware(boolean contentAware) {
+            this.contentAware = contentAware;
+            return this;
+        }
+
         @NonNull
         @SuppressWarnings("WeakerAccess")
         public Options options() {
@@ -197,6 +273,8 @@ public class DefaultVideoStrategy implements TrackStrategy {
             options.targetBitRate = targetBitRate;
             options.targetKeyFrameInterval = targetKeyFrameInterval;
             options.targetMimeType = targetMimeType;
+            options.contentAware = contentAware;
+            options.targetSize = targetSize;
             return options;
         }
 
@@ -213,12 +291,15 @@ public class DefaultVideoStrategy implements TrackStrategy {
         this.options = options;
     }
 
+    @Override
+    public boolean needsContentStats() {
+        return options.contentAware;
+    }
+
     @NonNull
     @Override
     public TrackStatus createOutputFormat(@NonNull List<MediaFormat> inputFormats,
                                           @NonNull MediaFormat outputFormat) {
-        boolean typeDone = checkMimeType(inputFormats);
-
         // Compute output size in rotation=0 reference.
         ExactSize inSize = getBestInputSize(inputFormats);
         int inWidth = inSize.getWidth();
@@ -252,17 +333,38 @@ public class DefaultVideoStrategy implements TrackStrategy {
         } else {
             outFrameRate = options.targetFrameRate;
         }
-        boolean frameRateDone = inputFrameRate <= outFrameRate;
+        // With many inputs, all of them must be within the output frame rate.
+        boolean frameRateDone = getMaxFrameRate(inputFormats) <= outFrameRate;
 
         // Compute i frame.
         int inputIFrameInterval = getAverageIFrameInterval(inputFormats);
         boolean frameIntervalDone = inputIFrameInterval >= options.targetKeyFrameInterval;
 
+        // Resolve the mime type, now that we know size and frame rate.
+        String mimeType = options.targetMimeType;
+        String encoderName = null;
+        if (MIME_TYPE_AUTO.equals(mimeType)) {
+            mimeType = MediaFormatConstants.MIMETYPE_VIDEO_AVC;
+            // MediaMuxer writes HEVC to MP4 from API 24, and AV1 from API 34.
+            List<String> candidates = new ArrayList<>();
+            if (Build.VERSION.SDK_INT >= 24) candidates.add(MediaFormatConstants.MIMETYPE_VIDEO_HEVC);
+            if (Build.VERSION.SDK_INT >= 34) candidates.add(MediaFormatConstants.MIMETYPE_VIDEO_AV1);
+            for (String candidate : candidates) {
+                encoderName = VideoEncoders.findHardwareEncoder(candidate, outWidth, outHeight, outFrameRate);
+                if (encoderName != null) {
+                    mimeType = candidate;
+                    break;
+                }
+            }
+            LOG.i("Resolved mime type: " + mimeType + " (encoder: " + encoderName + ")");
+        }
+        boolean typeDone = checkMimeType(inputFormats, mimeType);
+
         // See if we should go on or if we're already compressed.
-        // If we have more than 1 input format, we can't go through this branch,
-        // or, for example, each part would be copied into output with its own size,
-        // breaking the muxer.
-        boolean canPassThrough = inputFormats.size() == 1;
+        // If we have more than 1 input format, we can only go through this branch if their
+        // bitstreams are compatible, or, for example, each part would be copied into output
+        // with its own size, breaking the muxer.
+        boolean canPassThrough = fitsTargetSize(inputFormats) && areBitstreamsCompatible(inputFormats);
         if (canPassThrough && typeDone && sizeDone && frameRateDone && frameIntervalDone) {
             LOG.i("Input minSize: " + inSize.getMinor() + ", desired minSize: " + outSize.getMinor() +
                     "\nInput frameRate: " + inputFrameRate + ", desired frameRate: " + outFrameRate +
@@ -271,7 +373,10 @@ public class DefaultVideoStrategy implements TrackStrategy {
         }
 
         // Create the actual format.
-        outputFormat.setString(MediaFormat.KEY_MIME, options.targetMimeType);
+        outputFormat.setString(MediaFormat.KEY_MIME, mimeType);
+        if (encoderName != null) {
+            outputFormat.setString(MediaFormatConstants.KEY_ENCODER_NAME, encoderName);
+        }
         outputFormat.setInteger(MediaFormat.KEY_WIDTH, outWidth);
         outputFormat.setInteger(MediaFormat.KEY_HEIGHT, outHeight);
         outputFormat.setInteger(MediaFormatConstants.KEY_ROTATION_DEGREES, 0);
@@ -282,16 +387,119 @@ public class DefaultVideoStrategy implements TrackStrategy {
             outputFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, (int) Math.ceil(options.targetKeyFrameInterval));
         }
         outputFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
-        int outBitRate = (int) (options.targetBitRate == BITRATE_UNKNOWN
-                ? BitRates.estimateVideoBitRate(outWidth, outHeight, outFrameRate)
-                : options.targetBitRate);
+        long durationUs = getTotalDurationUs(inputFormats);
+        boolean hasTargetSize = options.targetSize != SIZE_UNKNOWN && durationUs > 0;
+        int outBitRate;
+        if (options.targetBitRate != BITRATE_UNKNOWN) {
+            outBitRate = (int) options.targetBitRate;
+        } else if (hasTargetSize) {
+            // Other tracks are not known here, the engine will take them into account.
+            outBitRate = (int) Math.min(Integer.MAX_VALUE,
+                    options.targetSize * 8 * 1000000D / durationUs * (1 - CONTAINER_OVERHEAD));
+        } else {
+            outBitRate = (int) (estimateBitRate(inputFormats, mimeType, outWidth, outHeight, outFrameRate)
+                    * getEfficiency(mimeType));
+        }
         outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, outBitRate);
+        if (hasTargetSize) {
+            outputFormat.setLong(MediaFormatConstants.KEY_TARGET_SIZE, options.targetSize);
+        }
         return TrackStatus.COMPRESSING;
     }
 
-    private boolean checkMimeType(@NonNull List<MediaFormat> formats) {
+    private float getEfficiency(@NonNull String mimeType) {
+        if (!MIME_TYPE_AUTO.equals(options.targetMimeType)) return 1F;
+        switch (mimeType) {
+            case MediaFormatConstants.MIMETYPE_VIDEO_HEVC: return HEVC_EFFICIENCY;
+            case MediaFormatConstants.MIMETYPE_VIDEO_AV1: return AV1_EFFICIENCY;
+            default: return 1F;
+        }
+    }
+
+    private long estimateBitRate(@NonNull List<MediaFormat> formats, @NonNull String mimeType,
+                                 int outWidth, int outHeight, int outFrameRate) {
+        if (!options.contentAware) {
+            return BitRates.estimateVideoBitRate(outWidth, outHeight, outFrameRate);
+        }
+        // Complexity: compare the bits of a group of pictures with the reference content.
+        // The more frames per group, the more the inter frame ratio matters.
+        float ratio = 0;
+        int ratioCount = 0;
         for (MediaFormat format : formats) {
-            if (!format.getString(MediaFormat.KEY_MIME).equalsIgnoreCase(options.targetMimeType)) {
+            if (format.containsKey(KEY_INTER_FRAME_RATIO)) {
+                ratio += format.getFloat(KEY_INTER_FRAME_RATIO);
+                ratioCount++;
+            }
+        }
+        float complexity = 1F;
+        if (ratioCount > 0) {
+            ratio = ratio / ratioCount;
+            float frames = Math.max(1F, outFrameRate * options.targetKeyFrameInterval);
+            complexity = (1 + (frames - 1) * ratio) / (1 + (frames - 1) * REFERENCE_INTER_FRAME_RATIO);
+            complexity = Math.max(MIN_COMPLEXITY, Math.min(MAX_COMPLEXITY, complexity));
+        }
+        long bitRate = BitRates.estimateVideoBitRate(outWidth, outHeight, outFrameRate, complexity);
+
+        // There's no point in spending more bits than the input had, scaled to the output
+        // pixel rate. Give some room when the codec changes, since it might be more efficient.
+        long maxBitRate = 0;
+        float outPixelRate = (float) outWidth * outHeight * outFrameRate;
+        for (MediaFormat format : formats) {
+            if (!format.containsKey(KEY_SAMPLED_BIT_RATE)) continue;
+            float inPixelRate = (float) format.getInteger(MediaFormat.KEY_WIDTH)
+                    * format.getInteger(MediaFormat.KEY_HEIGHT)
+                    * format.getInteger(MediaFormat.KEY_FRAME_RATE);
+            if (inPixelRate <= 0) continue;
+            boolean sameMime = format.getString(MediaFormat.KEY_MIME).equalsIgnoreCase(mimeType);
+            float scale = (outPixelRate / inPixelRate) * (sameMime ? 1F : 1.5F);
+            maxBitRate = Math.max(maxBitRate, (long) (format.getInteger(KEY_SAMPLED_BIT_RATE) * scale));
+        }
+        if (maxBitRate > 0) bitRate = Math.min(bitRate, maxBitRate);
+        LOG.i("estimateBitRate(): interFrameRatio=" + ratio + " complexity=" + complexity
+                + " maxBitRate=" + maxBitRate + " bitRate=" + bitRate);
+        return bitRate;
+    }
+
+    private boolean fitsTargetSize(@NonNull List<MediaFormat> formats) {
+        if (options.targetSize == SIZE_UNKNOWN) return true;
+        double sizeBytes = 0;
+        for (MediaFormat format : formats) {
+            if (!format.containsKey(MediaFormat.KEY_BIT_RATE)
+                    || !format.containsKey(MediaFormat.KEY_DURATION)) return false;
+            sizeBytes += format.getInteger(MediaFormat.KEY_BIT_RATE) / 8D
+                    * format.getLong(MediaFormat.KEY_DURATION) / 1000000D;
+        }
+        return sizeBytes <= options.targetSize * (1 - CONTAINER_OVERHEAD);
+    }
+
+    private boolean areBitstreamsCompatible(@NonNull List<MediaFormat> formats) {
+        MediaFormat first = formats.get(0);
+        for (int i = 1; i < formats.size(); i++) {
+            if (!BitstreamCompatibility.isCompatible(first, formats.get(i))) {
+                LOG.i("Input " + i + " is not compatible with the first input, can't pass through.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long getTotalDurationUs(@NonNull List<MediaFormat> formats) {
+        long durationUs = 0;
+        for (MediaFormat format : formats) {
+            if (!format.containsKey(MediaFormat.KEY_DURATION)) return -1;
+            durationUs += format.getLong(MediaFormat.KEY_DURATION);
+        }
+        return durationUs;
+    }
+
+    private boolean checkMimeType(@NonNull List<MediaFormat> formats, @NonNull String mimeType) {
+        boolean auto = MIME_TYPE_AUTO.equals(options.targetMimeType);
+        for (MediaFormat format : formats) {
+            String inputMimeType = format.getString(MediaFormat.KEY_MIME);
+            if (auto && inputMimeType.equalsIgnoreCase(MediaFormatConstants.MIMETYPE_VIDEO_AVC)) {
+                continue;
+            }
+            if (!inputMimeType.equalsIgnoreCase(mimeType)) {
                 return false;
             }
         }
@@ -355,6 +563,16 @@ public class DefaultVideoStrategy implements TrackStrategy {
         return (frameRate == Integer.MAX_VALUE) ? -1 : frameRate;
     }
 
+    private int getMaxFrameRate(@NonNull List<MediaFormat> formats) {
+        int frameRate = -1;
+        for (MediaFormat format : formats) {
+            if (format.containsKey(MediaFormat.KEY_FRAME_RATE)) {
+                frameRate = Math.max(frameRate, format.getInteger(MediaFormat.KEY_FRAME_RATE));
+            }
+        }
+        return frameRate;
+    }
+
     private int getAverageIFrameInterval(@NonNull List<MediaFormat> formats) {
         int count = 0;
         int sum = 0;
@@ -362,6 +580,9 @@ public class DefaultVideoStrategy implements TrackStrategy {
             if (format.containsKey(MediaFormat.KEY_I_FRAME_INTERVAL)) {
                 count++;
                 sum += format.getInteger(MediaFormat.KEY_I_FRAME_INTERVAL);
+            } else if (format.containsKey(KEY_SYNC_INTERVAL_US)) {
+                count++;
+                sum += Math.round(format.getLong(KEY_SYNC_INTERVAL_US) / 1000000F);
             }
         }
         return (count > 0) ? Math.round((float) sum / count) : -1;
@@ -0,0 +1,21 @@
+package com.otaliastudios.transcoder.thumbnail
+
+import android.graphics.Bitmap
+
+/**
+ * A pool of bitmaps that the thumbnailer can draw into, instead of allocating a new
+ * bitmap for each thumbnail. Bitmaps go back to the pool through [Thumbnail.recycle].
+ * Implementations must be thread safe.
+ */
+interface BitmapPool {
+
+    /**
+     * Returns a mutable bitmap with the given size and config, or null if none is available.
+     */
+    fun get(width: Int, height: Int, config: Bitmap.Config): Bitmap?
+
+    /**
+     * Gives a bitmap back to the pool. The pool can keep it or recycle it.
+     */
+    fun put(bitmap: Bitmap)
+}
@@ -0,0 +1,44 @@
+package com.otaliastudios.transcoder.thumbnail
+
+import android.graphics.Bitmap
+
+/**
+ * A [BitmapPool] that keeps up to [maxSize] bitmaps. Since thumbnails from the same
+ * job all share the same size and config, there is no need for anything smarter.
+ */
+class DefaultBitmapPool @JvmOverloads constructor(private val maxSize: Int = 8) : BitmapPool {
+
+    private val bitmaps = ArrayDeque<Bitmap>()
+
+    @Synchronized
+    override fun get(width: Int, height: Int, config: Bitmap.Config): Bitmap? {
+        while (bitmaps.isNotEmpty()) {
+            val bitmap = bitmaps.removeLast()
+            if (!bitmap.isRecycled && bitmap.width == width
+                    && bitmap.height == height && bitmap.config == config) {
+                return bitmap
+            }
+            bitmap.recycle()
+        }
+        return null
+    }
+
+    @Synchronized
+    override fun put(bitmap: Bitmap) {
+        if (bitmap.isRecycled || !bitmap.isMutable) return
+        if (bitmaps.size >= maxSize) {
+            bitmap.recycle()
+        } else {
+            bitmaps.addLast(bitmap)
+        }
+    }
+
+    /**
+     * Recycles all the bitmaps in this pool.
+     */
+    @Synchronized
+    fun clear() {
+        bitmaps.forEach { it.recycle() }
+        bitmaps.clear()
+    }
+}
@@ -1,10 +1,13 @@
 package com.otaliastudios.transcoder.thumbnail
 
-class SingleThumbnailRequest(private val positionUs: Long) : ThumbnailRequest {
+class SingleThumbnailRequest @JvmOverloads constructor(
+        private val positionUs: Long,
+        override val syncFramesOnly: Boolean = false
+) : ThumbnailRequest {
     override fun locate(durationUs: Long): List<Long> {
         require(positionUs in 0L..durationUs) {
             "Thumbnail position is out of range. position=$positionUs range=${0L..durationUs}"
         }
         return listOf(positionUs)
     }
-}
\ No newline at end of file
+}
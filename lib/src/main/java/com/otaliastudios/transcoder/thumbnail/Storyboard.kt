@@ -0,0 +1,68 @@
+package com.otaliastudios.transcoder.thumbnail
+
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * A sheet of tiles produced by a [StoryboardRequest]. The [image] holds the sheet encoded
+ * with the request format, while [tiles] describes where each position was drawn.
+ * Tiles are laid out left to right, top to bottom.
+ */
+class Storyboard internal constructor(
+        val request: StoryboardRequest,
+        val index: Int,
+        val width: Int,
+        val height: Int,
+        val image: ByteArray,
+        val tiles: List<Tile>
+) {
+
+    /**
+     * A tile in the sheet. The frame at [positionUs] is used from [startUs] to [endUs],
+     * which is the position of the next tile or the end of the media.
+     */
+    class Tile internal constructor(
+            val positionUs: Long,
+            val startUs: Long,
+            val endUs: Long,
+            val x: Int,
+            val y: Int,
+            val width: Int,
+            val height: Int
+    )
+
+    /**
+     * Returns the WebVTT cues for this sheet, assuming that its image is served at [imageUrl].
+     * Cues of all sheets can be concatenated after a single "WEBVTT" header line.
+     */
+    fun toWebVtt(imageUrl: String): String {
+        return tiles.joinToString("") { tile ->
+            "${formatVtt(tile.startUs)} --> ${formatVtt(tile.endUs)}\n" +
+                    "$imageUrl#xywh=${tile.x},${tile.y},${tile.width},${tile.height}\n\n"
+        }
+    }
+
+    fun toJson(): JSONObject {
+        val tiles = JSONArray()
+        this.tiles.forEach {
+            tiles.put(JSONObject()
+                    .put("positionUs", it.positionUs)
+                    .put("startUs", it.startUs)
+                    .put("endUs", it.endUs)
+                    .put("x", it.x)
+                    .put("y", it.y)
+                    .put("width", it.width)
+                    .put("height", it.height))
+        }
+        return JSONObject()
+                .put("index", index)
+                .put("width", width)
+                .put("height", height)
+                .put("tiles", tiles)
+    }
+
+    private fun formatVtt(us: Long): String {
+        val ms = us / 1000
+        return "%02d:%02d:%02d.%03d".format(ms / 3600000, ms / 60000 % 60, ms / 1000 % 60, ms % 1000)
+    }
+}
@@ -0,0 +1,32 @@
+package com.otaliastudios.transcoder.thumbnail
+
+import android.graphics.Bitmap
+
+/**
+ * Requests [count] uniformly distributed thumbnails, packed into sheets of
+ * [columns] by [rows] tiles. Instead of individual thumbnails, the listener receives one
+ * [Storyboard] per sheet, holding the encoded image and the position of each tile.
+ *
+ * Tiles are copied into the sheet on the GPU, so each sheet is read back and encoded once.
+ */
+class StoryboardRequest @JvmOverloads constructor(
+        count: Int,
+        val columns: Int,
+        val rows: Int,
+        val format: Bitmap.CompressFormat = Bitmap.CompressFormat.JPEG,
+        val quality: Int = 80,
+        override val syncFramesOnly: Boolean = false
+) : ThumbnailRequest {
+
+    private val uniform = UniformThumbnailRequest(count)
+
+    init {
+        require(columns >= 1 && rows >= 1) {
+            "Storyboard sheets should have at least one column and one row."
+        }
+    }
+
+    val tilesPerSheet get() = columns * rows
+
+    override fun locate(durationUs: Long) = uniform.locate(durationUs)
+}
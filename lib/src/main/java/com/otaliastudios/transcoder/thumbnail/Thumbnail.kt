@@ -5,5 +5,21 @@ import android.graphics.Bitmap
 class Thumbnail internal constructor(
         val request: ThumbnailRequest,
         val positionUs: Long,
-        val bitmap: Bitmap
-)
\ No newline at end of file
+        val bitmap: Bitmap,
+        /**
+         * The number of samples that were fed to the decoder to produce this thumbnail,
+         * since the previous one. This is a measure of how expensive the thumbnail was.
+         */
+        val decodedFrames: Int = 0,
+        private val pool: BitmapPool? = null
+) {
+
+    /**
+     * Gives [bitmap] back to the [BitmapPool] it was taken from, if any, so that it can be
+     * reused for the next thumbnails. The bitmap must not be used after this call.
+     * When no pool was set, this does nothing.
+     */
+    fun recycle() {
+        pool?.put(bitmap)
+    }
+}
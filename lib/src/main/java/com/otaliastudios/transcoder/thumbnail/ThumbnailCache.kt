@@ -0,0 +1,119 @@
+package com.otaliastudios.transcoder.thumbnail
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.LruCache
+import com.otaliastudios.transcoder.internal.utils.Logger
+import java.io.File
+import java.io.FileOutputStream
+import java.security.MessageDigest
+
+/**
+ * A two-level cache for thumbnails, to be passed to the thumbnailer options.
+ * Positions found in the cache are dispatched right away, without spinning up the decoder.
+ *
+ * - Thumbnails are stored as encoded images in [directory]. Entries older than [maxAgeMs]
+ *   are discarded, and the least recently used entries are evicted when the total size
+ *   exceeds [maxDiskBytes].
+ * - Recently used bitmaps are also kept in memory, up to [maxMemoryBytes]. These bitmaps are
+ *   shared with the listener, so they should not be recycled or modified. Thumbnails coming
+ *   from the cache are never given to the [BitmapPool].
+ *
+ * Entries are keyed by a fingerprint of the sources, the position, the output size and rotation.
+ * Only sources added through paths, descriptors or uris can be fingerprinted: for other sources,
+ * the cache is not used.
+ */
+class ThumbnailCache @JvmOverloads constructor(
+        private val directory: File,
+        private val maxDiskBytes: Long = 32L * 1024 * 1024,
+        private val maxAgeMs: Long = 7L * 24 * 60 * 60 * 1000,
+        maxMemoryBytes: Int = 8 * 1024 * 1024,
+        private val format: Bitmap.CompressFormat = Bitmap.CompressFormat.JPEG,
+        private val quality: Int = 90
+) {
+
+    private val log = Logger("ThumbnailCache")
+
+    private val memory = object : LruCache<String, Bitmap>(maxMemoryBytes) {
+        override fun sizeOf(key: String, value: Bitmap) = value.byteCount
+    }
+
+    // Lazily computed, then updated on put and eviction. Access under lock.
+    private var diskBytes = -1L
+    private val lock = Any()
+
+    private fun fileOf(key: String): File {
+        val digest = MessageDigest.getInstance("SHA-1").digest(key.toByteArray())
+        return File(directory, digest.joinToString("") { "%02x".format(it) })
+    }
+
+    internal fun get(key: String, config: Bitmap.Config = Bitmap.Config.ARGB_8888): Bitmap? {
+        memory.get(key)?.let { return it }
+        val bitmap = synchronized(lock) {
+            val file = fileOf(key)
+            if (!file.exists()) return null
+            if (System.currentTimeMillis() - file.lastModified() > maxAgeMs) {
+                delete(file)
+                return null
+            }
+            file.setLastModified(System.currentTimeMillis()) // LRU
+            BitmapFactory.decodeFile(file.absolutePath, BitmapFactory.Options().also {
+                it.inPreferredConfig = config
+            })
+        } ?: return null
+        memory.put(key, bitmap)
+        return bitmap
+    }
+
+    internal fun put(key: String, bitmap: Bitmap, keepInMemory: Boolean = true) {
+        if (keepInMemory) memory.put(key, bitmap)
+        synchronized(lock) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                log.w("put(): could not create directory $directory")
+                return
+            }
+            val file = fileOf(key)
+            val previous = if (file.exists()) file.length() else 0L
+            val success = runCatching {
+                FileOutputStream(file).use { bitmap.compress(format, quality, it) }
+            }.getOrDefault(false)
+            if (!success) {
+                log.w("put(): could not write $file")
+                file.delete()
+                return
+            }
+            if (diskBytes >= 0) diskBytes += file.length() - previous
+            trim()
+        }
+    }
+
+    private fun delete(file: File) {
+        val length = file.length()
+        if (file.delete() && diskBytes >= 0) diskBytes -= length
+    }
+
+    // Must hold the lock.
+    private fun trim() {
+        if (diskBytes in 0..maxDiskBytes) return
+        val now = System.currentTimeMillis()
+        val files = directory.listFiles()?.sortedBy { it.lastModified() } ?: return
+        diskBytes = files.sumOf { it.length() }
+        files.forEach { file ->
+            if (diskBytes > maxDiskBytes || now - file.lastModified() > maxAgeMs) {
+                delete(file)
+            }
+        }
+        log.i("trim(): diskBytes=$diskBytes maxDiskBytes=$maxDiskBytes")
+    }
+
+    /**
+     * Removes all entries, both in memory and on disk.
+     */
+    fun clear() {
+        memory.evictAll()
+        synchronized(lock) {
+            directory.listFiles()?.forEach { it.delete() }
+            diskBytes = 0L
+        }
+    }
+}
@@ -3,6 +3,14 @@ package com.otaliastudios.transcoder.thumbnail
 interface ThumbnailRequest {
     fun locate(durationUs: Long): List<Long>
 
+    /**
+     * When true, the thumbnail for each located position is taken from the sync frame that
+     * precedes it, instead of decoding the whole group of pictures up to the exact position.
+     * This is much faster, but for sources with sparse sync frames the snapshot can be
+     * far from the requested position.
+     */
+    val syncFramesOnly: Boolean get() = false
+
     // Could make it so that if locate() is empty, accept is called for each frame (no seeking).
     // But this only makes sense if accept signature has more information (segment, ...), and
     // it should also have a way to say - we're done, stop transcoding.
@@ -10,4 +18,4 @@ interface ThumbnailRequest {
 
     // Could add resizing per request
     // val resizer = PassThroughResizer()
-}
\ No newline at end of file
+}
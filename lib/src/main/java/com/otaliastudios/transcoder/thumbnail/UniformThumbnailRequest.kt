@@ -1,6 +1,9 @@
 package com.otaliastudios.transcoder.thumbnail
 
-class UniformThumbnailRequest(private val count: Int) : ThumbnailRequest {
+class UniformThumbnailRequest @JvmOverloads constructor(
+        private val count: Int,
+        override val syncFramesOnly: Boolean = false
+) : ThumbnailRequest {
 
     init {
         require(count >= 2) {
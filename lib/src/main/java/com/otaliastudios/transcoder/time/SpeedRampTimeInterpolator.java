@@ -0,0 +1,167 @@
+package com.otaliastudios.transcoder.time;
+
+import androidx.annotation.NonNull;
+
+import com.otaliastudios.transcoder.common.TrackType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link TimeInterpolator} that changes the playback speed over time, following a curve
+ * defined by keyframes over the input timeline. Between two keyframes, the speed changes
+ * linearly. Before the first and after the last keyframe, the speed is constant.
+ *
+ * The output time is the integral of 1 / speed. This is computed once, when building,
+ * into a table of input and output times: ramps are split into steps of the given resolution.
+ * Each {@link #interpolate(TrackType, long)} call is then a binary search plus a linear
+ * interpolation, and audio and video share the same curve.
+ *
+ * Unlike concatenating many {@link com.otaliastudios.transcoder.source.TrimDataSource}s with
+ * different speeds, this needs a single segment, so the audio stretcher receives a
+ * continuously changing stretch factor from the decoder timer.
+ */
+public class SpeedRampTimeInterpolator implements TimeInterpolator {
+
+    private final long[] mKeyframeTimes;
+    private final float[] mKeyframeSpeeds;
+    private final long[] mInputs;
+    private final double[] mOutputs;
+
+    private SpeedRampTimeInterpolator(@NonNull long[] times, @NonNull float[] speeds, long resolutionUs) {
+        mKeyframeTimes = times;
+        mKeyframeSpeeds = speeds;
+        // The table starts at 0, where the output time is 0.
+        List<Long> inputs = new ArrayList<>();
+        List<Double> outputs = new ArrayList<>();
+        inputs.add(0L);
+        outputs.add(0D);
+        for (int i = 0; i < times.length; i++) {
+            long startUs = i == 0 ? 0 : times[i - 1];
+            long endUs = times[i];
+            double startSpeed = i == 0 ? speeds[0] : speeds[i - 1];
+            double endSpeed = speeds[i];
+            if (endUs == startUs) continue;
+            double baseUs = outputs.get(outputs.size() - 1);
+            long steps = startSpeed == endSpeed ? 1 : (endUs - startUs + resolutionUs - 1) / resolutionUs;
+            for (long step = 1; step <= steps; step++) {
+                long timeUs = step == steps ? endUs : startUs + step * resolutionUs;
+                inputs.add(timeUs);
+                outputs.add(baseUs + integrate(startUs, endUs, startSpeed, endSpeed, timeUs));
+            }
+        }
+        mInputs = new long[inputs.size()];
+        mOutputs = new double[outputs.size()];
+        for (int i = 0; i < mInputs.length; i++) {
+            mInputs[i] = inputs.get(i);
+            mOutputs[i] = outputs.get(i);
+        }
+    }
+
+    /**
+     * Integral of 1 / speed between startUs and timeUs, where speed
+     * changes linearly from startSpeed at startUs to endSpeed at endUs.
+     */
+    private static double integrate(long startUs, long endUs,
+                                    double startSpeed, double endSpeed,
+                                    long timeUs) {
+        double elapsedUs = timeUs - startUs;
+        if (startSpeed == endSpeed) return elapsedUs / startSpeed;
+        double slope = (endSpeed - startSpeed) / (endUs - startUs);
+        return Math.log((startSpeed + slope * elapsedUs) / startSpeed) / slope;
+    }
+
+    /**
+     * Returns the speed at the given input time.
+     * @param timeUs input time
+     * @return the speed
+     */
+    public float getSpeed(long timeUs) {
+        int index = Arrays.binarySearch(mKeyframeTimes, timeUs);
+        if (index >= 0) return mKeyframeSpeeds[index];
+        int next = -index - 1;
+        if (next == 0) return mKeyframeSpeeds[0];
+        if (next == mKeyframeTimes.length) return mKeyframeSpeeds[next - 1];
+        long startUs = mKeyframeTimes[next - 1];
+        long endUs = mKeyframeTimes[next];
+        float fraction = (float) (timeUs - startUs) / (endUs - startUs);
+        return mKeyframeSpeeds[next - 1] + fraction * (mKeyframeSpeeds[next] - mKeyframeSpeeds[next - 1]);
+    }
+
+    @Override
+    public long interpolate(@NonNull TrackType type, long time) {
+        int last = mInputs.length - 1;
+        if (time <= mInputs[0]) {
+            return Math.round(mOutputs[0] - (mInputs[0] - time) / (double) mKeyframeSpeeds[0]);
+        }
+        if (time >= mInputs[last]) {
+            float speed = mKeyframeSpeeds[mKeyframeSpeeds.length - 1];
+            return Math.round(mOutputs[last] + (time - mInputs[last]) / (double) speed);
+        }
+        int index = Arrays.binarySearch(mInputs, time);
+        if (index >= 0) return Math.round(mOutputs[index]);
+        int next = -index - 1;
+        double fraction = (double) (time - mInputs[next - 1]) / (mInputs[next] - mInputs[next - 1]);
+        return Math.round(mOutputs[next - 1] + fraction * (mOutputs[next] - mOutputs[next - 1]));
+    }
+
+    public static class Builder {
+        private final List<Long> times = new ArrayList<>();
+        private final List<Float> speeds = new ArrayList<>();
+        private long resolutionUs = 10000;
+
+        /**
+         * Adds a keyframe. Keyframes must be added in increasing time order.
+         *
+         * @param timeUs the input time, greater than or equal to 0
+         * @param speed the speed at this time, greater than 0
+         * @return this for chaining
+         */
+        @NonNull
+        public Builder addKeyframe(long timeUs, float speed) {
+            if (timeUs < 0) {
+                throw new IllegalArgumentException("Invalid keyframe time: " + timeUs);
+            }
+            if (speed <= 0) {
+                throw new IllegalArgumentException("Invalid speed factor: " + speed);
+            }
+            if (!times.isEmpty() && timeUs <= times.get(times.size() - 1)) {
+                throw new IllegalArgumentException("Keyframes must be added in increasing time order.");
+            }
+            times.add(timeUs);
+            speeds.add(speed);
+            return this;
+        }
+
+        /**
+         * The step used to sample speed ramps into the time table.
+         * Defaults to 10 milliseconds.
+         *
+         * @param resolutionUs the step in microseconds
+         * @return this for chaining
+         */
+        @NonNull
+        public Builder setResolution(long resolutionUs) {
+            if (resolutionUs <= 0) {
+                throw new IllegalArgumentException("Invalid resolution: " + resolutionUs);
+            }
+            this.resolutionUs = resolutionUs;
+            return this;
+        }
+
+        @NonNull
+        public SpeedRampTimeInterpolator build() {
+            if (times.isEmpty()) {
+                throw new IllegalStateException("At least one keyframe is needed.");
+            }
+            long[] times = new long[this.times.size()];
+            float[] speeds = new float[this.speeds.size()];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = this.times.get(i);
+                speeds[i] = this.speeds.get(i);
+            }
+            return new SpeedRampTimeInterpolator(times, speeds, resolutionUs);
+        }
+    }
+}
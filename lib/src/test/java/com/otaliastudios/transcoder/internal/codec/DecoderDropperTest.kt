@@ -0,0 +1,216 @@
+package com.otaliastudios.transcoder.internal.codec
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import kotlin.random.Random
+
+class DecoderDropperTest {
+
+    private fun DecoderDropper.inputs(fromUs: Long, toUs: Long, render: Boolean, stepUs: Long = 1000L) {
+        var timeUs = fromUs
+        while (timeUs <= toUs) {
+            input(timeUs, render)
+            timeUs += stepUs
+        }
+    }
+
+    @Test
+    fun testAllRendered() {
+        val dropper = DecoderDropper(continuous = true)
+        dropper.inputs(0L, 10_000L, render = true)
+        for (timeUs in 0L..10_000L step 1000L) {
+            assertEquals(timeUs, dropper.output(timeUs))
+        }
+    }
+
+    @Test
+    fun testGapIsDroppedAndRemoved() {
+        val dropper = DecoderDropper(continuous = true)
+        dropper.inputs(0L, 4000L, render = true)
+        dropper.inputs(5000L, 9000L, render = false)
+        dropper.inputs(10_000L, 14_000L, render = true)
+        for (timeUs in 0L..4000L step 1000L) {
+            assertEquals(timeUs, dropper.output(timeUs))
+        }
+        for (timeUs in 5000L..9000L step 1000L) {
+            assertEquals(DecoderDropper.DROP, dropper.output(timeUs))
+        }
+        for (timeUs in 10_000L..14_000L step 1000L) {
+            assertEquals(timeUs - 6000L, dropper.output(timeUs))
+        }
+    }
+
+    @Test
+    fun testNotContinuous() {
+        val dropper = DecoderDropper(continuous = false)
+        dropper.inputs(0L, 4000L, render = false)
+        dropper.inputs(5000L, 9000L, render = true)
+        dropper.inputs(10_000L, 14_000L, render = false)
+        dropper.inputs(15_000L, 19_000L, render = true)
+        assertEquals(DecoderDropper.DROP, dropper.output(0L))
+        assertEquals(5000L, dropper.output(5000L))
+        assertEquals(DecoderDropper.DROP, dropper.output(12_000L))
+        assertEquals(17_000L, dropper.output(17_000L))
+    }
+
+    @Test
+    fun testOutputOffset() {
+        // Output timestamps are matched relative to the first output.
+        val dropper = DecoderDropper(continuous = true)
+        dropper.inputs(1000L, 3000L, render = true)
+        assertEquals(500L, dropper.output(500L))
+        assertEquals(2500L, dropper.output(2500L))
+    }
+
+    @Test
+    fun testSingleFrameRangeIsDiscarded() {
+        val dropper = DecoderDropper(continuous = true)
+        dropper.input(0L, render = false)
+        dropper.input(1000L, render = true)
+        dropper.input(2000L, render = false)
+        dropper.output(0L)
+        assertEquals(DecoderDropper.DROP, dropper.output(1000L))
+    }
+
+    @Test
+    fun testOutOfOrderOutput() {
+        val dropper = DecoderDropper(continuous = true)
+        val reference = ReferenceDropper(continuous = true)
+        for (range in 0 until 100) {
+            val startUs = range * 10_000L
+            dropper.inputs(startUs, startUs + 4000L, render = true)
+            dropper.inputs(startUs + 5000L, startUs + 9000L, render = false)
+            reference.inputs(startUs, startUs + 4000L, render = true)
+            reference.inputs(startUs + 5000L, startUs + 9000L, render = false)
+        }
+        dropper.output(0L)
+        reference.output(0L)
+        val random = Random(42)
+        repeat(1000) {
+            val timeUs = random.nextLong(0L, 1_000_000L) / 1000L * 1000L
+            assertEquals("timeUs=$timeUs", reference.output(timeUs), dropper.output(timeUs))
+        }
+    }
+
+    @Test
+    fun testOverlappingRanges() {
+        // Not monotonic: ranges overlap, the first match wins.
+        val dropper = DecoderDropper(continuous = true)
+        val reference = ReferenceDropper(continuous = true)
+        dropper.inputs(10_000L, 20_000L, render = true)
+        dropper.inputs(21_000L, 22_000L, render = false)
+        dropper.inputs(5000L, 15_000L, render = true)
+        dropper.inputs(16_000L, 17_000L, render = false)
+        dropper.inputs(30_000L, 40_000L, render = true)
+        reference.inputs(10_000L, 20_000L, render = true)
+        reference.inputs(21_000L, 22_000L, render = false)
+        reference.inputs(5000L, 15_000L, render = true)
+        reference.inputs(16_000L, 17_000L, render = false)
+        reference.inputs(30_000L, 40_000L, render = true)
+        for (timeUs in 10_000L..45_000L step 500L) {
+            assertEquals("timeUs=$timeUs", reference.output(timeUs), dropper.output(timeUs))
+        }
+    }
+
+    @Test
+    fun testMatchesReference() {
+        val random = Random(1234)
+        repeat(50) { run ->
+            val continuous = run % 2 == 0
+            val dropper = DecoderDropper(continuous)
+            val reference = ReferenceDropper(continuous)
+            var timeUs = random.nextLong(0L, 100_000L)
+            val inputs = mutableListOf<Long>()
+            repeat(2000) {
+                val render = random.nextInt(10) < 7
+                dropper.input(timeUs, render)
+                reference.input(timeUs, render)
+                inputs += timeUs
+                timeUs += random.nextLong(1L, 40_000L)
+            }
+            // Mostly monotonic output, with some jitter.
+            inputs.forEach { inputUs ->
+                val outputUs = inputUs + random.nextLong(-5L, 5L)
+                assertEquals("run=$run outputUs=$outputUs",
+                        reference.output(outputUs), dropper.output(outputUs))
+            }
+        }
+    }
+
+    @Test
+    fun testInterleavedInputAndOutput() {
+        val dropper = DecoderDropper(continuous = true)
+        val reference = ReferenceDropper(continuous = true)
+        val random = Random(7)
+        var timeUs = 0L
+        val pending = ArrayDeque<Long>()
+        repeat(5000) {
+            val render = random.nextInt(10) < 8
+            dropper.input(timeUs, render)
+            reference.input(timeUs, render)
+            pending.addLast(timeUs)
+            timeUs += 33_333L
+            // Decoder keeps a few frames in flight.
+            while (pending.size > 4) {
+                val outputUs = pending.removeFirst()
+                assertEquals("outputUs=$outputUs", reference.output(outputUs), dropper.output(outputUs))
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testOutputBeforeInput() {
+        DecoderDropper(continuous = true).output(0L)
+    }
+
+    private fun ReferenceDropper.inputs(fromUs: Long, toUs: Long, render: Boolean) {
+        for (timeUs in fromUs..toUs step 1000L) input(timeUs, render)
+    }
+
+    /**
+     * The previous implementation, based on a list of LongRange and a map of deltas,
+     * kept to check that the new one behaves in the same way. Returns DROP instead of null.
+     */
+    private class ReferenceDropper(private val continuous: Boolean) {
+        private val closedDeltas = mutableMapOf<LongRange, Long>()
+        private val closedRanges = mutableListOf<LongRange>()
+        private var pendingRange: LongRange? = null
+        private var firstInputUs: Long? = null
+        private var firstOutputUs: Long? = null
+
+        fun input(timeUs: Long, render: Boolean) {
+            if (firstInputUs == null) firstInputUs = timeUs
+            if (render) {
+                if (pendingRange == null) pendingRange = timeUs..Long.MAX_VALUE
+                else pendingRange = pendingRange!!.first..timeUs
+            } else {
+                if (pendingRange != null && pendingRange!!.last != Long.MAX_VALUE) {
+                    closedRanges.add(pendingRange!!)
+                    closedDeltas[pendingRange!!] = if (closedRanges.size >= 2) {
+                        pendingRange!!.first - closedRanges[closedRanges.lastIndex - 1].last
+                    } else 0L
+                }
+                pendingRange = null
+            }
+        }
+
+        fun output(timeUs: Long): Long {
+            if (firstOutputUs == null) firstOutputUs = timeUs
+            val timeInInputScaleUs = firstInputUs!! + (timeUs - firstOutputUs!!)
+            var deltaUs = 0L
+            closedRanges.forEach {
+                deltaUs += closedDeltas[it]!!
+                if (it.contains(timeInInputScaleUs)) {
+                    return if (continuous) timeUs - deltaUs else timeUs
+                }
+            }
+            if (pendingRange != null && pendingRange!!.contains(timeInInputScaleUs)) {
+                if (closedRanges.isNotEmpty()) {
+                    deltaUs += pendingRange!!.first - closedRanges.last().last
+                }
+                return if (continuous) timeUs - deltaUs else timeUs
+            }
+            return DecoderDropper.DROP
+        }
+    }
+}
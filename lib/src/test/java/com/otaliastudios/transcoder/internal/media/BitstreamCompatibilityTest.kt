@@ -0,0 +1,117 @@
+package com.otaliastudios.transcoder.internal.media
+
+import com.otaliastudios.transcoder.internal.utils.ParameterSets
+import com.otaliastudios.transcoder.internal.utils.ParameterSets.avc
+import com.otaliastudios.transcoder.internal.utils.ParameterSets.hevc
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class BitstreamCompatibilityTest {
+
+    private fun avc(sps1: ByteArray, sps2: ByteArray,
+                    pps1: ByteArray = ParameterSets.AVC_PPS_1080P,
+                    pps2: ByteArray = ParameterSets.AVC_PPS_1080P): Boolean {
+        return BitstreamCompatibility.isAvcCompatible(avc(sps1), avc(pps1), avc(sps2), avc(pps2))
+    }
+
+    private fun hevc(sps1: ByteArray, sps2: ByteArray,
+                     pps1: ByteArray = ParameterSets.HEVC_PPS_1080P,
+                     pps2: ByteArray = ParameterSets.HEVC_PPS_1080P): Boolean {
+        return BitstreamCompatibility.isHevcCompatible(hevc(sps1), hevc(pps1), hevc(sps2), hevc(pps2))
+    }
+
+    private fun aac(asc1: ByteArray, asc2: ByteArray): Boolean {
+        return BitstreamCompatibility.isAacCompatible(ByteBuffer.wrap(asc1), ByteBuffer.wrap(asc2))
+    }
+
+    @Test
+    fun testAvcSame() {
+        assertTrue(avc(ParameterSets.AVC_SPS_1080P, ParameterSets.AVC_SPS_1080P))
+        assertTrue(avc(ParameterSets.AVC_SPS_240P, ParameterSets.AVC_SPS_240P,
+                ParameterSets.AVC_PPS_240P, ParameterSets.AVC_PPS_240P))
+    }
+
+    @Test
+    fun testAvcLevel() {
+        // The first decoder can take a stream of lower level, not the opposite.
+        assertTrue(avc(ParameterSets.AVC_SPS_1080P, ParameterSets.AVC_SPS_1080P_LEVEL_31))
+        assertFalse(avc(ParameterSets.AVC_SPS_1080P_LEVEL_31, ParameterSets.AVC_SPS_1080P))
+    }
+
+    @Test
+    fun testAvcProfile() {
+        assertFalse(avc(ParameterSets.AVC_SPS_1080P, ParameterSets.AVC_SPS_1080P_MAIN))
+        assertFalse(avc(ParameterSets.AVC_SPS_1080P_MAIN, ParameterSets.AVC_SPS_1080P))
+    }
+
+    @Test
+    fun testAvcChroma() {
+        assertFalse(avc(ParameterSets.AVC_SPS_1080P, ParameterSets.AVC_SPS_1080P_422))
+    }
+
+    @Test
+    fun testAvcScalingLists() {
+        assertFalse(avc(ParameterSets.AVC_SPS_1080P, ParameterSets.AVC_SPS_1080P_SCALING))
+        assertFalse(avc(ParameterSets.AVC_SPS_1080P_SCALING, ParameterSets.AVC_SPS_1080P))
+    }
+
+    @Test
+    fun testAvcSecondChromaQp() {
+        // All other fields are the same.
+        assertFalse(avc(ParameterSets.AVC_SPS_1080P, ParameterSets.AVC_SPS_1080P,
+                ParameterSets.AVC_PPS_1080P, ParameterSets.AVC_PPS_1080P_SECOND_CHROMA_QP))
+    }
+
+    @Test
+    fun testAvcSize() {
+        assertFalse(avc(ParameterSets.AVC_SPS_1080P, ParameterSets.AVC_SPS_240P,
+                ParameterSets.AVC_PPS_1080P, ParameterSets.AVC_PPS_240P))
+    }
+
+    @Test
+    fun testHevcSame() {
+        assertTrue(hevc(ParameterSets.HEVC_SPS_1080P, ParameterSets.HEVC_SPS_1080P))
+    }
+
+    @Test
+    fun testHevcLevel() {
+        assertTrue(hevc(ParameterSets.HEVC_SPS_1080P, ParameterSets.HEVC_SPS_1080P_LEVEL_31))
+        assertFalse(hevc(ParameterSets.HEVC_SPS_1080P_LEVEL_31, ParameterSets.HEVC_SPS_1080P))
+    }
+
+    @Test
+    fun testHevcProfile() {
+        assertFalse(hevc(ParameterSets.HEVC_SPS_1080P, ParameterSets.HEVC_SPS_1080P_MAIN_10))
+        assertFalse(hevc(ParameterSets.HEVC_SPS_1080P_MAIN_10, ParameterSets.HEVC_SPS_1080P))
+    }
+
+    @Test
+    fun testHevcScalingLists() {
+        assertFalse(hevc(ParameterSets.HEVC_SPS_1080P, ParameterSets.HEVC_SPS_1080P_SCALING))
+        // Even if the same, part of the lists is skipped while parsing.
+        assertFalse(hevc(ParameterSets.HEVC_SPS_1080P_SCALING, ParameterSets.HEVC_SPS_1080P_SCALING))
+    }
+
+    @Test
+    fun testAacSame() {
+        assertTrue(aac(ParameterSets.AAC_LC_48000_STEREO, ParameterSets.AAC_LC_48000_STEREO))
+        assertTrue(aac(ParameterSets.AAC_HE_EXPLICIT, ParameterSets.AAC_HE_EXPLICIT))
+    }
+
+    @Test
+    fun testAacExplicitSampleRate() {
+        // Same values with an explicit frequency instead of the table index.
+        val table = ParameterSets.hex("12 10")
+        assertTrue(aac(table, ParameterSets.AAC_LC_EXPLICIT_44100))
+    }
+
+    @Test
+    fun testAacDifferent() {
+        assertFalse(aac(ParameterSets.AAC_LC_48000_STEREO, ParameterSets.AAC_LC_8000_MONO))
+        assertFalse(aac(ParameterSets.AAC_LC_EXPLICIT_44100, ParameterSets.AAC_LC_EXPLICIT_37800))
+        assertFalse(aac(ParameterSets.AAC_LC_48000_STEREO, ParameterSets.AAC_HE_V2_SYNC_EXTENSION))
+        assertFalse(aac(ParameterSets.hex("12 10"), ParameterSets.AAC_LC_960))
+    }
+}
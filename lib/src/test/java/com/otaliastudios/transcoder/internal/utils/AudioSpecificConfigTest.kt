@@ -0,0 +1,77 @@
+package com.otaliastudios.transcoder.internal.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class AudioSpecificConfigTest {
+
+    private fun parse(bytes: ByteArray) = AudioSpecificConfig.parse(ByteBuffer.wrap(bytes))
+
+    @Test
+    fun testAacLc() {
+        val config = parse(ParameterSets.AAC_LC_48000_STEREO)
+        assertEquals(AudioSpecificConfig.OBJECT_TYPE_AAC_LC, config.objectType)
+        assertEquals(48000, config.sampleRate)
+        assertEquals(2, config.channelConfig)
+        assertEquals(1024, config.frameLength)
+        assertFalse(config.dependsOnCoreCoder)
+        // The sync extension is there, but says that there's no SBR.
+        assertEquals(0, config.extensionObjectType)
+        assertEquals(2, config.getChannelCount())
+        assertEquals(48000, config.getOutputSampleRate())
+
+        val mono = parse(ParameterSets.AAC_LC_8000_MONO)
+        assertEquals(8000, mono.sampleRate)
+        assertEquals(1, mono.getChannelCount())
+    }
+
+    @Test
+    fun testExplicitSampleRate() {
+        val config = parse(ParameterSets.AAC_LC_EXPLICIT_44100)
+        assertEquals(AudioSpecificConfig.OBJECT_TYPE_AAC_LC, config.objectType)
+        assertEquals(44100, config.sampleRate)
+        assertEquals(2, config.getChannelCount())
+
+        // Not in the table of sample rates.
+        val uncommon = parse(ParameterSets.AAC_LC_EXPLICIT_37800)
+        assertEquals(37800, uncommon.sampleRate)
+        assertEquals(1, uncommon.getChannelCount())
+        assertEquals(37800, uncommon.getOutputSampleRate())
+    }
+
+    @Test
+    fun testExplicitSbr() {
+        val config = parse(ParameterSets.AAC_HE_EXPLICIT)
+        assertEquals(AudioSpecificConfig.OBJECT_TYPE_AAC_LC, config.objectType)
+        assertEquals(AudioSpecificConfig.OBJECT_TYPE_SBR, config.extensionObjectType)
+        assertEquals(24000, config.sampleRate)
+        assertEquals(48000, config.extensionSampleRate)
+        assertEquals(48000, config.getOutputSampleRate())
+        assertEquals(2, config.getChannelCount())
+    }
+
+    @Test
+    fun testSyncExtensionWithParametricStereo() {
+        val config = parse(ParameterSets.AAC_HE_V2_SYNC_EXTENSION)
+        assertEquals(AudioSpecificConfig.OBJECT_TYPE_AAC_LC, config.objectType)
+        assertEquals(AudioSpecificConfig.OBJECT_TYPE_PS, config.extensionObjectType)
+        assertEquals(1, config.channelConfig)
+        assertEquals(24000, config.sampleRate)
+        assertEquals(48000, config.getOutputSampleRate())
+        // Parametric stereo decodes mono to stereo.
+        assertEquals(2, config.getChannelCount())
+    }
+
+    @Test
+    fun testFrameLength() {
+        assertEquals(960, parse(ParameterSets.AAC_LC_960).frameLength)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testInvalidSampleRate() {
+        // Index 13 is reserved.
+        parse(ParameterSets.hex("16 90"))
+    }
+}
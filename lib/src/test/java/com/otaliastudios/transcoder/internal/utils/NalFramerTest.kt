@@ -0,0 +1,216 @@
+package com.otaliastudios.transcoder.internal.utils
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+
+class NalFramerTest {
+
+    // Units end with the stop bit and have no 0x0000xx patterns, like real ones.
+    private fun unit(size: Int, seed: Int): ByteArray {
+        return ByteArray(size) { i ->
+            if (i == size - 1) 0x80.toByte() else (0x21 + (seed * 7 + i) % 0x5E).toByte()
+        }
+    }
+
+    private val units = listOf(unit(1, 0), unit(7, 1), unit(8, 2), unit(9, 3), unit(33, 4), unit(200, 5))
+
+    private fun annexB(units: List<ByteArray>, codeSize: (Int) -> Int): ByteArray {
+        val out = ByteArrayOutputStream()
+        units.forEachIndexed { index, unit ->
+            if (codeSize(index) == 4) out.write(0)
+            out.write(byteArrayOf(0, 0, 1))
+            out.write(unit)
+        }
+        return out.toByteArray()
+    }
+
+    private fun lengthPrefixed(units: List<ByteArray>, lengthSize: Int): ByteArray {
+        val out = ByteArrayOutputStream()
+        units.forEach { unit ->
+            for (i in lengthSize - 1 downTo 0) out.write(unit.size ushr (i * 8))
+            out.write(unit)
+        }
+        return out.toByteArray()
+    }
+
+    // Content at [offset, offset + bytes.size), with room for growing after it.
+    private fun buffer(bytes: ByteArray, offset: Int = 0, room: Int = 64, direct: Boolean = false): ByteBuffer {
+        val capacity = offset + bytes.size + room
+        val buffer = if (direct) ByteBuffer.allocateDirect(capacity) else ByteBuffer.allocate(capacity)
+        for (i in 0 until offset) buffer.put(i, 0x55)
+        buffer.position(offset)
+        buffer.put(bytes)
+        buffer.flip()
+        buffer.position(offset)
+        return buffer
+    }
+
+    private fun ByteBuffer.content(): ByteArray {
+        val bytes = ByteArray(remaining())
+        duplicate().get(bytes)
+        return bytes
+    }
+
+    @Test
+    fun testToLengthPrefixed4() {
+        for (direct in listOf(false, true)) {
+            val buffer = buffer(annexB(units) { 4 }, room = 0, direct = direct)
+            NalFramer().toLengthPrefixed(buffer)
+            assertArrayEquals(lengthPrefixed(units, 4), buffer.content())
+        }
+    }
+
+    @Test
+    fun testToLengthPrefixed3() {
+        // Each unit grows by one byte.
+        for (direct in listOf(false, true)) {
+            val buffer = buffer(annexB(units) { 3 }, room = units.size, direct = direct)
+            NalFramer().toLengthPrefixed(buffer)
+            assertArrayEquals(lengthPrefixed(units, 4), buffer.content())
+        }
+    }
+
+    @Test
+    fun testToLengthPrefixedMixed() {
+        val buffer = buffer(annexB(units) { if (it % 2 == 0) 3 else 4 })
+        NalFramer().toLengthPrefixed(buffer)
+        assertArrayEquals(lengthPrefixed(units, 4), buffer.content())
+    }
+
+    @Test
+    fun testToLengthPrefixedGrowAndShrink() {
+        // 3 bytes codes grow, trailing zeros and empty units shrink.
+        val out = ByteArrayOutputStream()
+        out.write(byteArrayOf(0, 0, 1)); out.write(units[4])
+        out.write(byteArrayOf(0, 0, 1)); out.write(units[5])
+        out.write(byteArrayOf(0, 0, 0, 0, 0, 0, 0, 0, 1)); out.write(units[1])
+        out.write(byteArrayOf(0, 0, 0, 1, 0, 0, 1)); out.write(units[2])
+        out.write(byteArrayOf(0, 0, 1)); out.write(units[3])
+        out.write(byteArrayOf(0, 0, 0, 1)); out.write(units[0])
+        out.write(byteArrayOf(0, 0, 0))
+        val buffer = buffer(out.toByteArray())
+        NalFramer().toLengthPrefixed(buffer)
+        val expected = listOf(units[4], units[5], units[1], units[2], units[3], units[0])
+        assertArrayEquals(lengthPrefixed(expected, 4), buffer.content())
+    }
+
+    @Test
+    fun testToLengthPrefixedTrailingStartCode() {
+        val bytes = annexB(units) { 4 } + byteArrayOf(0, 0, 0, 1)
+        val buffer = buffer(bytes)
+        NalFramer().toLengthPrefixed(buffer)
+        assertArrayEquals(lengthPrefixed(units, 4), buffer.content())
+    }
+
+    @Test
+    fun testToLengthPrefixedOffset() {
+        val buffer = buffer(annexB(units) { 3 }, offset = 13)
+        NalFramer().toLengthPrefixed(buffer)
+        assertEquals(13, buffer.position())
+        assertArrayEquals(lengthPrefixed(units, 4), buffer.content())
+        for (i in 0 until 13) assertEquals(0x55.toByte(), buffer.get(i))
+    }
+
+    @Test
+    fun testToAnnexB4() {
+        for (direct in listOf(false, true)) {
+            val buffer = buffer(lengthPrefixed(units, 4), room = 0, direct = direct)
+            NalFramer().toAnnexB(buffer, 4)
+            assertArrayEquals(annexB(units) { 4 }, buffer.content())
+        }
+    }
+
+    @Test
+    fun testToAnnexBShortLengths() {
+        // Prefixes grow by 3 and 2 bytes.
+        for (lengthSize in listOf(1, 2)) {
+            for (direct in listOf(false, true)) {
+                val buffer = buffer(lengthPrefixed(units, lengthSize), offset = 5, direct = direct)
+                NalFramer().toAnnexB(buffer, lengthSize)
+                assertEquals(5, buffer.position())
+                assertArrayEquals(annexB(units) { 4 }, buffer.content())
+            }
+        }
+    }
+
+    @Test
+    fun testToAnnexBEmptyUnits() {
+        // Zero length units are dropped, so the content shrinks.
+        val empty = ByteArray(0)
+        val withEmpty = listOf(empty, units[5], empty, empty, units[1], units[3], empty)
+        val buffer = buffer(lengthPrefixed(withEmpty, 4), room = 0)
+        NalFramer().toAnnexB(buffer, 4)
+        assertArrayEquals(annexB(listOf(units[5], units[1], units[3])) { 4 }, buffer.content())
+    }
+
+    @Test
+    fun testRoundTrip() {
+        val framer = NalFramer()
+        // More units than the initial table size.
+        val many = (0 until 50).map { unit(1 + (it * 37) % 120, it) }
+        for (lengthSize in listOf(1, 2, 4)) {
+            val buffer = buffer(lengthPrefixed(many, lengthSize), room = 3 * many.size)
+            framer.toAnnexB(buffer, lengthSize)
+            assertArrayEquals(annexB(many) { 4 }, buffer.content())
+            framer.toLengthPrefixed(buffer)
+            assertArrayEquals(lengthPrefixed(many, 4), buffer.content())
+        }
+        val buffer = buffer(annexB(many) { if (it % 3 == 0) 4 else 3 }, room = many.size)
+        framer.toLengthPrefixed(buffer)
+        framer.toAnnexB(buffer, 4)
+        assertArrayEquals(annexB(many) { 4 }, buffer.content())
+    }
+
+    @Test
+    fun testFindStartCode() {
+        // Every position across the 8 bytes words, including codes that cross them.
+        for (codeSize in listOf(3, 4)) {
+            for (position in 0..24 - codeSize) {
+                val bytes = ByteArray(24) { 0x7F }
+                for (i in 0 until codeSize - 1) bytes[position + i] = 0
+                bytes[position + codeSize - 1] = 1
+                val buffer = ByteBuffer.wrap(bytes)
+                val expected = position + codeSize - 3
+                assertEquals(expected, NalFramer.findStartCode(buffer, 0, 24))
+                assertEquals(expected, NalFramer.findStartCode(buffer, expected, 24))
+                assertEquals(-1, NalFramer.findStartCode(buffer, expected + 1, 24))
+                // Not found if the range ends before the 0x01.
+                assertEquals(-1, NalFramer.findStartCode(buffer, 0, position + codeSize - 1))
+            }
+        }
+    }
+
+    @Test
+    fun testFindStartCodeZeros() {
+        // Zero words with no 0x01 must not match, the code after them must.
+        val bytes = ByteArray(32)
+        bytes[21] = 1
+        assertEquals(19, NalFramer.findStartCode(ByteBuffer.wrap(bytes), 0, 32))
+        bytes[21] = 2
+        assertEquals(-1, NalFramer.findStartCode(ByteBuffer.wrap(bytes), 0, 32))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testToLengthPrefixedNoStartCode() {
+        NalFramer().toLengthPrefixed(buffer(units[5]))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testToAnnexBTruncated() {
+        val bytes = lengthPrefixed(units, 2)
+        NalFramer().toAnnexB(buffer(bytes.copyOf(bytes.size - 1)), 2)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testToAnnexBInvalidLengthSize() {
+        NalFramer().toAnnexB(buffer(lengthPrefixed(units, 4)), 3)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testNotEnoughRoom() {
+        NalFramer().toLengthPrefixed(buffer(annexB(units) { 3 }, room = units.size - 1))
+    }
+}
@@ -0,0 +1,120 @@
+package com.otaliastudios.transcoder.internal.utils
+
+import java.nio.ByteBuffer
+
+/**
+ * Parameter sets for parser tests, with their NAL header.
+ *
+ * The base ones are real: H.264 from the androidTest assets (sample.mp4, party.mp4), H.265 from
+ * an x265 1080p Main encode, AAC from sample.mp4 and issue_137. The variants were derived from
+ * them by re-encoding a few syntax elements, keeping everything else bit-exact.
+ */
+internal object ParameterSets {
+
+    fun hex(value: String): ByteArray = value.split(" ").map { it.toInt(16).toByte() }.toByteArray()
+
+    /** Returns the payload after a NAL header of the given size. */
+    fun payload(nal: ByteArray, headerSize: Int): ByteBuffer {
+        return ByteBuffer.wrap(nal, headerSize, nal.size - headerSize).slice()
+    }
+
+    fun avc(nal: ByteArray) = payload(nal, 1)
+    fun hevc(nal: ByteArray) = payload(nal, 2)
+
+    // sample.mp4: High@4.0, 1920x1088 cropped to 1080, VUI timing for 30 fps.
+    val AVC_SPS_1080P = hex(
+            "67 64 00 28 ac d9 40 78 02 27 e5 c0 44 00 00 03 00 04 00 00 03 00 f0 3c " +
+            "60 c6 58")
+    val AVC_PPS_1080P = hex("68 eb e1 72 c8 b0")
+
+    // AVC_PPS_1080P with second_chroma_qp_index_offset -1 instead of -2.
+    val AVC_PPS_1080P_SECOND_CHROMA_QP = hex("68 eb e1 72 c9 c0")
+
+    // party.mp4: High@2.1, 432x240 cropped to 426, VUI timing for 25 fps.
+    val AVC_SPS_240P = hex(
+            "67 64 08 15 ac 56 24 1b 1f e4 e6 a0 c0 c0 c8 00 00 03 00 08 00 00 03 01 " +
+            "90 78 b1 6c 4c")
+    val AVC_PPS_240P = hex("68 e8 8e cb 22 c0")
+
+    // AVC_SPS_1080P with seq_scaling_matrix_present_flag: an explicit 4x4 list,
+    // a list falling back to the default (delta -8), an explicit 8x8 list.
+    val AVC_SPS_1080P_SCALING = hex(
+            "67 64 00 28 ad a6 9a 69 a6 9a 69 c2 21 21 48 52 14 85 21 48 52 14 85 21 " +
+            "48 52 14 85 21 48 52 14 85 21 48 52 14 85 21 48 52 14 85 21 48 52 14 85 " +
+            "21 48 52 14 85 6c a0 3c 01 13 f2 e0 22 00 00 03 00 02 00 00 03 00 78 1e " +
+            "30 63 2c")
+
+    // AVC_SPS_1080P with level_idc 31.
+    val AVC_SPS_1080P_LEVEL_31 = hex(
+            "67 64 00 1f ac d9 40 78 02 27 e5 c0 44 00 00 03 00 04 00 00 03 00 f0 3c " +
+            "60 c6 58")
+
+    // AVC_SPS_1080P as Main profile, without the chroma and bit depth fields.
+    val AVC_SPS_1080P_MAIN = hex(
+            "67 4d 00 28 ec a0 3c 01 13 f2 e0 22 00 00 03 00 02 00 00 03 00 78 1e 30 " +
+            "63 2c")
+
+    // AVC_SPS_1080P as High 4:2:2 profile, chroma_format_idc 2. Cropping units change.
+    val AVC_SPS_1080P_422 = hex(
+            "67 7a 00 28 bc d9 40 78 02 27 e5 c0 44 00 00 03 00 04 00 00 03 00 f0 3c " +
+            "60 c6 58")
+
+    // x265: Main@4.0, 1920x1080.
+    val HEVC_VPS_1080P = hex("40 01 0c 01 ff ff 01 60 00 00 03 00 90 00 00 03 00 00 03 00 78 95 98 09")
+    val HEVC_SPS_1080P = hex(
+            "42 01 01 01 60 00 00 03 00 90 00 00 03 00 00 03 00 78 a0 03 c0 80 10 e5 " +
+            "96 56 69 24 ca f0 16 9c 08 00 00 03 00 08 00 00 03 00 c8 40")
+    val HEVC_PPS_1080P = hex("44 01 c1 72 b4 62 40")
+
+    // HEVC_VPS_1080P / HEVC_SPS_1080P with 3 temporal sub-layers, sub-layer profile
+    // and level info, and per sub-layer ordering info.
+    val HEVC_VPS_1080P_SUB_LAYERS = hex(
+            "40 01 0c 05 ff ff 01 60 00 00 03 00 90 00 00 03 00 00 03 00 78 d0 00 01 " +
+            "60 00 00 03 00 90 00 00 03 00 00 03 00 5a 5d b9 88 8c 56 60 24")
+    val HEVC_SPS_1080P_SUB_LAYERS = hex(
+            "42 01 05 01 60 00 00 03 00 90 00 00 03 00 00 03 00 78 d0 00 01 60 00 00 " +
+            "03 00 90 00 00 03 00 00 03 00 5a 5d a0 03 c0 80 10 e5 96 e6 22 31 59 a4 " +
+            "93 2b c0 5a 70 20 00 00 03 00 20 00 00 03 03 21")
+
+    // HEVC_SPS_1080P with scaling_list_enabled_flag and explicit scaling_list_data().
+    val HEVC_SPS_1080P_SCALING = hex(
+            "42 01 01 01 60 00 00 03 00 90 00 00 03 00 00 03 00 78 a0 03 c0 80 10 e5 " +
+            "96 56 69 24 f6 d2 69 34 9a 4d 26 56 93 49 a4 d2 69 32 b4 9a 4d 26 93 49 " +
+            "da 4d 26 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 " +
+            "ca d2 69 34 9a 4d 26 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 d2 69 34 9a 4d " +
+            "26 56 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 d2 " +
+            "69 32 66 69 34 9a 4d 26 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 d2 69 34 9a " +
+            "4d 26 93 29 9a 4d 26 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 d2 69 34 9a 4d " +
+            "26 93 49 a4 ca 66 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 d2 69 34 9a 4d 26 " +
+            "93 49 a4 d2 69 39 9a 4d 26 93 49 a4 d2 69 34 9a 4d 26 93 49 a4 d2 69 34 " +
+            "9a 4d 26 93 49 a4 c9 5e 02 d3 81 00 00 03 00 01 00 00 03 00 19 08")
+
+    // HEVC_SPS_1080P with general_level_idc 93 (level 3.1).
+    val HEVC_SPS_1080P_LEVEL_31 = hex(
+            "42 01 01 01 60 00 00 03 00 90 00 00 03 00 00 03 00 5d a0 03 c0 80 10 e5 " +
+            "96 56 69 24 ca f0 16 9c 08 00 00 03 00 08 00 00 03 00 c8 40")
+
+    // HEVC_SPS_1080P with general_profile_idc 2 (Main 10).
+    val HEVC_SPS_1080P_MAIN_10 = hex(
+            "42 01 01 02 60 00 00 03 00 90 00 00 03 00 00 03 00 78 a0 03 c0 80 10 e5 " +
+            "96 56 69 24 ca f0 16 9c 08 00 00 03 00 08 00 00 03 00 c8 40")
+
+    // sample.mp4: AAC LC, 48000 Hz, stereo, sync extension without SBR.
+    val AAC_LC_48000_STEREO = hex("11 90 56 e5 00")
+
+    // issue_137: AAC LC, 8000 Hz, mono.
+    val AAC_LC_8000_MONO = hex("15 88")
+
+    // AAC LC, stereo, sample rate written explicitly (index 15): 44100 and 37800 Hz.
+    val AAC_LC_EXPLICIT_44100 = hex("17 80 56 22 10")
+    val AAC_LC_EXPLICIT_37800 = hex("17 80 49 d4 08")
+
+    // HE-AAC, explicit signaling: 24000 Hz core, 48000 Hz output, stereo.
+    val AAC_HE_EXPLICIT = hex("2b 11 88 00")
+
+    // HE-AAC v2, backward compatible signaling: AAC LC 24000 Hz mono with SBR and PS extensions.
+    val AAC_HE_V2_SYNC_EXTENSION = hex("13 08 56 e5 9d 48 80")
+
+    // AAC LC, 44100 Hz, stereo, 960 samples per frame.
+    val AAC_LC_960 = hex("12 14")
+}
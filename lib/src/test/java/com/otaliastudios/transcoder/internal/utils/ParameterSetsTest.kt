@@ -0,0 +1,232 @@
+package com.otaliastudios.transcoder.internal.utils
+
+import com.otaliastudios.transcoder.internal.utils.ParameterSets.avc
+import com.otaliastudios.transcoder.internal.utils.ParameterSets.hevc
+import com.otaliastudios.transcoder.internal.utils.ParameterSets.hex
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class ParameterSetsTest {
+
+    @Test
+    fun testBitReaderExpGolomb() {
+        // ue: 1 -> 0, 010 -> 1, 011 -> 2, 00100 -> 3. se: 010 -> 1, 011 -> -1.
+        val reader = BitReader(ByteBuffer.wrap(hex("a6 44 c0")), false)
+        assertEquals(0, reader.readUE())
+        assertEquals(1, reader.readUE())
+        assertEquals(2, reader.readUE())
+        assertEquals(3, reader.readUE())
+        assertEquals(1, reader.readSE())
+        assertEquals(-1, reader.readSE())
+    }
+
+    @Test
+    fun testBitReaderUnescape() {
+        val bytes = hex("00 00 03 01 00 00 03 00 80")
+        assertEquals(9 * 8, BitReader(ByteBuffer.wrap(bytes), false).bitsLeft())
+        val reader = BitReader(ByteBuffer.wrap(bytes), true)
+        assertEquals(7 * 8, reader.bitsLeft())
+        assertEquals(1L, reader.readBits(24))
+        assertEquals(0L, reader.readBits(24))
+        assertFalse(reader.hasMoreRbspData())
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testBitReaderPastEnd() {
+        BitReader(ByteBuffer.wrap(hex("ff")), false).readBits(9)
+    }
+
+    @Test
+    fun testAvcSpsCropping() {
+        val sps = AvcSps.parse(avc(ParameterSets.AVC_SPS_1080P))
+        assertEquals(100, sps.profileIdc)
+        assertEquals(40, sps.levelIdc)
+        assertEquals(1, sps.chromaFormatIdc)
+        assertEquals(8, sps.bitDepthLuma)
+        assertEquals(1920, sps.width)
+        assertEquals(1080, sps.height)
+        assertEquals(0, sps.cropTop)
+        assertEquals(8, sps.cropBottom)
+
+        val small = AvcSps.parse(avc(ParameterSets.AVC_SPS_240P))
+        assertEquals(21, small.levelIdc)
+        assertEquals(426, small.width)
+        assertEquals(240, small.height)
+        assertEquals(0, small.cropLeft)
+        assertEquals(6, small.cropRight)
+    }
+
+    @Test
+    fun testAvcSpsCroppingUnits() {
+        // With 4:2:2, vertical crop units are 1 pixel instead of 2.
+        val sps = AvcSps.parse(avc(ParameterSets.AVC_SPS_1080P_422))
+        assertEquals(122, sps.profileIdc)
+        assertEquals(2, sps.chromaFormatIdc)
+        assertEquals(4, sps.cropBottom)
+        assertEquals(1084, sps.height)
+    }
+
+    @Test
+    fun testAvcSpsVuiTiming() {
+        val sps = AvcSps.parse(avc(ParameterSets.AVC_SPS_1080P))
+        assertEquals(30F, sps.frameRate, 0.001F)
+        assertEquals(1, sps.sarWidth)
+        assertEquals(1, sps.sarHeight)
+        assertEquals(2, sps.maxNumReorderFrames)
+        assertEquals(4, sps.maxDecFrameBuffering)
+        assertEquals(25F, AvcSps.parse(avc(ParameterSets.AVC_SPS_240P)).frameRate, 0.001F)
+    }
+
+    @Test
+    fun testAvcSpsScalingLists() {
+        // Fields after the lists, up to the VUI, must be the same as the source SPS.
+        val sps = AvcSps.parse(avc(ParameterSets.AVC_SPS_1080P_SCALING))
+        val reference = AvcSps.parse(avc(ParameterSets.AVC_SPS_1080P))
+        assertTrue(sps.scalingMatrixPresent)
+        assertFalse(reference.scalingMatrixPresent)
+        assertEquals(reference.log2MaxFrameNum, sps.log2MaxFrameNum)
+        assertEquals(reference.log2MaxPicOrderCntLsb, sps.log2MaxPicOrderCntLsb)
+        assertEquals(reference.maxNumRefFrames, sps.maxNumRefFrames)
+        assertEquals(1920, sps.width)
+        assertEquals(1080, sps.height)
+        assertEquals(30F, sps.frameRate, 0.001F)
+        assertEquals(reference.maxDecFrameBuffering, sps.maxDecFrameBuffering)
+    }
+
+    @Test
+    fun testAvcSpsWithoutChromaInfo() {
+        val sps = AvcSps.parse(avc(ParameterSets.AVC_SPS_1080P_MAIN))
+        assertEquals(77, sps.profileIdc)
+        assertEquals(1, sps.chromaFormatIdc)
+        assertEquals(8, sps.bitDepthChroma)
+        assertEquals(1920, sps.width)
+        assertEquals(1080, sps.height)
+        assertEquals(30F, sps.frameRate, 0.001F)
+    }
+
+    @Test
+    fun testAvcPps() {
+        val pps = AvcPps.parse(avc(ParameterSets.AVC_PPS_1080P))
+        assertEquals(0, pps.id)
+        assertEquals(0, pps.spsId)
+        assertTrue(pps.entropyCodingMode)
+        assertEquals(1, pps.numSliceGroups)
+        assertEquals(3, pps.numRefIdxL0DefaultActive)
+        assertEquals(1, pps.numRefIdxL1DefaultActive)
+        assertTrue(pps.weightedPred)
+        assertEquals(2, pps.weightedBipredIdc)
+        assertEquals(21, pps.picInitQp)
+        assertEquals(-2, pps.chromaQpIndexOffset)
+        assertTrue(pps.deblockingFilterControlPresent)
+        // Read only if more_rbsp_data(), as for High profile.
+        assertTrue(pps.transform8x8Mode)
+        assertFalse(pps.picScalingMatrixPresent)
+        assertEquals(-2, pps.secondChromaQpIndexOffset)
+        assertEquals(8, AvcPps.parse(avc(ParameterSets.AVC_PPS_240P)).numRefIdxL0DefaultActive)
+    }
+
+    @Test
+    fun testAvcPpsSecondChromaQp() {
+        val pps = AvcPps.parse(avc(ParameterSets.AVC_PPS_1080P_SECOND_CHROMA_QP))
+        assertEquals(-2, pps.chromaQpIndexOffset)
+        assertEquals(-1, pps.secondChromaQpIndexOffset)
+        assertTrue(pps.transform8x8Mode)
+    }
+
+    @Test
+    fun testHevcVps() {
+        val vps = HevcVps.parse(hevc(ParameterSets.HEVC_VPS_1080P))
+        assertEquals(0, vps.id)
+        assertEquals(1, vps.maxLayers)
+        assertEquals(1, vps.maxSubLayers)
+        assertEquals(1, vps.profileTierLevel.profileIdc)
+        assertEquals(120, vps.profileTierLevel.levelIdc)
+        assertFalse(vps.profileTierLevel.tier)
+        assertEquals(5, vps.maxDecPicBuffering)
+        assertEquals(2, vps.maxNumReorderPics)
+    }
+
+    @Test
+    fun testHevcSps() {
+        val sps = HevcSps.parse(hevc(ParameterSets.HEVC_SPS_1080P))
+        assertEquals(1, sps.maxSubLayers)
+        assertEquals(1, sps.profileTierLevel.profileIdc)
+        assertEquals(0x60000000L, sps.profileTierLevel.profileCompatibilityFlags)
+        assertTrue(sps.profileTierLevel.progressiveSource)
+        assertEquals(120, sps.profileTierLevel.levelIdc)
+        assertEquals(1, sps.chromaFormatIdc)
+        assertEquals(1920, sps.width)
+        assertEquals(1080, sps.height)
+        assertEquals(0, sps.cropBottom)
+        assertEquals(8, sps.bitDepthLuma)
+        assertEquals(8, sps.log2MaxPicOrderCntLsb)
+        assertEquals(5, sps.maxDecPicBuffering)
+        assertEquals(2, sps.maxNumReorderPics)
+        assertEquals(3, sps.log2MinLumaCodingBlockSize)
+        assertEquals(3, sps.log2DiffMaxMinLumaCodingBlockSize)
+        assertFalse(sps.scalingListEnabled)
+        assertTrue(sps.sampleAdaptiveOffsetEnabled)
+        assertFalse(sps.pcmEnabled)
+        assertEquals(0, sps.numShortTermRefPicSets)
+        assertFalse(sps.longTermRefPicsPresent)
+        assertTrue(sps.temporalMvpEnabled)
+        assertTrue(sps.strongIntraSmoothingEnabled)
+    }
+
+    @Test
+    fun testHevcSubLayers() {
+        // Sub-layer info sits between the general level and the fields after it.
+        val vps = HevcVps.parse(hevc(ParameterSets.HEVC_VPS_1080P_SUB_LAYERS))
+        assertEquals(3, vps.maxSubLayers)
+        assertEquals(120, vps.profileTierLevel.levelIdc)
+        // The values of the highest sub-layer, the lower ones are smaller.
+        assertEquals(5, vps.maxDecPicBuffering)
+        assertEquals(2, vps.maxNumReorderPics)
+
+        val sps = HevcSps.parse(hevc(ParameterSets.HEVC_SPS_1080P_SUB_LAYERS))
+        val reference = HevcSps.parse(hevc(ParameterSets.HEVC_SPS_1080P))
+        assertEquals(3, sps.maxSubLayers)
+        assertEquals(120, sps.profileTierLevel.levelIdc)
+        assertEquals(1920, sps.width)
+        assertEquals(1080, sps.height)
+        assertEquals(5, sps.maxDecPicBuffering)
+        assertEquals(2, sps.maxNumReorderPics)
+        assertEquals(reference.log2MinLumaTransformBlockSize, sps.log2MinLumaTransformBlockSize)
+        assertEquals(reference.sampleAdaptiveOffsetEnabled, sps.sampleAdaptiveOffsetEnabled)
+        assertEquals(reference.strongIntraSmoothingEnabled, sps.strongIntraSmoothingEnabled)
+    }
+
+    @Test
+    fun testHevcSpsScalingLists() {
+        val sps = HevcSps.parse(hevc(ParameterSets.HEVC_SPS_1080P_SCALING))
+        val reference = HevcSps.parse(hevc(ParameterSets.HEVC_SPS_1080P))
+        assertTrue(sps.scalingListEnabled)
+        assertEquals(reference.ampEnabled, sps.ampEnabled)
+        assertEquals(reference.sampleAdaptiveOffsetEnabled, sps.sampleAdaptiveOffsetEnabled)
+        assertEquals(reference.pcmEnabled, sps.pcmEnabled)
+        assertEquals(reference.numShortTermRefPicSets, sps.numShortTermRefPicSets)
+        assertEquals(reference.temporalMvpEnabled, sps.temporalMvpEnabled)
+        assertEquals(reference.strongIntraSmoothingEnabled, sps.strongIntraSmoothingEnabled)
+    }
+
+    @Test
+    fun testHevcPps() {
+        val pps = HevcPps.parse(hevc(ParameterSets.HEVC_PPS_1080P))
+        assertEquals(0, pps.id)
+        assertEquals(0, pps.spsId)
+        assertTrue(pps.signDataHidingEnabled)
+        assertEquals(1, pps.numRefIdxL0DefaultActive)
+        assertEquals(26, pps.initQp)
+        assertTrue(pps.cuQpDeltaEnabled)
+        assertEquals(1, pps.diffCuQpDeltaDepth)
+        assertTrue(pps.weightedPred)
+        assertFalse(pps.tilesEnabled)
+        assertTrue(pps.entropyCodingSyncEnabled)
+        assertTrue(pps.loopFilterAcrossSlicesEnabled)
+        assertFalse(pps.scalingListDataPresent)
+        assertEquals(2, pps.log2ParallelMergeLevel)
+    }
+}